@@ -0,0 +1,609 @@
+package checkers.inference;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.TypeElement;
+
+import org.checkerframework.javacutil.AnnotationBuilder;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.util.Log;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.CompilationUnitConstraints;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * Caches the slots and constraints of each compilation unit between runs, in one file per unit in
+ * {@link InferenceOptions#constraintCacheDir}, see {@link CompilationUnitConstraints}.
+ *
+ * A unit is loaded from the cache instead of being visited if its source is unchanged and the
+ * declarations of the program are unchanged.  The declarations stand in for the signatures of the
+ * units the unit depends on: they are the sources of all units with comments and method bodies
+ * left out, see {@link #getDeclarationSignature(CharSequence)}, so editing a method body only
+ * invalidates the unit that contains it, while editing a declaration invalidates every unit.
+ *
+ * The InferenceChecker asks the cache before it visits each class, see
+ * {@link #loadCachedUnit(CompilationUnitTree)}, and the constraints and slots created while a
+ * unit is visited are recorded for it.  After javac finishes, {@link #writeVisitedUnits()} writes
+ * the units that were visited.  A unit for which javac reported errors or warnings while it was
+ * visited is not written, as loading it would not report them again.
+ *
+ * The cache also hands the constraints of units generated by separate worker processes to
+ * inference, see {@link InferenceOptions#generationWorkers}.  Each worker visits only the units
+ * assigned to it, and since cached units are written without slot ids, inference gives the slots
+ * of all workers their ids as it loads them, creating a slot at a location only once.
+ */
+public class ConstraintCache {
+
+    private static final Logger logger = Logger.getLogger(ConstraintCache.class.getName());
+
+    /** "CFIU" in ASCII. */
+    private static final int MAGIC = 0x43464955;
+
+    private static final int VERSION = 2;
+
+    private final File directory;
+
+    /** Hash of the declarations of the program and of the options that affect the constraints. */
+    private final String programSignature;
+
+    /** The units seen so far, by canonical path. */
+    private final Map<String, Unit> units = new LinkedHashMap<>();
+
+    /** The compilation unit of each class name resolved for a cached location. */
+    private final Map<String, CompilationUnitTree> classUnits = new HashMap<>();
+
+    private ProcessingEnvironment processingEnvironment;
+
+    /** The unit being visited, or null. */
+    private Unit visiting;
+
+    private int slotsBeforeVisit;
+
+    private int diagnosticsBeforeVisit;
+
+    /**
+     * For a constraint generation worker, the canonical paths of the units it visits, otherwise
+     * null, see {@link InferenceOptions#constraintWorkerUnits}.
+     */
+    private Set<String> assignedUnits;
+
+    private static class Unit {
+        final CompilationUnitTree root;
+        final String path;
+        final String key;
+
+        /** Whether the unit was loaded from the cache, or is being visited. */
+        boolean cached;
+        boolean visited;
+
+        /** Whether javac reported errors or warnings while the unit was visited. */
+        boolean reportedDiagnostics;
+
+        final Set<Slot> slots = new LinkedHashSet<>();
+        final List<Constraint> constraints = new ArrayList<>();
+
+        Unit(CompilationUnitTree root, String path, String key) {
+            this.root = root;
+            this.path = path;
+            this.key = key;
+        }
+
+        String getSourceFile() {
+            return root.getSourceFile().getName();
+        }
+    }
+
+    /**
+     * @param directory the directory that holds the cached units, created if it does not exist
+     * @param javaFiles the source files of the program
+     * @param options the options that affect constraint generation
+     */
+    public ConstraintCache(File directory, String[] javaFiles, List<String> options, Charset charset) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory.toPath());
+
+        StringBuilder signatures = new StringBuilder();
+        signatures.append(VERSION).append('\n');
+        for (String option : options) {
+            signatures.append(option).append('\n');
+        }
+        String[] sortedFiles = javaFiles.clone();
+        Arrays.sort(sortedFiles);
+        for (String javaFile : sortedFiles) {
+            String source = new String(Files.readAllBytes(new File(javaFile).toPath()), charset);
+            signatures.append(canonicalPath(javaFile)).append('\n')
+                      .append(getDeclarationSignature(source)).append('\n');
+        }
+        this.programSignature = hash(signatures.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Called by the InferenceChecker before it visits anything.
+     */
+    public void init(ProcessingEnvironment processingEnvironment) {
+        this.processingEnvironment = processingEnvironment;
+    }
+
+    /**
+     * Only visit and cache the given source files.  The slots and constraints of the other units are
+     * generated by other workers.
+     */
+    public void assignUnits(Collection<String> javaFiles) {
+        assignedUnits = new HashSet<>();
+        for (String javaFile : javaFiles) {
+            if (!javaFile.isEmpty()) {
+                assignedUnits.add(canonicalPath(javaFile));
+            }
+        }
+    }
+
+    /**
+     * @return true if the unit is to be generated in this process, i.e. it is assigned to this
+     * worker and not cached already, in which case it is visited as in any other run
+     */
+    public boolean isAssigned(CompilationUnitTree root) {
+        if (assignedUnits == null) {
+            return true;
+        }
+        Unit unit = getUnit(root);
+        if (!assignedUnits.contains(unit.path)) {
+            return false;
+        }
+        if (unit.visited) {
+            return true;
+        }
+        File file = getCacheFile(unit.path);
+        if (!file.exists()) {
+            return true;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            return !readHeader(in, unit);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Load the slots and constraints of the unit from the cache, unless it is already being
+     * visited, has changed, or cannot be loaded.  The unit is loaded at most once, however many
+     * classes it declares.
+     *
+     * @return true if the unit is loaded from the cache and must not be visited
+     */
+    public boolean loadCachedUnit(CompilationUnitTree root) {
+        Unit unit = getUnit(root);
+        if (unit.cached || unit.visited) {
+            return unit.cached;
+        }
+
+        File file = getCacheFile(unit.path);
+        if (!file.exists()) {
+            return false;
+        }
+
+        final CompilationUnitConstraints cached;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (!readHeader(in, unit)) {
+                logger.fine("Cached constraints are out of date: " + unit.path);
+                return false;
+            }
+            cached = CompilationUnitConstraints.read(in, unit.getSourceFile(), new Resolver());
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.FINE, "Could not load cached constraints of " + unit.path, e);
+            return false;
+        }
+
+        final InferenceMain inferenceMain = InferenceMain.getInstance();
+        cached.addTo(inferenceMain.getSlotManager(), inferenceMain.getConstraintManager(),
+                inferenceMain.getRealTypeFactory().getQualifierHierarchy());
+        unit.cached = true;
+
+        Statistics.addOrIncrementEntry("constraint_cache_hits", 1);
+        logger.fine(String.format("Loaded %d slots and %d constraints of %s from the cache",
+                cached.getNumberOfSlots(), cached.getNumberOfConstraints(), unit.path));
+        return true;
+    }
+
+    /**
+     * Start recording the slots and constraints created for the unit, which is about to be visited.
+     */
+    public void startVisiting(CompilationUnitTree root) {
+        visiting = getUnit(root);
+        if (!visiting.visited) {
+            visiting.visited = true;
+            Statistics.addOrIncrementEntry("constraint_cache_misses", 1);
+        }
+        slotsBeforeVisit = InferenceMain.getInstance().getSlotManager().getNumberOfCreatedSlots();
+        diagnosticsBeforeVisit = getNumberOfDiagnostics();
+        InferenceMain.getInstance().getConstraintManager().startRecording();
+    }
+
+    public void finishVisiting() {
+        final SlotManager slotManager = InferenceMain.getInstance().getSlotManager();
+        visiting.constraints.addAll(InferenceMain.getInstance().getConstraintManager().stopRecording());
+        visiting.slots.addAll(slotManager.getSlotsCreatedAfter(slotsBeforeVisit));
+        if (getNumberOfDiagnostics() != diagnosticsBeforeVisit) {
+            visiting.reportedDiagnostics = true;
+        }
+        visiting = null;
+    }
+
+    /**
+     * @return the number of errors and warnings javac has reported so far
+     */
+    private int getNumberOfDiagnostics() {
+        Log log = Log.instance(((JavacProcessingEnvironment) processingEnvironment).getContext());
+        return log.nerrors + log.nwarnings;
+    }
+
+    /**
+     * Write the slots and constraints of every unit visited in this run to the cache, except those
+     * of units for which javac reported errors or warnings, so that the next run visits them again
+     * and reports them again.
+     *
+     * A slot that is created while one unit is visited but is at a location in another unit is
+     * written with both.  Units that share a slot that only its id identifies are not written,
+     * since loading them would create a separate slot for each.
+     */
+    public void writeVisitedUnits() throws IOException {
+        final Map<String, Unit> unitsBySourceFile = new HashMap<>();
+        for (Unit unit : units.values()) {
+            unitsBySourceFile.put(unit.getSourceFile(), unit);
+        }
+        for (Unit unit : new ArrayList<>(units.values())) {
+            for (Slot slot : unit.slots) {
+                Unit locationUnit = unitsBySourceFile.get(getSourceFile(slot.getLocation()));
+                if (locationUnit != null && locationUnit != unit && locationUnit.visited) {
+                    locationUnit.slots.add(slot);
+                }
+            }
+        }
+
+        final Map<Slot, Unit> creators = new HashMap<>();
+        final Map<Unit, List<Slot>> unitSlots = new LinkedHashMap<>();
+        for (Unit unit : units.values()) {
+            if (unit.visited) {
+                for (Slot slot : unit.slots) {
+                    if (CompilationUnitConstraints.isIdentifiedById(slot)) {
+                        creators.putIfAbsent(slot, unit);
+                    }
+                }
+                unitSlots.put(unit, CompilationUnitConstraints.collectSlots(unit.slots, unit.constraints));
+            }
+        }
+
+        final Set<Unit> unshareable = new HashSet<>();
+        for (Map.Entry<Unit, List<Slot>> entry : unitSlots.entrySet()) {
+            for (Slot slot : entry.getValue()) {
+                if (CompilationUnitConstraints.isIdentifiedById(slot) && creators.get(slot) != entry.getKey()) {
+                    unshareable.add(entry.getKey());
+                    if (creators.get(slot) != null) {
+                        unshareable.add(creators.get(slot));
+                    }
+                }
+            }
+        }
+
+        int written = 0;
+        for (Unit unit : unitSlots.keySet()) {
+            final Path file = getCacheFile(unit.path).toPath();
+            Files.deleteIfExists(file);
+            if (unit.reportedDiagnostics) {
+                logger.fine("Not caching " + unit.path + ", diagnostics were reported for it");
+                continue;
+            }
+            if (unshareable.contains(unit)) {
+                logger.fine("Not caching " + unit.path + ", it shares slots without a location with other units");
+                continue;
+            }
+
+            final Path temp = Files.createTempFile(directory.toPath(), ".units", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(unit.path);
+                out.writeUTF(unit.key);
+                CompilationUnitConstraints.write(out, unit.slots, unit.constraints, unit.getSourceFile());
+            } catch (IllegalArgumentException e) {
+                Files.delete(temp);
+                logger.log(Level.FINE, "Not caching " + unit.path, e);
+                continue;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            written++;
+        }
+        logger.fine(String.format("Cached the constraints of %d of %d visited units", written, unitSlots.size()));
+    }
+
+    /**
+     * @return true if the cache file read by in holds the current version of the unit
+     */
+    private static boolean readHeader(DataInputStream in, Unit unit) throws IOException {
+        return in.readInt() == MAGIC && in.readInt() == VERSION
+                && in.readUTF().equals(unit.path) && in.readUTF().equals(unit.key);
+    }
+
+    /**
+     * @return the key a cache file of the unit must hold to be loaded, which changes if the unit or
+     * the declarations of the program change
+     */
+    String getUnitKey(CompilationUnitTree root) {
+        return getUnit(root).key;
+    }
+
+    private Unit getUnit(CompilationUnitTree root) {
+        final String path = canonicalPath(root.getSourceFile().getName());
+        Unit unit = units.get(path);
+        if (unit == null) {
+            try {
+                unit = new Unit(root, path, hash(Files.readAllBytes(new File(path).toPath())) + programSignature);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read: " + path, e);
+            }
+            units.put(path, unit);
+        }
+        return unit;
+    }
+
+    private File getCacheFile(String path) {
+        return new File(directory, hash(path.getBytes(StandardCharsets.UTF_8)).substring(0, 32) + ".units");
+    }
+
+    /**
+     * @return the source file of an AST path or class declaration location, or null
+     */
+    private String getSourceFile(AnnotationLocation location) {
+        if (location instanceof AstPathLocation) {
+            CompilationUnitTree ast = ((AstPathLocation) location).getAstRecord().ast;
+            return ast == null ? null : ast.getSourceFile().getName();
+        } else if (location instanceof ClassDeclLocation) {
+            CompilationUnitTree ast = new Resolver().getCompilationUnit(
+                    ((ClassDeclLocation) location).getFullyQualifiedClassName());
+            return ast == null ? null : ast.getSourceFile().getName();
+        }
+        return null;
+    }
+
+    /**
+     * Resolves class names through the compilation and constants through the constant slots
+     * created so far, or by name for annotations without elements.
+     */
+    private class Resolver implements CompilationUnitConstraints.Resolver {
+        private Map<String, AnnotationMirror> constants;
+
+        @Override
+        public CompilationUnitTree getCompilationUnit(String className) {
+            if (classUnits.containsKey(className)) {
+                return classUnits.get(className);
+            }
+            // The compilation unit of a nested, local or anonymous class is that of its top-level class.
+            int nested = className.indexOf('$');
+            CompilationUnitTree unit = findCompilationUnit(nested < 0 ? className : className.substring(0, nested));
+            if (unit == null && nested >= 0) {
+                unit = findCompilationUnit(className.replace('$', '.'));
+            }
+            classUnits.put(className, unit);
+            return unit;
+        }
+
+        private CompilationUnitTree findCompilationUnit(String canonicalName) {
+            TypeElement type = processingEnvironment.getElementUtils().getTypeElement(canonicalName);
+            if (type == null) {
+                return null;
+            }
+            TreePath path = Trees.instance(processingEnvironment).getPath(type);
+            return path == null ? null : path.getCompilationUnit();
+        }
+
+        @Override
+        public AnnotationMirror getAnnotation(String annotation) {
+            if (constants == null) {
+                constants = new HashMap<>();
+                for (ConstantSlot constant : InferenceMain.getInstance().getSlotManager().getConstantSlots()) {
+                    constants.put(constant.getValue().toString(), constant.getValue());
+                }
+            }
+            AnnotationMirror value = constants.get(annotation);
+            if (value == null && annotation.startsWith("@") && annotation.indexOf('(') < 0) {
+                value = AnnotationBuilder.fromName(processingEnvironment.getElementUtils(), annotation.substring(1));
+            }
+            return value;
+        }
+    }
+
+    /**
+     * @return the source with comments and the bodies of methods, constructors and anonymous
+     * classes left out and whitespace collapsed, i.e. what other units can depend on.  Initializers
+     * of fields are kept, since constants can be inlined into other units.
+     */
+    static String getDeclarationSignature(CharSequence source) {
+        final StringBuilder signature = new StringBuilder(source.length() / 2);
+        final int length = source.length();
+        // The last character written that is not whitespace.
+        char last = 0;
+        // Whether a { would open the body of a method that declares exceptions.
+        boolean throwsClause = false;
+        // Whether a { after a ) would open the body of a record rather than of a method.
+        boolean recordHeader = false;
+
+        int i = 0;
+        while (i < length) {
+            final char c = source.charAt(i);
+            if (c == '/' && i + 1 < length && (source.charAt(i + 1) == '/' || source.charAt(i + 1) == '*')) {
+                i = skipComment(source, i);
+                appendSpace(signature);
+
+            } else if (Character.isWhitespace(c)) {
+                i++;
+                appendSpace(signature);
+
+            } else if (c == '"' || c == '\'') {
+                final int end = skipLiteral(source, i);
+                signature.append(source, i, end);
+                last = c;
+                i = end;
+
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int end = i + 1;
+                while (end < length && Character.isJavaIdentifierPart(source.charAt(end))) {
+                    end++;
+                }
+                final String word = source.subSequence(i, end).toString();
+                throwsClause |= word.equals("throws");
+                recordHeader |= word.equals("record");
+                signature.append(word);
+                last = word.charAt(word.length() - 1);
+                i = end;
+
+            } else if (c == '{' && (last == ')' || throwsClause) && !recordHeader) {
+                i = skipBlock(source, i);
+                signature.append("{}");
+                last = '}';
+                throwsClause = false;
+
+            } else {
+                if (c == '{' || c == '}' || c == ';') {
+                    throwsClause = false;
+                    recordHeader = false;
+                }
+                signature.append(c);
+                last = c;
+                i++;
+            }
+        }
+        return signature.toString();
+    }
+
+    private static void appendSpace(StringBuilder signature) {
+        if (signature.length() > 0 && signature.charAt(signature.length() - 1) != ' ') {
+            signature.append(' ');
+        }
+    }
+
+    /**
+     * @return the index after the comment that starts at i
+     */
+    private static int skipComment(CharSequence source, int i) {
+        final int length = source.length();
+        if (source.charAt(i + 1) == '/') {
+            while (i < length && source.charAt(i) != '\n') {
+                i++;
+            }
+            return i;
+        }
+        i += 2;
+        while (i + 1 < length && !(source.charAt(i) == '*' && source.charAt(i + 1) == '/')) {
+            i++;
+        }
+        return Math.min(i + 2, length);
+    }
+
+    /**
+     * @return the index after the string, text block or char literal that starts at i
+     */
+    private static int skipLiteral(CharSequence source, int i) {
+        final int length = source.length();
+        final char quote = source.charAt(i);
+        final boolean textBlock = quote == '"' && i + 2 < length
+                && source.charAt(i + 1) == '"' && source.charAt(i + 2) == '"';
+        i += textBlock ? 3 : 1;
+        while (i < length) {
+            final char c = source.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (textBlock) {
+                if (c == '"' && i + 2 < length && source.charAt(i + 1) == '"' && source.charAt(i + 2) == '"') {
+                    return i + 3;
+                }
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            } else if (c == '\n') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return the index after the } that closes the { at i
+     */
+    private static int skipBlock(CharSequence source, int i) {
+        final int length = source.length();
+        int depth = 0;
+        while (i < length) {
+            final char c = source.charAt(i);
+            if (c == '/' && i + 1 < length && (source.charAt(i + 1) == '/' || source.charAt(i + 1) == '*')) {
+                i = skipComment(source, i);
+            } else if (c == '"' || c == '\'') {
+                i = skipLiteral(source, i);
+            } else {
+                if (c == '{') {
+                    depth++;
+                } else if (c == '}' && --depth == 0) {
+                    return i + 1;
+                }
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String canonicalPath(String file) {
+        try {
+            return new File(file).getCanonicalPath();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not resolve: " + file, e);
+        }
+    }
+}
@@ -7,7 +7,10 @@ import org.checkerframework.javacutil.BugInCF;
 
 import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +26,8 @@ import checkers.inference.model.LubVariableSlot;
 import com.sun.tools.javac.util.Pair;
 
 import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
 import checkers.inference.model.ArithmeticVariableSlot;
 import checkers.inference.model.CombVariableSlot;
 import checkers.inference.model.ConstantSlot;
@@ -31,6 +36,7 @@ import checkers.inference.model.RefinementVariableSlot;
 import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.qual.VarAnnot;
+import scenelib.annotations.io.ASTRecord;
 
 /**
  * The default implementation of SlotManager.
@@ -46,6 +52,21 @@ public class DefaultSlotManager implements SlotManager {
     // subtypes of VariableSlots).
     private int nextId = 1;
 
+    /** The largest id given to a slot so far. */
+    private int largestId = 0;
+
+    /**
+     * Where ids come from instead of {@link #nextId} if set, so that slots keep their ids across
+     * runs, see {@link SlotIdTable}.
+     */
+    private final SlotIdTable idTable;
+
+    /**
+     * Ids from the idTable that are not kept across runs, because nothing identifies their slot.
+     * Slots made of these slots are not kept either.
+     */
+    private final BitSet unstableIds = new BitSet();
+
     /**
      * A map for storing all the slots encountered by this slot manager. Key is
      * an {@link Integer}, representing a slot id. Value is a
@@ -55,6 +76,22 @@ public class DefaultSlotManager implements SlotManager {
      */
     private final Map<Integer, VariableSlot> variables;
 
+    /** The slots of {@link #variables} in the order they were created. */
+    private final List<Slot> createdSlots = new ArrayList<>();
+
+    /**
+     * The @VarAnnot of each slot id built by {@link #getAnnotation(Slot)}, which the factory asks
+     * for whenever it annotates a type.  Annotations are immutable, so each slot needs only one.
+     */
+    private final Map<Integer, AnnotationMirror> varAnnots = new HashMap<>();
+
+    /**
+     * The slot id of each annotation in {@link #varAnnots}, so that {@link #getSlot(AnnotationMirror)}
+     * does not have to parse its value.  By identity, as equal annotations built elsewhere are not
+     * in the map.
+     */
+    private final Map<AnnotationMirror, Integer> varAnnotIds = new IdentityHashMap<>();
+
     /**
      * A map of {@link AnnotationMirror} to {@link Integer} for caching
      * ConstantSlot. Each {@link AnnotationMirror} uniquely identify a
@@ -101,7 +138,19 @@ public class DefaultSlotManager implements SlotManager {
     public DefaultSlotManager( final ProcessingEnvironment processingEnvironment,
                                final Set<Class<? extends Annotation>> realQualifiers,
                                boolean storeConstants) {
+        this(processingEnvironment, realQualifiers, storeConstants, null);
+    }
+
+    /**
+     * @param idTable the table to take slot ids from, or null to number slots in the order they are
+     *                created
+     */
+    public DefaultSlotManager( final ProcessingEnvironment processingEnvironment,
+                               final Set<Class<? extends Annotation>> realQualifiers,
+                               boolean storeConstants,
+                               final SlotIdTable idTable) {
         this.processingEnvironment = processingEnvironment;
+        this.idTable = idTable;
         // sort the qualifiers so that they are always assigned the same varId
         this.realQualifiers = sortAnnotationClasses(realQualifiers);
         variables = new LinkedHashMap<>();
@@ -122,7 +171,7 @@ public class DefaultSlotManager implements SlotManager {
             @SuppressWarnings("deprecation") // replace getTypeQualifiers
             Set<? extends AnnotationMirror> mirrors = InferenceMain.getInstance().getRealTypeFactory().getQualifierHierarchy().getTypeQualifiers();
             for (AnnotationMirror am : mirrors) {
-                ConstantSlot constantSlot = new ConstantSlot(am, nextId());
+                ConstantSlot constantSlot = new ConstantSlot(am, nextId(getConstantKey(am)));
                 addToVariables(constantSlot);
                 constantCache.put(am, constantSlot.getId());
             }
@@ -150,15 +199,74 @@ public class DefaultSlotManager implements SlotManager {
     }
 
     /**
-     * Returns the next unique variable id.  These id's are monotonically increasing.
+     * Returns the next unique variable id.  Without an id table these id's are monotonically
+     * increasing.  With one, they are the id the table has for the key, or a new id if the key is
+     * null.
+     * @param key what identifies the slot across runs, or null if nothing does
      * @return the next variable id to be used in VariableCreation
      */
-    private int nextId() {
-        return nextId++;
+    private int nextId(String key) {
+        if (idTable == null) {
+            return nextId++;
+        }
+
+        if (key != null) {
+            int id = idTable.getId(key);
+            if (!variables.containsKey(id)) {
+                return id;
+            }
+        }
+        int id = idTable.newId();
+        unstableIds.set(id);
+        return id;
     }
 
     private void addToVariables(final VariableSlot slot) {
         variables.put(slot.getId(), slot);
+        createdSlots.add(slot);
+        largestId = Math.max(largestId, slot.getId());
+    }
+
+    // Keys of slots in the id table. They are only built if there is one.
+
+    private String getLocationKey(String kind, AnnotationLocation location) {
+        if (idTable == null) {
+            return null;
+        }
+        switch (location.getKind()) {
+            case AST_PATH:
+                final AstPathLocation astLocation = (AstPathLocation) location;
+                final ASTRecord record = astLocation.getAstRecord();
+                return toKey(kind + "\tast\t" + record.className + "\t" + record.methodName + "\t"
+                        + record.varName + "\t" + astLocation.getAstPathString());
+            case CLASS_DECL:
+                return toKey(kind + "\tclass\t" + ((ClassDeclLocation) location).getFullyQualifiedClassName());
+            default:
+                return null;
+        }
+    }
+
+    private String getConstantKey(AnnotationMirror value) {
+        return idTable == null ? null : toKey("constant\t" + value);
+    }
+
+    /**
+     * @return the key of a slot made of the given slots, or null if one of them has no key
+     */
+    private String getCompositeKey(String kind, Slot first, Slot second) {
+        if (idTable == null) {
+            return null;
+        }
+        final int firstId = ((VariableSlot) first).getId();
+        final int secondId = ((VariableSlot) second).getId();
+        if (unstableIds.get(firstId) || unstableIds.get(secondId)) {
+            return null;
+        }
+        return kind + "\t" + firstId + "\t" + secondId;
+    }
+
+    private static String toKey(String key) {
+        return key.replace('\n', ' ').replace('\r', ' ');
     }
 
     /**
@@ -176,10 +284,17 @@ public class DefaultSlotManager implements SlotManager {
     public AnnotationMirror getAnnotation(final Slot slot) {
         // if slot is a VariableSlot or one of its subclasses
         if (slot instanceof VariableSlot) {
-            // We need to build the AnnotationBuilder each time because AnnotationBuilders are only
-            // allowed to build their annotations once
-            return convertVariable((VariableSlot) slot,
-                    new AnnotationBuilder(processingEnvironment, VarAnnot.class));
+            final int id = ((VariableSlot) slot).getId();
+            AnnotationMirror annotation = varAnnots.get(id);
+            if (annotation == null) {
+                // We need to build the AnnotationBuilder each time because AnnotationBuilders are only
+                // allowed to build their annotations once
+                annotation = convertVariable((VariableSlot) slot,
+                        new AnnotationBuilder(processingEnvironment, VarAnnot.class));
+                varAnnots.put(id, annotation);
+                varAnnotIds.put(annotation, id);
+            }
+            return annotation;
         }
 
         throw new IllegalArgumentException(
@@ -224,6 +339,11 @@ public class DefaultSlotManager implements SlotManager {
     @Override
     public Slot getSlot( final AnnotationMirror annotationMirror ) {
 
+        final Integer builtId = varAnnotIds.get(annotationMirror);
+        if (builtId != null) {
+            return getVariable(builtId);
+        }
+
         final int id;
         if (InferenceQualifierHierarchy.isVarAnnot(annotationMirror)) {
             if (annotationMirror.getElementValues().isEmpty()) {
@@ -295,9 +415,25 @@ public class DefaultSlotManager implements SlotManager {
         return constants;
     }
 
+    /**
+     * @inheritDoc
+     *
+     * With an id table, this is the largest id, since the ids of slots that were not created in
+     * this run are not used.
+     */
     @Override
     public int getNumberOfSlots() {
-        return nextId - 1;
+        return largestId;
+    }
+
+    @Override
+    public int getNumberOfCreatedSlots() {
+        return createdSlots.size();
+    }
+
+    @Override
+    public List<Slot> getSlotsCreatedAfter(int count) {
+        return new ArrayList<>(createdSlots.subList(count, createdSlots.size()));
     }
 
     @Override
@@ -305,13 +441,13 @@ public class DefaultSlotManager implements SlotManager {
         VariableSlot variableSlot;
         if (location.getKind() == AnnotationLocation.Kind.MISSING) {
             //Don't cache slot for MISSING LOCATION. Just create a new one and return.
-            variableSlot = new VariableSlot(location, nextId());
+            variableSlot = new VariableSlot(location, nextId(null));
             addToVariables(variableSlot);
         } else if (locationCache.containsKey(location)) {
             int id = locationCache.get(location);
             variableSlot = getVariable(id);
         } else {
-            variableSlot = new VariableSlot(location, nextId());
+            variableSlot = new VariableSlot(location, nextId(getLocationKey("variable", location)));
             addToVariables(variableSlot);
             locationCache.put(location, variableSlot.getId());
         }
@@ -323,13 +459,14 @@ public class DefaultSlotManager implements SlotManager {
         RefinementVariableSlot refinementVariableSlot;
         if (location.getKind() == AnnotationLocation.Kind.MISSING) {
             //Don't cache slot for MISSING LOCATION. Just create a new one and return.
-            refinementVariableSlot = new RefinementVariableSlot(location, nextId(), refined);
+            refinementVariableSlot = new RefinementVariableSlot(location, nextId(null), refined);
             addToVariables(refinementVariableSlot);
         } else if (locationCache.containsKey(location)) {
             int id = locationCache.get(location);
             refinementVariableSlot = (RefinementVariableSlot) getVariable(id);
         } else {
-            refinementVariableSlot = new RefinementVariableSlot(location, nextId(), refined);
+            refinementVariableSlot = new RefinementVariableSlot(location,
+                    nextId(getLocationKey("refinement", location)), refined);
             addToVariables(refinementVariableSlot);
             locationCache.put(location, refinementVariableSlot.getId());
         }
@@ -343,7 +480,7 @@ public class DefaultSlotManager implements SlotManager {
             int id = constantCache.get(value);
             constantSlot = (ConstantSlot) getVariable(id);
         } else {
-            constantSlot = new ConstantSlot(value, nextId());
+            constantSlot = new ConstantSlot(value, nextId(getConstantKey(value)));
             addToVariables(constantSlot);
             constantCache.put(value, constantSlot.getId());
         }
@@ -358,7 +495,8 @@ public class DefaultSlotManager implements SlotManager {
             int id = combSlotPairCache.get(pair);
             combVariableSlot = (CombVariableSlot) getVariable(id);
         } else {
-            combVariableSlot = new CombVariableSlot(null, nextId(), receiver, declared);
+            combVariableSlot = new CombVariableSlot(null, nextId(getCompositeKey("comb", receiver, declared)),
+                    receiver, declared);
             addToVariables(combVariableSlot);
             combSlotPairCache.put(pair, combVariableSlot.getId());
         }
@@ -375,7 +513,7 @@ public class DefaultSlotManager implements SlotManager {
             lubVariableSlot = (LubVariableSlot) getVariable(id);
         } else {
             // We need a non-null location in the future for better debugging outputs
-            lubVariableSlot = new LubVariableSlot(null, nextId(), left, right);
+            lubVariableSlot = new LubVariableSlot(null, nextId(getCompositeKey("lub", left, right)), left, right);
             addToVariables(lubVariableSlot);
             lubSlotPairCache.put(pair, lubVariableSlot.getId());
         }
@@ -390,7 +528,9 @@ public class DefaultSlotManager implements SlotManager {
             int id = existentialSlotPairCache.get(pair);
             existentialVariableSlot = (ExistentialVariableSlot) getVariable(id);
         } else {
-            existentialVariableSlot = new ExistentialVariableSlot(nextId(), potentialSlot, alternativeSlot);
+            existentialVariableSlot = new ExistentialVariableSlot(
+                    nextId(getCompositeKey("existential", potentialSlot, alternativeSlot)),
+                    potentialSlot, alternativeSlot);
             addToVariables(existentialVariableSlot);
             existentialSlotPairCache.put(pair, existentialVariableSlot.getId());
         }
@@ -406,7 +546,8 @@ public class DefaultSlotManager implements SlotManager {
 
         // create the arithmetic var slot if it doesn't exist for the given location
         if (!arithmeticSlotCache.containsKey(location)) {
-            ArithmeticVariableSlot slot = new ArithmeticVariableSlot(location, nextId());
+            ArithmeticVariableSlot slot = new ArithmeticVariableSlot(location,
+                    nextId(getLocationKey("arithmetic", location)));
             addToVariables(slot);
             arithmeticSlotCache.put(location, slot.getId());
             return slot;
@@ -0,0 +1,261 @@
+package checkers.inference;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.SourceInsertion;
+
+/**
+ * Inserts annotations into source files at the {@link SourceInsertion source positions} recorded
+ * for their locations during inference, without writing a Jaif for the Annotation File Utilities
+ * to match against a new parse of the program.
+ *
+ * Each source file is mapped into memory, decoded once, and written out in a single pass that
+ * copies the text between insertions.  A file is only rewritten if the position of every
+ * annotation in it is known and the text at each position is what javac saw there; other files
+ * are left for the AFU, see {@link #insert}.
+ *
+ * Annotations are written as they appear in the Jaif, fully qualified, so no imports are added.
+ */
+public class DirectSourceInserter {
+
+    private static final Logger logger = Logger.getLogger(DirectSourceInserter.class.getName());
+
+    private final Map<AnnotationLocation, String> locationToAnno;
+
+    private final boolean insertMainModOfLocalVar;
+
+    /**
+     * An annotation to insert at an offset of a source file.
+     */
+    private static class Edit {
+        final SourceInsertion insertion;
+        final String annotation;
+
+        Edit(SourceInsertion insertion, String annotation) {
+            this.insertion = insertion;
+            this.annotation = annotation;
+        }
+    }
+
+    /**
+     * @param locationToAnno the annotation of each location, as given to the JaifBuilder
+     * @param insertMainModOfLocalVar whether annotations on the main modifier of local variables are
+     *                                inserted, see the JaifBuilder
+     */
+    public DirectSourceInserter(Map<AnnotationLocation, String> locationToAnno, boolean insertMainModOfLocalVar) {
+        this.locationToAnno = locationToAnno;
+        this.insertMainModOfLocalVar = insertMainModOfLocalVar;
+    }
+
+    /**
+     * Insert the annotations into every source file for which all of them can be inserted directly.
+     *
+     * @param javaFiles the source files of the program
+     * @param outputDir the directory to write the annotated files to, laid out by package as the AFU
+     *                  does, or null to rewrite the files in place
+     * @param charset the encoding of the source files
+     * @return the annotated file of each source file that was handled, by source file path as given in
+     * javaFiles.  The other files still need the AFU.
+     */
+    public Map<String, File> insert(String [] javaFiles, File outputDir, Charset charset) throws IOException {
+        final Map<String, List<Edit>> editsByFile = new HashMap<>();
+        final Set<String> unsupportedFiles = new HashSet<>();
+
+        for (Entry<AnnotationLocation, String> entry : locationToAnno.entrySet()) {
+            final AnnotationLocation location = entry.getKey();
+            final SourceInsertion insertion;
+            switch (location.getKind()) {
+                case AST_PATH:
+                    final AstPathLocation astLocation = (AstPathLocation) location;
+                    // The same annotations the JaifBuilder leaves out.
+                    if ((!insertMainModOfLocalVar && astLocation.isMainModOfLocalVar()) || astLocation.isEmptyPath()) {
+                        continue;
+                    }
+                    insertion = astLocation.getSourceInsertion();
+                    if (insertion == null) {
+                        if (astLocation.getAstRecord().ast == null) {
+                            logger.fine("No source file for " + location + ", inserting all files with the AFU");
+                            return new LinkedHashMap<>();
+                        }
+                        unsupportedFiles.add(canonicalPath(astLocation.getAstRecord().ast.getSourceFile().getName()));
+                        continue;
+                    }
+                    break;
+
+                case CLASS_DECL:
+                    insertion = ((ClassDeclLocation) location).getSourceInsertion();
+                    if (insertion == null) {
+                        logger.fine("No source file for " + location + ", inserting all files with the AFU");
+                        return new LinkedHashMap<>();
+                    }
+                    break;
+
+                default:
+                    continue;
+            }
+
+            final String sourceFile = canonicalPath(insertion.getSourceFile());
+            if (insertion.getKind() == SourceInsertion.Kind.UNSUPPORTED) {
+                unsupportedFiles.add(sourceFile);
+            } else {
+                editsByFile.computeIfAbsent(sourceFile, file -> new ArrayList<>()).add(new Edit(insertion, entry.getValue()));
+            }
+        }
+
+        final Map<String, File> annotatedFiles = new LinkedHashMap<>();
+        for (String javaFile : javaFiles) {
+            final String sourceFile = canonicalPath(javaFile);
+            if (unsupportedFiles.contains(sourceFile)) {
+                continue;
+            }
+
+            List<Edit> edits = editsByFile.get(sourceFile);
+            if (edits == null) {
+                edits = new ArrayList<>();
+            }
+            final File target = outputDir == null ? new File(javaFile) : InferenceLauncher.getAfuOutputFile(outputDir, javaFile);
+            if (outputDir == null && edits.isEmpty()) {
+                annotatedFiles.put(javaFile, target);
+            } else if (rewrite(new File(javaFile).toPath(), target.toPath(), edits, charset)) {
+                annotatedFiles.put(javaFile, target);
+            }
+        }
+        return annotatedFiles;
+    }
+
+    /**
+     * Write the source with the edits applied to target.
+     *
+     * @return false if the source text does not match an edit, in which case nothing is written
+     */
+    private static boolean rewrite(Path source, Path target, List<Edit> edits, Charset charset) throws IOException {
+        final CharBuffer text;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            text = charset.decode(mapped);
+        }
+
+        // Resolve every edit to the offset it is written at, before anything is written.
+        final int [] offsets = new int[edits.size()];
+        final String [] insertions = new String[edits.size()];
+        final Integer [] order = new Integer[edits.size()];
+        for (int i = 0; i < edits.size(); i++) {
+            final Edit edit = edits.get(i);
+            final SourceInsertion insertion = edit.insertion;
+            if (insertion.getKind() == SourceInsertion.Kind.BEFORE_TOKEN) {
+                final String token = insertion.getText();
+                if (insertion.getOffset() > text.length()
+                        || (token != null && !startsWith(text, insertion.getOffset(), token))) {
+                    logger.fine("Unexpected source text at " + insertion + ", inserting " + source + " with the AFU");
+                    return false;
+                }
+                offsets[i] = insertion.getOffset();
+                insertions[i] = edit.annotation + " ";
+            } else {
+                final int paren = skipWhitespaceAndComments(text, skipIdentifier(text, insertion.getOffset()));
+                if (paren >= text.length() || text.charAt(paren) != '(') {
+                    logger.fine("No parameter list at " + insertion + ", inserting " + source + " with the AFU");
+                    return false;
+                }
+                offsets[i] = paren + 1;
+                insertions[i] = edit.annotation + " " + insertion.getText();
+            }
+            order[i] = i;
+        }
+        // A receiver parameter goes before an annotation on the type of the first parameter.
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> offsets[i])
+                .thenComparingInt(i -> edits.get(i).insertion.getKind() == SourceInsertion.Kind.RECEIVER ? 0 : 1)
+                .thenComparing(i -> insertions[i]));
+
+        final Path directory = Files.createDirectories(target.toAbsolutePath().getParent());
+        final Path temp = Files.createTempFile(directory, ".direct-insert", ".java");
+        try (Writer writer = Files.newBufferedWriter(temp, charset)) {
+            int written = 0;
+            for (Integer i : order) {
+                writer.append(text, written, offsets[i]);
+                writer.write(insertions[i]);
+                written = offsets[i];
+            }
+            writer.append(text, written, text.length());
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    private static boolean startsWith(CharSequence text, int offset, String token) {
+        if (offset + token.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (text.charAt(offset + i) != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipIdentifier(CharSequence text, int offset) {
+        while (offset < text.length() && Character.isJavaIdentifierPart(text.charAt(offset))) {
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * @return the offset of the first character at or after offset that is not whitespace or in a
+     * comment
+     */
+    private static int skipWhitespaceAndComments(CharSequence text, int offset) {
+        while (offset < text.length()) {
+            char c = text.charAt(offset);
+            if (Character.isWhitespace(c)) {
+                offset++;
+            } else if (c == '/' && offset + 1 < text.length() && text.charAt(offset + 1) == '/') {
+                while (offset < text.length() && text.charAt(offset) != '\n') {
+                    offset++;
+                }
+            } else if (c == '/' && offset + 1 < text.length() && text.charAt(offset + 1) == '*') {
+                offset += 2;
+                while (offset + 1 < text.length() && !(text.charAt(offset) == '*' && text.charAt(offset + 1) == '/')) {
+                    offset++;
+                }
+                offset += 2;
+            } else {
+                break;
+            }
+        }
+        return offset;
+    }
+
+    private static String canonicalPath(String file) {
+        try {
+            return new File(file).getCanonicalPath();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not resolve: " + file, e);
+        }
+    }
+}
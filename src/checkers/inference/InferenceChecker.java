@@ -2,9 +2,13 @@ package checkers.inference;
 
 import java.util.Properties;
 
+import javax.lang.model.element.TypeElement;
+
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
 
+import com.sun.source.util.TreePath;
+
 public class InferenceChecker extends BaseTypeChecker {
 
     @Override
@@ -14,6 +18,39 @@ public class InferenceChecker extends BaseTypeChecker {
         super.initChecker();
         // Overrides visitor created by initChecker
         this.visitor = InferenceMain.getInstance().getVisitor();
+
+        ConstraintCache constraintCache = InferenceMain.getInstance().getConstraintCache();
+        if (constraintCache != null) {
+            constraintCache.init(getProcessingEnvironment());
+        }
+    }
+
+    /**
+     * Skips the classes of compilation units whose constraints are loaded from the
+     * {@link ConstraintCache} or generated by another constraint generation worker, and records
+     * the constraints of the others for it.
+     */
+    @Override
+    public void typeProcess(TypeElement element, TreePath tree) {
+        ConstraintCache constraintCache = InferenceMain.getInstance().getConstraintCache();
+        if (constraintCache == null) {
+            super.typeProcess(element, tree);
+            return;
+        }
+
+        if (!constraintCache.isAssigned(tree.getCompilationUnit())) {
+            // Another constraint generation worker visits this unit.
+            return;
+        }
+        if (constraintCache.loadCachedUnit(tree.getCompilationUnit())) {
+            return;
+        }
+        constraintCache.startVisiting(tree.getCompilationUnit());
+        try {
+            super.typeProcess(element, tree);
+        } finally {
+            constraintCache.finishVisiting();
+        }
     }
 
     /**
@@ -0,0 +1,388 @@
+package checkers.inference;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * A long-running process that serves InferenceLauncher requests over a local socket, so that
+ * repeated invocations do not each pay for JVM start up, loading the checker framework and
+ * warming up the JIT.
+ *
+ * The daemon is started in the directory the requests are run from, by scripts/inference-daemon,
+ * and requests are sent by scripts/inference-client, which takes the same arguments as
+ * scripts/inference. Runs are made {@link InferenceOptions#inProcess in process}, so inference,
+ * annotation insertion and typechecking all run in the daemon's JVM.
+ *
+ * Requests are served one at a time, as InferenceMain and InferenceOptions are global. Before each
+ * request the options and statistics are reset, and inference starts from a fresh
+ * {@link InferenceMain#resetInstance() InferenceMain} instance.
+ *
+ * Only the user who started the daemon may send requests, as a request runs javac and the
+ * Annotation File Utilities with any arguments and output paths under that user's privileges.
+ * The daemon writes a random token to {@link #getTokenFile(File, int)} in that user's home
+ * directory, readable by that user only, and serves only requests that start with it.
+ *
+ * Protocol, in UTF-8 lines: the client sends the token, its working directory, the number of
+ * arguments and then one argument per line. The daemon replies with the output of the request
+ * followed by the line {@link #EXIT_PREFIX}{@code <status>}. A request with the single argument
+ * {@link #SHUTDOWN} stops the daemon. A request is refused with {@link #REFUSED} if its number of
+ * arguments is not between 0 and {@link #MAX_ARGUMENTS}, or if it ends before all its arguments.
+ *
+ * Exits of InferenceMain and the launcher during a request go through
+ * {@link InferenceMain#exit(int)}, whose hook ends that request with the given status instead of
+ * the daemon.  The Annotation File Utilities are run in a separate process, as they call
+ * System.exit themselves.
+ */
+public class InferenceDaemon {
+
+    public static final int DEFAULT_PORT = 7411;
+
+    public static final String EXIT_PREFIX = "inference-daemon-exit: ";
+
+    public static final String SHUTDOWN = "--shutdown";
+
+    /** Exit status of requests the daemon refuses to serve. */
+    public static final int REFUSED = 2;
+
+    /** Largest number of arguments the daemon accepts in a request. */
+    public static final int MAX_ARGUMENTS = 10_000;
+
+    private final ServerSocket serverSocket;
+
+    private final File workingDirectory;
+
+    private final File tokenFile;
+
+    private final String token;
+
+    /** Target of System.out, System.err and logging while a request is served. */
+    private final RequestOutputStream requestOutput = new RequestOutputStream();
+
+    /**
+     * @param port the port to listen on, or 0 for any free port
+     * @param tokenDirectory the directory to write the token file to, see {@link #getTokenFile(File, int)}
+     */
+    public InferenceDaemon(int port, File tokenDirectory) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.workingDirectory = new File("").getCanonicalFile();
+        this.tokenFile = getTokenFile(tokenDirectory, serverSocket.getLocalPort());
+
+        byte [] tokenBytes = new byte[32];
+        new SecureRandom().nextBytes(tokenBytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : tokenBytes) {
+            token.append(String.format("%02x", b));
+        }
+        this.token = token.toString();
+        try {
+            writeTokenFile();
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the directory of the token files of the current user, {@code ~/.inference-daemon}
+     */
+    public static File getDefaultTokenDirectory() {
+        return new File(System.getProperty("user.home"), ".inference-daemon");
+    }
+
+    /**
+     * @return the file holding the token of the daemon listening on the given port
+     */
+    public static File getTokenFile(File tokenDirectory, int port) {
+        return new File(tokenDirectory, port + ".token");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Write the token to a file only the current user can read, where the file system supports
+     * POSIX permissions, and otherwise to a file in the user's home directory.
+     */
+    private void writeTokenFile() throws IOException {
+        final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        Path directory = tokenFile.getParentFile().toPath();
+        if (posix) {
+            if (!Files.isDirectory(directory)) {
+                Files.createDirectories(directory,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            }
+            Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+        } else {
+            Files.createDirectories(directory);
+        }
+
+        Path temp = posix
+                ? Files.createTempFile(directory, ".token", ".tmp",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : Files.createTempFile(directory, ".token", ".tmp");
+        Files.write(temp, (token + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, tokenFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static void main(String [] args) throws IOException {
+        int port = DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            if ("--port".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Usage: InferenceDaemon [--port <port>]");
+                System.exit(1);
+            }
+        }
+        new InferenceDaemon(port, getDefaultTokenDirectory()).serve();
+    }
+
+    /**
+     * Serve requests until a shutdown request arrives.
+     */
+    public void serve() throws IOException {
+        final PrintStream daemonOut = System.out;
+        final PrintStream daemonErr = System.err;
+        PrintStream requestStream = new PrintStream(requestOutput, true, StandardCharsets.UTF_8.name());
+        System.setOut(requestStream);
+        System.setErr(requestStream);
+        redirectConsoleLogging();
+
+        daemonOut.println("Inference daemon listening on port " + serverSocket.getLocalPort()
+                + " in " + workingDirectory);
+        daemonOut.flush();
+
+        try {
+            boolean running = true;
+            while (running) {
+                try (Socket socket = serverSocket.accept()) {
+                    running = handle(socket);
+                } catch (IOException | RuntimeException e) {
+                    // A failed request must not end the daemon.
+                    daemonOut.println("Failed to serve request: " + e);
+                }
+            }
+        } finally {
+            serverSocket.close();
+            Files.deleteIfExists(tokenFile.toPath());
+            System.setOut(daemonOut);
+            System.setErr(daemonErr);
+            redirectConsoleLogging();
+        }
+    }
+
+    /**
+     * Serve the request on the given socket.
+     *
+     * @return false if the daemon should stop
+     */
+    private boolean handle(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        OutputStream out = socket.getOutputStream();
+        PrintWriter reply = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), true);
+
+        String clientToken = in.readLine();
+        if (clientToken == null || !MessageDigest.isEqual(clientToken.trim().getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8))) {
+            return refuse(reply, "Request refused, it does not start with the token of this daemon in " + tokenFile);
+        }
+
+        String clientDirectory = in.readLine();
+        String countLine = in.readLine();
+        if (clientDirectory == null || countLine == null) {
+            return refuse(reply, "Request refused, it ends before the number of arguments.");
+        }
+        int count;
+        try {
+            count = Integer.parseInt(countLine.trim());
+        } catch (NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0 || count > MAX_ARGUMENTS) {
+            return refuse(reply, "Request refused, the number of arguments is not between 0 and "
+                    + MAX_ARGUMENTS + ": " + countLine);
+        }
+        String [] args = new String[count];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readLine();
+            if (args[i] == null) {
+                return refuse(reply, "Request refused, it ends after " + i + " of " + count + " arguments.");
+            }
+        }
+
+        if (args.length == 1 && SHUTDOWN.equals(args[0])) {
+            reply.println(EXIT_PREFIX + 0);
+            return false;
+        }
+
+        if (!new File(clientDirectory).getCanonicalFile().equals(workingDirectory)) {
+            return refuse(reply, "The inference daemon runs in " + workingDirectory
+                    + ", start a daemon in " + clientDirectory + " to serve requests from there.");
+        }
+
+        int status = run(args, out);
+        if (!requestOutput.endsWithNewline()) {
+            reply.println();
+        }
+        reply.println(EXIT_PREFIX + status);
+        return true;
+    }
+
+    /**
+     * Reply to a request that is not served with the given message and {@link #REFUSED}.
+     *
+     * @return true, as the daemon keeps serving
+     */
+    private static boolean refuse(PrintWriter reply, String message) {
+        reply.println(message);
+        reply.println(EXIT_PREFIX + REFUSED);
+        return true;
+    }
+
+    /**
+     * Run the launcher on the given arguments, writing its output to {@code out}.
+     *
+     * @return the exit status of the request
+     */
+    private int run(String [] args, OutputStream out) {
+        InferenceOptions.reset();
+        Statistics.clearStatistics();
+
+        requestOutput.setTarget(out);
+        InferenceMain.setExitHook(status -> {
+            throw new ExitException(status);
+        });
+        try {
+            new InProcessLauncher(System.out, System.err).launch(args);
+            return 0;
+        } catch (ExitException e) {
+            return e.status;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            return 1;
+        } finally {
+            InferenceMain.setExitHook(null);
+            System.out.flush();
+            requestOutput.setTarget(null);
+        }
+    }
+
+    /**
+     * Replace the console handlers of the root logger, which hold on to the System.err of the time
+     * they were created, by one that writes to the current request.
+     */
+    private static void redirectConsoleLogging() {
+        Logger root = Logger.getLogger("");
+        for (Handler handler : root.getHandlers()) {
+            if (handler instanceof ConsoleHandler) {
+                root.removeHandler(handler);
+            }
+        }
+        root.addHandler(new ConsoleHandler());
+    }
+
+    /**
+     * An InferenceLauncher that always runs in process, as if --inProcess was given, except for the
+     * Annotation File Utilities.
+     */
+    private static class InProcessLauncher extends InferenceLauncher {
+
+        InProcessLauncher(PrintStream outStream, PrintStream errStream) {
+            super(outStream, errStream);
+        }
+
+        @Override
+        protected void initInferenceOptions(String [] args) {
+            super.initInferenceOptions(args);
+            InferenceOptions.inProcess = true;
+        }
+
+        @Override
+        protected boolean isAfuInProcess() {
+            // The AFU calls System.exit, which would end the daemon.
+            return false;
+        }
+    }
+
+    /**
+     * Forwards everything written to System.out and System.err to the client of the current
+     * request, and drops it between requests.
+     */
+    private static class RequestOutputStream extends OutputStream {
+
+        private OutputStream target;
+
+        private boolean endsWithNewline = true;
+
+        synchronized void setTarget(OutputStream target) {
+            this.target = target;
+            if (target != null) {
+                this.endsWithNewline = true;
+            }
+        }
+
+        synchronized boolean endsWithNewline() {
+            return endsWithNewline;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (target != null) {
+                target.write(b);
+                endsWithNewline = b == '\n';
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (target != null && len > 0) {
+                target.write(b, off, len);
+                endsWithNewline = b[off + len - 1] == '\n';
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (target != null) {
+                target.flush();
+            }
+        }
+    }
+
+    /**
+     * Thrown by the exit hook instead of exiting the JVM during a request.
+     */
+    private static class ExitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ExitException(int status) {
+            super("Exit with status " + status + " during an inference daemon request");
+            this.status = status;
+        }
+    }
+}
@@ -10,16 +10,34 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import checkers.inference.InferenceOptions.InitStatus;
+import checkers.inference.util.JaifBuilder;
 
 
 /**
@@ -31,12 +49,17 @@ import checkers.inference.InferenceOptions.InitStatus;
  * Use the --mode option to specify which tasks are run.  The values that can
  * be passed to this option are enumerated in InferenceLauncher.Mode
  *
+ * By default each task runs in its own process.  With --inProcess, all tasks run in the
+ * launcher's JVM: inference through InferenceMain, annotation insertion through the
+ * Annotation File Utilities' annotator.Main, and typechecking through javac, so classes
+ * loaded and compiled by the JIT for one task are reused by the next.
+ *
  * See InferenceOptions.java for more information on arguments to InferenceLauncher
  */
 public class InferenceLauncher {
 
-    private final PrintStream outStream;
-    private final PrintStream errStream;
+    protected final PrintStream outStream;
+    protected final PrintStream errStream;
 
     private static final String PROP_PREFIX = "InferenceLauncher";
     private static final String RUNTIME_BCP_PROP = PROP_PREFIX + ".runtime.bcp";
@@ -62,7 +85,7 @@ public class InferenceLauncher {
         } catch (IllegalArgumentException iexc) {
             outStream.println("Could not recognize mode: " + InferenceOptions.mode + "\n"
                     + "valid modes: " + SystemUtil.join(", ", Mode.values()));
-            System.exit(1);
+            InferenceMain.exit(1);
         }
 
         switch (mode) {
@@ -115,6 +138,10 @@ public class InferenceLauncher {
      *                  because when we roundtrip we may or may not have inserted annotations in place.
      */
     public void typecheck(String [] javaFiles) {
+        if (InferenceOptions.inProcess) {
+            typecheckInProcess(javaFiles);
+            return;
+        }
         printStep("Typechecking", outStream);
 
         List<String> options = new ArrayList<>(InferenceOptions.javacOptions.size() + javaFiles.length + 2);
@@ -154,7 +181,37 @@ public class InferenceLauncher {
      * in InferenceOptions but excluding those that do not apply to the inference step
      */
     public void infer() {
+        if (InferenceOptions.generationWorkers > 1) {
+            generateConstraintsInWorkers();
+        }
+        if (InferenceOptions.inProcess) {
+            inferInProcess();
+            return;
+        }
         printStep("Inferring", outStream);
+        List<String> argList = getInferCommand(null, InferenceOptions.javacOptions);
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running infer command:");
+            outStream.println(SystemUtil.join(" ", argList));
+        }
+
+        int result = ExecUtil.execute(argList.toArray(new String[argList.size()]), outStream, System.err);
+        outStream.flush();
+        errStream.flush();
+
+        reportStatus("Inference", result, outStream);
+        outStream.flush();
+        exitOnNonZeroStatus(result);
+    }
+
+    /**
+     * @param workerUnits for a constraint generation worker, the file that lists its source files,
+     *                    otherwise null
+     * @return the command that runs InferenceMain on the same options in InferenceOptions but
+     * excluding those that do not apply to the inference step
+     */
+    private List<String> getInferCommand(String workerUnits, List<String> javacOptions) {
         final String java = getJavaCommand(System.getProperty("java.home"), outStream);
         List<String> argList = new LinkedList<>();
         argList.add(java);
@@ -168,7 +225,7 @@ public class InferenceLauncher {
         argList.add("-classpath");
         argList.add(getInferenceRuntimeClassPath());
 
-        if (InferenceOptions.debug != null) {
+        if (InferenceOptions.debug != null && workerUnits == null) {
             argList.add("-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=" + InferenceOptions.debug);
         }
 
@@ -186,9 +243,32 @@ public class InferenceLauncher {
         addIfNotNull("--solver", InferenceOptions.solver, argList);
         addIfNotNull("--solverArgs", InferenceOptions.solverArgs, argList);
         addIfNotNull("--cfArgs", InferenceOptions.cfArgs, argList);
-
+        addIfNotNull("--constraintCacheDir", InferenceOptions.constraintCacheDir, argList);
         addIfTrue("--hacks", InferenceOptions.hacks, argList);
 
+        if (workerUnits != null) {
+            // Workers only fill the constraint cache, the slot ids are given when it is loaded.
+            argList.add("--constraintWorkerUnits");
+            argList.add(workerUnits);
+        } else {
+            addIfNotNull("--slotIdTable", InferenceOptions.slotIdTable, argList);
+            if (InferenceOptions.slotIdTable != null) {
+                argList.add("--slotIdTableHistory");
+                argList.add(Integer.toString(InferenceOptions.slotIdTableHistory));
+            }
+            addIfTrue("--deltaJaif", InferenceOptions.deltaJaif, argList);
+            if (InferenceOptions.directInsert) {
+                // Inference writes the annotated files itself.
+                argList.add("--directInsert");
+                addIfTrue("--inPlace", InferenceOptions.inPlace, argList);
+                addIfNotNull("--afuOutputDir", InferenceOptions.afuOutputDir, argList);
+            }
+            if (InferenceOptions.afuThreads > 1) {
+                argList.add("--afuThreads");
+                argList.add(String.valueOf(InferenceOptions.afuThreads));
+            }
+        }
+
         argList.add("--");
 
         String compilationBcp = getInferenceCompilationBootclassPath();
@@ -197,24 +277,129 @@ public class InferenceLauncher {
         }
 
         int preJavacOptsSize = argList.size();
-        argList.addAll(InferenceOptions.javacOptions);
+        argList.addAll(javacOptions);
         removeXmArgs(argList, preJavacOptsSize, argList.size());
 
         // TODO: NEED TO HANDLE JDK
         argList.addAll(Arrays.asList(InferenceOptions.javaFiles));
+        return argList;
+    }
 
-        if (InferenceOptions.printCommands) {
-            outStream.println("Running infer command:");
-            outStream.println(SystemUtil.join(" ", argList));
+    /**
+     * Generates the constraints of the program in {@link InferenceOptions#generationWorkers}
+     * processes at the same time, each of which visits a share of the source files and writes their
+     * slots and constraints to the constraint cache, see {@link ConstraintCache}.  Inference then
+     * loads them from the cache, which reconciles the slots of declarations that several workers
+     * saw by their location.  The units a worker could not cache are visited by inference itself.
+     *
+     * Every worker compiles the whole program, so that the program is the same as for inference,
+     * but only visits its own files.  The files are shared out by package, largest packages first.
+     */
+    protected void generateConstraintsInWorkers() {
+        printStep("Generating constraints in " + InferenceOptions.generationWorkers + " workers", outStream);
+
+        final Map<String, List<String>> filesByPackage = new LinkedHashMap<>();
+        final Map<String, Long> packageSizes = new HashMap<>();
+        for (String javaFile : InferenceOptions.javaFiles) {
+            String packageName = readPackageName(javaFile);
+            filesByPackage.computeIfAbsent(packageName, p -> new ArrayList<>()).add(javaFile);
+            packageSizes.merge(packageName, new File(javaFile).length(), Long::sum);
         }
+        List<String> packages = new ArrayList<>(filesByPackage.keySet());
+        packages.sort((p1, p2) -> Long.compare(packageSizes.get(p2), packageSizes.get(p1)));
 
-        int result = ExecUtil.execute(argList.toArray(new String[argList.size()]), outStream, System.err);
-        outStream.flush();
-        errStream.flush();
+        final int workers = Math.min(InferenceOptions.generationWorkers, packages.size());
+        if (workers < 2) {
+            // Inference visits a single package as fast itself.
+            return;
+        }
+        final List<List<String>> shares = new ArrayList<>(workers);
+        final long [] shareSizes = new long[workers];
+        for (int i = 0; i < workers; i++) {
+            shares.add(new ArrayList<>());
+        }
+        for (String packageName : packages) {
+            int smallest = 0;
+            for (int i = 1; i < workers; i++) {
+                if (shareSizes[i] < shareSizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            shares.get(smallest).addAll(filesByPackage.get(packageName));
+            shareSizes[smallest] += packageSizes.get(packageName);
+        }
 
-        reportStatus("Inference", result, outStream);
+        final List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        final List<File> workerFiles = new ArrayList<>();
+        int result = 0;
+        ExecutorService service = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                final File unitsFile = File.createTempFile("inference-worker-" + i + "-", ".files");
+                final File classDir = Files.createTempDirectory("inference-worker-" + i + "-classes").toFile();
+                workerFiles.add(unitsFile);
+                workerFiles.add(classDir);
+                Files.write(unitsFile.toPath(), shares.get(i), Charset.defaultCharset());
+
+                final List<String> command = getInferCommand(unitsFile.getAbsolutePath(),
+                        getWorkerJavacOptions(classDir));
+                printCommand("Running constraint generation worker command:", command);
+                final ByteArrayOutputStream workerOut = new ByteArrayOutputStream();
+                outputs.add(workerOut);
+                futures.add(service.submit(() -> ExecUtil.execute(
+                        command.toArray(new String[command.size()]), workerOut, workerOut)));
+            }
+            for (Future<Integer> future : futures) {
+                int status = future.get();
+                result = result == 0 ? status : result;
+            }
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            service.shutdown();
+            for (File file : workerFiles) {
+                deleteRecursively(file);
+            }
+        }
+
+        for (ByteArrayOutputStream workerOut : outputs) {
+            outStream.println(workerOut.toString());
+        }
+        if (result != 0) {
+            // Inference visits the units the workers did not cache itself.
+            outStream.println("A constraint generation worker failed with status " + result
+                    + ", inference visits the files it did not finish.");
+        }
         outStream.flush();
-        exitOnNonZeroStatus(result);
+    }
+
+    /**
+     * @return the javac options, with class files written to classDir, so that workers do not
+     * write the same class files at the same time
+     */
+    private static List<String> getWorkerJavacOptions(File classDir) {
+        List<String> javacOptions = new ArrayList<>(InferenceOptions.javacOptions);
+        int outputDir = javacOptions.indexOf("-d");
+        if (outputDir >= 0 && outputDir + 1 < javacOptions.size()) {
+            javacOptions.set(outputDir + 1, classDir.getAbsolutePath());
+        } else {
+            javacOptions.add("-d");
+            javacOptions.add(classDir.getAbsolutePath());
+        }
+        return javacOptions;
+    }
+
+    private static void deleteRecursively(File file) {
+        File [] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
     }
 
     public static String getJavaCommand(final String javaHome, final PrintStream out) {
@@ -257,6 +442,18 @@ public class InferenceLauncher {
      * potentially altered.   This list is needed for subsequent typechecking.
      */
     public List<String> insertJaif() {
+        if (InferenceOptions.afuThreads > 1) {
+            return insertJaifShards();
+        }
+        if (InferenceOptions.deltaJaif) {
+            return insertJaifDelta();
+        }
+        if (InferenceOptions.directInsert) {
+            return insertJaifDirect();
+        }
+        if (isAfuInProcess()) {
+            return insertJaifInProcess();
+        }
         List<String> outputJavaFiles = new ArrayList<>(InferenceOptions.javaFiles.length);
 
         printStep("Inserting annotations", outStream);
@@ -324,6 +521,499 @@ public class InferenceLauncher {
         return outputJavaFiles;
     }
 
+    /**
+     * Runs InferenceMain in the current JVM.  Its javac gets the classpath that the inference
+     * process would have been started with, unless the javac options already specify one.
+     */
+    protected void inferInProcess() {
+        printStep("Inferring", outStream);
+
+        final List<String> originalJavacOptions = InferenceOptions.javacOptions;
+        List<String> javacOptions = getInProcessJavacOptions();
+        if (indexOfClasspath(javacOptions) < 0) {
+            javacOptions.add(0, "-classpath");
+            javacOptions.add(1, getInferenceRuntimeClassPath());
+        }
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running inference in process with javac options:");
+            outStream.println(SystemUtil.join(" ", javacOptions));
+        }
+
+        // InferenceMain reads its javac options from InferenceOptions.
+        InferenceOptions.javacOptions = javacOptions;
+        try {
+            InferenceMain.resetInstance().run();
+        } finally {
+            InferenceOptions.javacOptions = originalJavacOptions;
+        }
+
+        reportStatus("Inference", 0, outStream);
+        outStream.flush();
+    }
+
+    /**
+     * @return true if the Annotation File Utilities are run in the current JVM, see
+     * {@link #runAfuInProcess}, rather than by insert-annotations-to-source
+     */
+    protected boolean isAfuInProcess() {
+        return InferenceOptions.inProcess;
+    }
+
+    /**
+     * Runs the Annotation File Utilities in the current JVM.  annotation-file-utilities.jar must be
+     * on the classpath, as it is when the launcher is started by scripts/inference.
+     * @return The list of source files that were passed as arguments to the AFU and were
+     * potentially altered.
+     */
+    protected List<String> insertJaifInProcess() {
+        List<String> outputJavaFiles = new ArrayList<>(InferenceOptions.javaFiles.length);
+
+        printStep("Inserting annotations", outStream);
+        List<String> options = getAfuArguments(getJaifFilePath(getAfuOutputDir()),
+                Arrays.asList(InferenceOptions.javaFiles));
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running Insert Annotations in process with arguments:");
+            outStream.println(SystemUtil.join(" ", options));
+        }
+
+        ByteArrayOutputStream insertOut = new ByteArrayOutputStream();
+        int result = runAfuInProcess(options, insertOut);
+        outStream.println(insertOut.toString());
+
+        if (!InferenceOptions.inPlace) {
+            for (File newJavaFile : findWrittenFiles(insertOut.toString())) {
+                outputJavaFiles.add(newJavaFile.getAbsolutePath());
+            }
+        } else {
+            Collections.addAll(outputJavaFiles, InferenceOptions.javaFiles);
+        }
+
+        reportStatus("Insert annotations", result, outStream);
+        outStream.flush();
+        exitOnNonZeroStatus(result);
+        return outputJavaFiles;
+    }
+
+    /**
+     * Inserts the jaif shards written by inference when {@link InferenceOptions#afuThreads} is
+     * greater than 1.  Each shard is inserted into the source files of its package only, by up to
+     * afuThreads AFU processes at the same time.  In process, shards are inserted one after the
+     * other, as the AFU keeps global state.
+     * @return The list of source files that were passed as arguments to the AFU and were
+     * potentially altered.
+     */
+    protected List<String> insertJaifShards() {
+        printStep("Inserting annotations", outStream);
+
+        final File shardDir = InferenceMain.getJaifShardDirectory(getJaifFilePath(getAfuOutputDir()));
+        final Map<String, List<String>> filesByPackage = new LinkedHashMap<>();
+        for (String javaFile : InferenceOptions.javaFiles) {
+            filesByPackage.computeIfAbsent(readPackageName(javaFile), p -> new ArrayList<>()).add(javaFile);
+        }
+
+        final List<List<String>> insertions = new ArrayList<>();
+        File [] shards = shardDir.listFiles((dir, name) -> name.endsWith(".jaif"));
+        if (shards == null) {
+            throw new RuntimeException("Could not find jaif shards in: " + shardDir.getAbsolutePath());
+        }
+        Arrays.sort(shards);
+        for (File shard : shards) {
+            String packageName = shard.getName().equals(JaifBuilder.DEFAULT_PACKAGE_SHARD)
+                    ? "" : shard.getName().substring(0, shard.getName().length() - ".jaif".length());
+            List<String> packageFiles = filesByPackage.remove(packageName);
+            if (packageFiles != null) {
+                insertions.add(getAfuArguments(shard.getAbsolutePath(), packageFiles));
+            }
+        }
+
+        // Files without annotations still go through the AFU, so that they are written to the
+        // output directory as they would be without shards.
+        final List<String> unannotatedFiles = new ArrayList<>();
+        for (List<String> packageFiles : filesByPackage.values()) {
+            unannotatedFiles.addAll(packageFiles);
+        }
+        if (!insertions.isEmpty()) {
+            insertions.get(0).addAll(unannotatedFiles);
+            unannotatedFiles.clear();
+        }
+
+        final String insertAnnotationsScript = (InferenceOptions.pathToAfuScripts == null
+                ? "" : InferenceOptions.pathToAfuScripts + File.separator) + "insert-annotations-to-source";
+        List<ByteArrayOutputStream> outputs = new ArrayList<>();
+        int result = 0;
+        if (isAfuInProcess()) {
+            for (List<String> options : insertions) {
+                ByteArrayOutputStream insertOut = new ByteArrayOutputStream();
+                printCommand("Running Insert Annotations in process with arguments:", options);
+                int status = runAfuInProcess(options, insertOut);
+                result = result == 0 ? status : result;
+                outputs.add(insertOut);
+            }
+        } else {
+            ExecutorService service = Executors.newFixedThreadPool(InferenceOptions.afuThreads);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (List<String> afuArguments : insertions) {
+                final List<String> options = new ArrayList<>(afuArguments);
+                options.add(0, insertAnnotationsScript);
+                printCommand("Running Insert Annotations Command:", options);
+                final ByteArrayOutputStream insertOut = new ByteArrayOutputStream();
+                outputs.add(insertOut);
+                futures.add(service.submit(() -> ExecUtil.execute(
+                        options.toArray(new String[options.size()]), insertOut, insertOut)));
+            }
+            service.shutdown();
+            try {
+                for (Future<Integer> future : futures) {
+                    int status = future.get();
+                    result = result == 0 ? status : result;
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        List<String> outputJavaFiles = new ArrayList<>(InferenceOptions.javaFiles.length);
+        for (ByteArrayOutputStream insertOut : outputs) {
+            outStream.println(insertOut.toString());
+            if (!InferenceOptions.inPlace) {
+                for (File newJavaFile : findWrittenFiles(insertOut.toString())) {
+                    outputJavaFiles.add(newJavaFile.getAbsolutePath());
+                }
+            }
+        }
+        if (InferenceOptions.inPlace) {
+            Collections.addAll(outputJavaFiles, InferenceOptions.javaFiles);
+        } else {
+            outputJavaFiles.addAll(unannotatedFiles);
+        }
+
+        reportStatus("Insert annotations", result, outStream);
+        outStream.flush();
+        exitOnNonZeroStatus(result);
+        return outputJavaFiles;
+    }
+
+    /**
+     * Inserts the jaif of the classes that changed since the previous run, written by inference when
+     * {@link InferenceOptions#deltaJaif} is set, into the source files that contain them.  The
+     * other files keep the version the previous run wrote to the AFU output directory.
+     * @return The annotated version of every source file: the one written now, the one of a
+     * previous run, or the original if no run annotated it.  Typechecking needs all of them.
+     */
+    protected List<String> insertJaifDelta() {
+        printStep("Inserting changed annotations", outStream);
+
+        final File outputDir = getAfuOutputDir();
+        final String jaifFile = getJaifFilePath(outputDir);
+        final Set<String> changedSourceFiles = new HashSet<>();
+        try {
+            for (String sourceFile : Files.readAllLines(Paths.get(InferenceMain.getJaifDeltaSourcesFile(jaifFile)),
+                    Charset.defaultCharset())) {
+                changedSourceFiles.add(new File(sourceFile).getCanonicalPath());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read the changed source files of: " + jaifFile, e);
+        }
+
+        List<String> changedJavaFiles = new ArrayList<>();
+        for (String javaFile : InferenceOptions.javaFiles) {
+            if (changedSourceFiles.contains(canonicalPath(javaFile))) {
+                changedJavaFiles.add(javaFile);
+            }
+        }
+
+        List<String> outputJavaFiles = new ArrayList<>(InferenceOptions.javaFiles.length);
+        int result = 0;
+        if (!changedJavaFiles.isEmpty()) {
+            result = runAfu(InferenceMain.getJaifDeltaFile(jaifFile), changedJavaFiles, outputJavaFiles);
+        }
+        outStream.println("Annotations changed in " + changedJavaFiles.size() + " of "
+                + InferenceOptions.javaFiles.length + " source files");
+
+        for (String javaFile : InferenceOptions.javaFiles) {
+            if (!changedSourceFiles.contains(canonicalPath(javaFile))) {
+                File previousOutput = getAfuOutputFile(outputDir, javaFile);
+                outputJavaFiles.add(previousOutput.exists() ? previousOutput.getAbsolutePath() : javaFile);
+            }
+        }
+
+        reportStatus("Insert annotations", result, outStream);
+        outStream.flush();
+        exitOnNonZeroStatus(result);
+        return outputJavaFiles;
+    }
+
+    /**
+     * Inserts the annotations that inference did not insert directly into the sources, when
+     * {@link InferenceOptions#directInsert} is set, with the AFU.  Only the files inference left
+     * out, listed by {@link InferenceMain#getDirectInsertFilesFile(String)}, are passed to it.
+     * @return The list of annotated source files, from either inserter.
+     */
+    protected List<String> insertJaifDirect() {
+        printStep("Inserting annotations", outStream);
+
+        final String jaifFile = getJaifFilePath(getAfuOutputDir());
+        final Map<String, String> directFiles = new HashMap<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(InferenceMain.getDirectInsertFilesFile(jaifFile)),
+                    Charset.defaultCharset())) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    directFiles.put(canonicalPath(line.substring(0, tab)), line.substring(tab + 1));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read the directly annotated files of: " + jaifFile, e);
+        }
+
+        List<String> outputJavaFiles = new ArrayList<>(InferenceOptions.javaFiles.length);
+        List<String> remainingJavaFiles = new ArrayList<>();
+        for (String javaFile : InferenceOptions.javaFiles) {
+            String annotatedFile = directFiles.get(canonicalPath(javaFile));
+            if (annotatedFile != null) {
+                outputJavaFiles.add(annotatedFile);
+            } else {
+                remainingJavaFiles.add(javaFile);
+            }
+        }
+        outStream.println("Annotations were inserted directly into " + outputJavaFiles.size() + " of "
+                + InferenceOptions.javaFiles.length + " source files");
+
+        int result = 0;
+        if (!remainingJavaFiles.isEmpty()) {
+            result = runAfu(jaifFile, remainingJavaFiles, outputJavaFiles);
+        }
+
+        reportStatus("Insert annotations", result, outStream);
+        outStream.flush();
+        exitOnNonZeroStatus(result);
+        return outputJavaFiles;
+    }
+
+    /**
+     * Inserts the jaif into the given files with the AFU, in process or by running
+     * insert-annotations-to-source, and adds the files it wrote to outputJavaFiles.
+     * @return the exit status of the AFU
+     */
+    private int runAfu(String jaifFile, List<String> javaFiles, List<String> outputJavaFiles) {
+        List<String> options = getAfuArguments(jaifFile, javaFiles);
+        ByteArrayOutputStream insertOut = new ByteArrayOutputStream();
+        int result;
+        if (isAfuInProcess()) {
+            printCommand("Running Insert Annotations in process with arguments:", options);
+            result = runAfuInProcess(options, insertOut);
+        } else {
+            options.add(0, (InferenceOptions.pathToAfuScripts == null
+                    ? "" : InferenceOptions.pathToAfuScripts + File.separator) + "insert-annotations-to-source");
+            printCommand("Running Insert Annotations Command:", options);
+            result = ExecUtil.execute(options.toArray(new String[options.size()]), insertOut, errStream);
+        }
+        outStream.println(insertOut.toString());
+
+        if (InferenceOptions.inPlace) {
+            outputJavaFiles.addAll(javaFiles);
+        } else {
+            for (File newJavaFile : findWrittenFiles(insertOut.toString())) {
+                outputJavaFiles.add(newJavaFile.getAbsolutePath());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the file the AFU writes the annotated version of javaFile to in outputDir, which
+     * mirrors the package of javaFile
+     */
+    static File getAfuOutputFile(File outputDir, String javaFile) {
+        return new File(outputDir, readPackageName(javaFile).replace('.', File.separatorChar)
+                + File.separator + new File(javaFile).getName());
+    }
+
+    private static String canonicalPath(String file) {
+        try {
+            return new File(file).getCanonicalPath();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not resolve: " + file, e);
+        }
+    }
+
+    private void printCommand(String description, List<String> command) {
+        if (InferenceOptions.printCommands) {
+            synchronized (outStream) {
+                outStream.println(description);
+                outStream.println(SystemUtil.join(" ", command));
+            }
+        }
+    }
+
+    /**
+     * @return the directory the AFU writes to, or the current directory when inserting in place
+     */
+    private static File getAfuOutputDir() {
+        if (InferenceOptions.inPlace) {
+            return new File(".");
+        }
+        final File outputDir = new File(InferenceOptions.afuOutputDir);
+        ensureDirectoryExists(outputDir);
+        return outputDir;
+    }
+
+    /**
+     * @return the arguments of insert-annotations-to-source for inserting the given jaif into
+     * the given files
+     */
+    private static List<String> getAfuArguments(String jaifFile, Collection<String> javaFiles) {
+        List<String> options = new ArrayList<>();
+        options.add("-v");
+        if (!InferenceOptions.inPlace) {
+            options.add("--print-error-stack=true");
+            options.add("--outdir=" + getAfuOutputDir().getAbsolutePath());
+        } else {
+            options.add("-i");
+        }
+        options.add(jaifFile);
+        options.addAll(javaFiles);
+        return options;
+    }
+
+    /**
+     * Guards the in-process AFU runs of all launchers in this JVM, see {@link #runAfuInProcess}.
+     */
+    private static final Object AFU_LOCK = new Object();
+
+    /**
+     * Runs the AFU's annotator.Main on the given arguments in the current JVM, writing what it
+     * prints on System.out, which includes the files it writes, to {@code insertOut}.
+     *
+     * annotator.Main only prints to System.out and keeps global state, so System.out is replaced
+     * while it runs.  In-process runs must not overlap, so they are serialized on
+     * {@link #AFU_LOCK} even if several launchers run in the same JVM.  Anything other threads
+     * print on System.out meanwhile also ends up in {@code insertOut}.
+     * @return the exit status
+     */
+    private int runAfuInProcess(List<String> options, ByteArrayOutputStream insertOut) {
+        synchronized (AFU_LOCK) {
+            PrintStream systemOut = System.out;
+            int result = 0;
+            System.setOut(new PrintStream(insertOut, true));
+            try {
+                Method afuMain = Class.forName("annotator.Main").getMethod("main", String[].class);
+                afuMain.invoke(null, (Object) options.toArray(new String[options.size()]));
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace(errStream);
+                result = 1;
+            } catch (ReflectiveOperationException e) {
+                errStream.println("Could not run the Annotation File Utilities in process, "
+                        + "is annotation-file-utilities.jar on the classpath? " + e);
+                result = 1;
+            } finally {
+                System.out.flush();
+                System.setOut(systemOut);
+            }
+            return result;
+        }
+    }
+
+    private static final Pattern PACKAGE_PATTERN = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;");
+
+    private static final Pattern TYPE_OR_IMPORT_PATTERN =
+            Pattern.compile("^\\s*(import|public|final|abstract|class|interface|enum|@interface)\\b");
+
+    /**
+     * Reads the package declaration of a source file.  The package name is ASCII, so the file is
+     * read as ISO-8859-1, which accepts any bytes.
+     * @return the package name, or "" for the default package
+     */
+    private static String readPackageName(String javaFile) {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(javaFile), StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher packageMatcher = PACKAGE_PATTERN.matcher(line);
+                if (packageMatcher.find()) {
+                    return packageMatcher.group(1);
+                }
+                if (TYPE_OR_IMPORT_PATTERN.matcher(line).find()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read: " + javaFile, e);
+        }
+        return "";
+    }
+
+    /**
+     * Runs javac with the checker in the current JVM, with the inference runtime jars added to
+     * the classpath as {@link #typecheck} does.
+     */
+    protected void typecheckInProcess(String [] javaFiles) {
+        printStep("Typechecking", outStream);
+
+        List<String> options = new ArrayList<>();
+        options.add("-processor");
+        options.add(InferenceOptions.checker);
+
+        List<String> javacOptions = getInProcessJavacOptions();
+        List<String> runtimeJars = getInferenceRuntimeJars();
+        int classpathIndex = indexOfClasspath(javacOptions);
+        if (classpathIndex < 0) {
+            javacOptions.add(0, "-classpath");
+            javacOptions.add(1, SystemUtil.join(File.pathSeparator, runtimeJars));
+        } else {
+            runtimeJars.add(0, javacOptions.get(classpathIndex + 1));
+            javacOptions.set(classpathIndex + 1, SystemUtil.join(File.pathSeparator, runtimeJars));
+        }
+        options.addAll(javacOptions);
+
+        if (InferenceOptions.cfArgs != null && !InferenceOptions.cfArgs.isEmpty()) {
+            options.addAll(Arrays.asList(InferenceOptions.cfArgs.split(" ")));
+        }
+        options.addAll(Arrays.asList(javaFiles));
+
+        if (InferenceOptions.printCommands) {
+            outStream.println("Running typecheck in process with javac options:");
+            outStream.println(SystemUtil.join(" ", options));
+        }
+
+        PrintWriter javacOutput = new PrintWriter(outStream, true);
+        int result = CheckerFrameworkUtil.invokeCheckerFramework(
+                options.toArray(new String[options.size()]), javacOutput) ? 0 : 1;
+        javacOutput.flush();
+
+        reportStatus("Typechecking", result, outStream);
+        outStream.flush();
+        exitOnNonZeroStatus(result);
+    }
+
+    /**
+     * @return a copy of InferenceOptions.javacOptions without the JVM options, which only apply
+     * when javac runs in its own process
+     */
+    private static List<String> getInProcessJavacOptions() {
+        List<String> javacOptions = new ArrayList<>();
+        for (String option : InferenceOptions.javacOptions) {
+            if (!option.startsWith("-J") && !option.startsWith("-Xmx") && !option.startsWith("-Xms")) {
+                javacOptions.add(option);
+            }
+        }
+        return javacOptions;
+    }
+
+    /**
+     * @return the index of the classpath option in the given javac options, or -1 if there is none
+     */
+    private static int indexOfClasspath(List<String> javacOptions) {
+        for (int i = 0; i + 1 < javacOptions.size(); i++) {
+            String option = javacOptions.get(i);
+            if ("-classpath".equals(option) || "-cp".equals(option) || "--class-path".equals(option)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public static void ensureDirectoryExists(File path) {
         if (!path.exists()) {
             if (!path.mkdirs()) {
@@ -442,7 +1132,7 @@ public class InferenceLauncher {
 
     public static void exitOnNonZeroStatus(int result) {
         if (result != 0) {
-            System.exit(result);
+            InferenceMain.exit(result);
         }
     }
 
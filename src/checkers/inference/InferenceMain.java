@@ -2,14 +2,22 @@ package checkers.inference;
 
 import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 
-import java.io.FileOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.annotation.Annotation;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,8 +32,11 @@ import checkers.inference.model.Constraint;
 import checkers.inference.model.ConstraintManager;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.qual.VarAnnot;
+import checkers.inference.solver.util.Statistics;
+import checkers.inference.util.ASTPathUtil;
 import checkers.inference.util.InferenceUtil;
 import checkers.inference.util.JaifBuilder;
+import org.checkerframework.javacutil.BugInCF;
 import org.checkerframework.javacutil.SystemUtil;
 
 /**
@@ -95,6 +106,12 @@ public class InferenceMain {
     private ConstraintManager constraintManager;
     private SlotManager slotManager;
 
+    /** Set when {@link InferenceOptions#constraintCacheDir} is. */
+    private ConstraintCache constraintCache;
+
+    /** Set when {@link InferenceOptions#slotIdTable} is. */
+    private SlotIdTable slotIdTable;
+
     // Hold the results of solving.
     private InferenceResult solverResult;
 
@@ -108,6 +125,34 @@ public class InferenceMain {
         this.resultHandler = resultHandler;
     }
 
+    /**
+     * Called instead of System.exit by {@link #exit(int)}.  It must not return.
+     */
+    public interface ExitHook {
+        void exit(int status);
+    }
+
+    private static volatile ExitHook exitHook = System::exit;
+
+    /**
+     * Make {@link #exit(int)} call the given hook, e.g. to end a request of the
+     * {@link InferenceDaemon} instead of its JVM by throwing.
+     *
+     * @param hook the hook, or null for System.exit
+     */
+    public static void setExitHook(ExitHook hook) {
+        exitHook = hook == null ? System::exit : hook;
+    }
+
+    /**
+     * Exit with the given status through the exit hook, see {@link #setExitHook(ExitHook)}.
+     * InferenceMain, the launcher and their options exit through this rather than System.exit.
+     */
+    public static void exit(int status) {
+        exitHook.exit(status);
+        throw new BugInCF("Exit hook returned for status " + status);
+    }
+
     public static void main(String [] args) {
         InitStatus status = InferenceOptions.init(args, false);
         status.validateOrExit();
@@ -140,16 +185,25 @@ public class InferenceMain {
     public void run() {
         logger.finer("Starting InferenceMain");
 
-        // Start up javac
-        startCheckerFramework();
-        solve();
-        // solverResult = null covers case when debug solver is used, but in this case
-        // shouldn't exit
-        if (solverResult != null && !solverResult.hasSolution()) {
-            logger.info("No solution, exiting...");
-            System.exit(1);
+        try {
+            // Start up javac
+            startCheckerFramework();
+            if (InferenceOptions.constraintWorkerUnits != null) {
+                // A constraint generation worker only fills the constraint cache.
+                return;
+            }
+            writeSlotIdTable();
+            solve();
+            // solverResult = null covers case when debug solver is used, but in this case
+            // shouldn't exit
+            if (solverResult != null && !solverResult.hasSolution()) {
+                logger.info("No solution, exiting...");
+                exit(1);
+            }
+            writeJaif();
+        } finally {
+            ASTPathUtil.clearMemberKeys();
         }
-        writeJaif();
     }
 
     /**
@@ -189,6 +243,28 @@ public class InferenceMain {
             checkerFrameworkArgs.addAll(Arrays.asList(InferenceOptions.javaFiles));
         }
 
+        if (InferenceOptions.constraintCacheDir != null) {
+            // The checker and everything passed to javac can change the constraints of any unit.
+            // The class output directory does not, and differs for constraint generation workers.
+            List<String> cacheOptions = new ArrayList<>(checkerFrameworkArgs);
+            int outputDir = cacheOptions.indexOf("-d");
+            if (outputDir >= 0 && outputDir + 1 < cacheOptions.size()) {
+                cacheOptions.subList(outputDir, outputDir + 2).clear();
+            }
+            cacheOptions.add(InferenceOptions.checker);
+            cacheOptions.add(String.valueOf(hackMode));
+            try {
+                constraintCache = new ConstraintCache(new File(InferenceOptions.constraintCacheDir),
+                        InferenceOptions.javaFiles, cacheOptions, getSourceCharset());
+                if (InferenceOptions.constraintWorkerUnits != null) {
+                    constraintCache.assignUnits(Files.readAllLines(
+                            new File(InferenceOptions.constraintWorkerUnits).toPath(), Charset.defaultCharset()));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read the sources to check the constraint cache", e);
+            }
+        }
+
         logger.fine(String.format("Starting checker framework with options: %s", checkerFrameworkArgs));
 
         StringWriter javacoutput = new StringWriter();
@@ -196,9 +272,34 @@ public class InferenceMain {
                 new PrintWriter(javacoutput, true));
 
         resultHandler.handleCompilerResult(success, javacoutput.toString());
+
+        if (constraintCache != null) {
+            try {
+                constraintCache.writeVisitedUnits();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to write the constraint cache", e);
+            }
+        }
     }
 
 
+    /**
+     * Keep the ids of the slots created in this run, and of recent slots, for the next run, see
+     * {@link SlotIdTable}.
+     */
+    private void writeSlotIdTable() {
+        if (slotIdTable == null) {
+            return;
+        }
+        Statistics.addOrIncrementEntry("slot_id_table_new_keys", slotIdTable.getNumberOfNewKeys());
+        Statistics.addOrIncrementEntry("slot_id_table_pruned_keys", slotIdTable.getNumberOfPrunedKeys());
+        try {
+            slotIdTable.write();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the slot id table " + InferenceOptions.slotIdTable, e);
+        }
+    }
+
     /**
      * Give the InferenceMain instance a reference to the InferenceChecker
      * that is being run by Checker-Framework.
@@ -213,14 +314,27 @@ public class InferenceMain {
     /**
      * Create a jaif file that records the mapping of VariableSlots to their code positions.
      * The output file can be configured by the command-line argument jaiffile.
+     * With more than one afuThreads, one jaif per package is written instead, see
+     * {@link #getJaifShardDirectory(String)}.
+     * With deltaJaif, the classes whose annotations changed since the jaif of the previous run are
+     * also written to a separate jaif, see {@link #writeJaifDelta(JaifBuilder)}.
+     *
+     * The files the launcher reads next to the jaif with deltaJaif and directInsert are deleted
+     * first, and inference exits if they cannot be written, so that the launcher never acts on
+     * the files of a previous run.
      */
     private void writeJaif() {
-        try (PrintWriter writer
-                = new PrintWriter(new FileOutputStream(InferenceOptions.jaifFile))) {
+        try {
+            final String jaifFile = InferenceOptions.jaifFile;
+            Files.deleteIfExists(Paths.get(getJaifDeltaFile(jaifFile)));
+            Files.deleteIfExists(Paths.get(getJaifDeltaSourcesFile(jaifFile)));
+            Files.deleteIfExists(Paths.get(getDirectInsertFilesFile(jaifFile)));
 
             List<VariableSlot> varSlots = slotManager.getVariableSlots();
             Map<AnnotationLocation, String> values = new HashMap<>();
             Set<Class<? extends Annotation>> annotationClasses = new HashSet<>();
+            // Solutions repeat a few annotations many times, share one string per annotation.
+            Map<AnnotationMirror, String> annotationStrings = new HashMap<>();
 
             if (solverResult == null) {
                 annotationClasses.add(VarAnnot.class);
@@ -242,7 +356,7 @@ public class InferenceMain {
                         // This happens for VariableSlots that have no constraints.
                         AnnotationMirror result = solverResult.getSolutionForVariable(slot.getId());
                         if (result != null) {
-                            values.put(slot.getLocation(), result.toString());
+                            values.put(slot.getLocation(), annotationStrings.computeIfAbsent(result, Object::toString));
                         }
                     } else {
                         // Just use the VarAnnot in the jaif.
@@ -253,12 +367,169 @@ public class InferenceMain {
             }
 
             JaifBuilder builder = new JaifBuilder(values, annotationClasses, realChecker.isInsertMainModOfLocalVar());
-            String jaif = builder.createJaif();
-            writer.println(jaif);
+            if (InferenceOptions.afuThreads > 1) {
+                File shardDir = getJaifShardDirectory(InferenceOptions.jaifFile);
+                InferenceLauncher.ensureDirectoryExists(shardDir);
+                // Drop the shards of a previous run, which may include packages that are gone.
+                for (File oldShard : shardDir.listFiles((dir, name) -> name.endsWith(".jaif"))) {
+                    Files.delete(oldShard.toPath());
+                }
+                Map<String, File> shards = builder.writeJaifShards(shardDir);
+                logger.fine(String.format("Wrote %d jaif shards to %s", shards.size(), shardDir));
+            } else if (InferenceOptions.deltaJaif) {
+                writeJaifDelta(builder);
+            } else {
+                try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(InferenceOptions.jaifFile),
+                        Charset.defaultCharset())) {
+                    builder.writeJaif(writer);
+                    writer.newLine();
+                }
+            }
+
+            if (InferenceOptions.directInsert) {
+                insertDirectly(values);
+            }
 
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to write out jaif file!", e);
+            if (InferenceOptions.deltaJaif || InferenceOptions.directInsert) {
+                // The launcher cannot insert the annotations without the files that are missing.
+                exit(1);
+            }
+        }
+    }
+
+    /**
+     * Writes the jaif as usual, and the classes of the source files whose annotations differ from
+     * the jaif at the same path to {@link #getJaifDeltaFile(String)}, followed by those files to
+     * {@link #getJaifDeltaSourcesFile(String)}, one per line.  The source file of every class is
+     * kept in {@link #getJaifSourceIndexFile(String)}, to find the source files of classes that
+     * are not annotated any more in the next run.
+     */
+    private void writeJaifDelta(JaifBuilder builder) throws IOException {
+        final Path jaifPath = Paths.get(InferenceOptions.jaifFile);
+        final Path indexPath = Paths.get(getJaifSourceIndexFile(InferenceOptions.jaifFile));
+
+        Map<String, String> previousClasses = Files.exists(jaifPath)
+                ? JaifBuilder.readClassJaifs(jaifPath.toFile()) : new HashMap<>();
+        Map<String, String> previousSourceFiles = new HashMap<>();
+        if (Files.exists(indexPath)) {
+            for (String line : Files.readAllLines(indexPath, Charset.defaultCharset())) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    previousSourceFiles.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+
+        // The previous jaif is compared while the new one is written, so write it next to it first.
+        final Path newJaifPath = Paths.get(InferenceOptions.jaifFile + ".tmp");
+        Set<String> changedClasses;
+        try (BufferedWriter writer = Files.newBufferedWriter(newJaifPath, Charset.defaultCharset());
+             BufferedWriter deltaWriter = Files.newBufferedWriter(Paths.get(getJaifDeltaFile(InferenceOptions.jaifFile)),
+                     Charset.defaultCharset())) {
+            changedClasses = builder.writeJaifDelta(writer, deltaWriter, previousClasses, previousSourceFiles);
+            writer.newLine();
+            deltaWriter.newLine();
+        }
+        Files.move(newJaifPath, jaifPath, StandardCopyOption.REPLACE_EXISTING);
+
+        Map<String, String> sourceFiles = builder.getSourceFiles();
+        Set<String> changedSourceFiles = new LinkedHashSet<>();
+        for (String changedClass : changedClasses) {
+            String sourceFile = sourceFiles.containsKey(changedClass)
+                    ? sourceFiles.get(changedClass) : previousSourceFiles.get(changedClass);
+            if (sourceFile == null) {
+                // The delta then holds every class, see JaifBuilder.writeJaifDelta.
+                logger.fine("Source file of changed class " + changedClass + " is unknown, inserting every file");
+                changedSourceFiles.addAll(Arrays.asList(InferenceOptions.javaFiles));
+                break;
+            }
+            changedSourceFiles.add(sourceFile);
+        }
+        Files.write(Paths.get(getJaifDeltaSourcesFile(InferenceOptions.jaifFile)), changedSourceFiles,
+                Charset.defaultCharset());
+
+        List<String> index = new ArrayList<>(sourceFiles.size());
+        for (Map.Entry<String, String> entry : sourceFiles.entrySet()) {
+            index.add(entry.getKey() + "\t" + entry.getValue());
+        }
+        Files.write(indexPath, index, Charset.defaultCharset());
+
+        Statistics.addOrIncrementEntry("jaif_delta_classes", changedClasses.size());
+        logger.fine(String.format("%d classes in %d source files changed since the previous jaif",
+                changedClasses.size(), changedSourceFiles.size()));
+    }
+
+    /**
+     * Inserts the annotations into the source files that allow it, see {@link DirectSourceInserter},
+     * and lists each of them with its annotated version in {@link #getDirectInsertFilesFile(String)},
+     * for the launcher to insert the other files with the AFU.
+     */
+    private void insertDirectly(Map<AnnotationLocation, String> values) throws IOException {
+        final File outputDir = InferenceOptions.inPlace ? null : new File(InferenceOptions.afuOutputDir);
+        Map<String, File> annotatedFiles = new DirectSourceInserter(values, realChecker.isInsertMainModOfLocalVar())
+                .insert(InferenceOptions.javaFiles, outputDir, getSourceCharset());
+
+        List<String> lines = new ArrayList<>(annotatedFiles.size());
+        for (Map.Entry<String, File> entry : annotatedFiles.entrySet()) {
+            lines.add(entry.getKey() + "\t" + entry.getValue().getAbsolutePath());
+        }
+        Files.write(Paths.get(getDirectInsertFilesFile(InferenceOptions.jaifFile)), lines, Charset.defaultCharset());
+
+        Statistics.addOrIncrementEntry("direct_insert_files", annotatedFiles.size());
+        logger.fine(String.format("Inserted annotations directly into %d of %d source files",
+                annotatedFiles.size(), InferenceOptions.javaFiles.length));
+    }
+
+    /**
+     * @return the encoding javac reads the sources with
+     */
+    static Charset getSourceCharset() {
+        int encoding = InferenceOptions.javacOptions == null ? -1 : InferenceOptions.javacOptions.indexOf("-encoding");
+        if (encoding >= 0 && encoding + 1 < InferenceOptions.javacOptions.size()) {
+            return Charset.forName(InferenceOptions.javacOptions.get(encoding + 1));
         }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * @return the list of source files that were annotated directly, each followed by a tab and
+     * its annotated version, written when {@link InferenceOptions#directInsert} is set
+     */
+    public static String getDirectInsertFilesFile(String jaifFile) {
+        return jaifFile + ".direct.files";
+    }
+
+    /**
+     * @return the jaif of the classes that changed since the previous run, written when
+     * {@link InferenceOptions#deltaJaif} is set
+     */
+    public static String getJaifDeltaFile(String jaifFile) {
+        return jaifFile + ".delta";
+    }
+
+    /**
+     * @return the list of source files of the classes in {@link #getJaifDeltaFile(String)}
+     */
+    public static String getJaifDeltaSourcesFile(String jaifFile) {
+        return jaifFile + ".delta.files";
+    }
+
+    /**
+     * @return the source file of each class of the last jaif written with
+     * {@link InferenceOptions#deltaJaif}
+     */
+    public static String getJaifSourceIndexFile(String jaifFile) {
+        return jaifFile + ".sources";
+    }
+
+    /**
+     * @return the directory to which the jaif shards are written instead of {@code jaifFile} when
+     * {@link InferenceOptions#afuThreads} is greater than 1
+     */
+    public static File getJaifShardDirectory(String jaifFile) {
+        return new File(jaifFile + ".shards");
     }
 
     /**
@@ -307,7 +578,7 @@ public class InferenceMain {
                 logger.finer(String.format("Created real checker: %s", realChecker));
             } catch (Throwable e) {
               logger.log(Level.SEVERE, "Error instantiating checker class \"" + InferenceOptions.checker + "\".", e);
-              System.exit(5);
+              exit(5);
           }
         }
         return realChecker;
@@ -338,10 +609,26 @@ public class InferenceMain {
         return realTypeFactory;
     }
 
+    /**
+     * @return the cache of constraints per compilation unit, or null if
+     * {@link InferenceOptions#constraintCacheDir} is not set
+     */
+    public ConstraintCache getConstraintCache() {
+        return constraintCache;
+    }
+
     public SlotManager getSlotManager() {
         if (slotManager == null ) {
+            if (InferenceOptions.slotIdTable != null) {
+                try {
+                    slotIdTable = new SlotIdTable(new File(InferenceOptions.slotIdTable),
+                            InferenceOptions.slotIdTableHistory);
+                } catch (IOException e) {
+                    throw new RuntimeException("Could not read the slot id table " + InferenceOptions.slotIdTable, e);
+                }
+            }
             slotManager = new DefaultSlotManager(inferenceChecker.getProcessingEnvironment(),
-                    realTypeFactory.getSupportedTypeQualifiers(), true );
+                    realTypeFactory.getSupportedTypeQualifiers(), true, slotIdTable);
             logger.finer("Created slot manager" + slotManager);
         }
         return slotManager;
@@ -355,7 +642,7 @@ public class InferenceMain {
             return solver;
         } catch (Throwable e) {
             logger.log(Level.SEVERE, "Error instantiating solver class \"" + InferenceOptions.solver + "\".", e);
-            System.exit(5);
+            exit(5);
             return null; // Dead code
         }
     }
@@ -457,7 +744,7 @@ public class InferenceMain {
             if (!success) {
                 logger.severe("Error return code from javac! Quitting.");
                 logger.info(javacOutStr);
-                System.exit(1);
+                exit(1);
             }
         }
     }
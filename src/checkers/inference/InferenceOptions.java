@@ -7,8 +7,10 @@ import org.checkerframework.javacutil.SystemUtil;
 import interning.InterningChecker;
 
 import java.io.File;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -81,6 +83,32 @@ public class InferenceOptions {
     @Option("Args to pass to checker framework, in the format -Axxx=xxx -Ayyy=yyy,z=z")
     public static String cfArgs;
 
+    @Option("Run inference, annotation insertion and typechecking in the launcher's JVM instead of in separate processes")
+    public static boolean inProcess;
+
+    @Option("[path] directory in which the slots and constraints of each compilation unit are cached between runs. "
+            + "A unit whose source and whose program's declarations did not change since the previous run is "
+            + "loaded from the cache instead of being visited again.")
+    public static String constraintCacheDir;
+
+    @Option("[path] file that keeps the id of each slot between runs. A slot whose location, constant value or "
+            + "component slots are unchanged gets the same id as in the previous run, instead of an id in the "
+            + "order slots are created.")
+    public static String slotIdTable;
+
+    @Option("Number of runs a slot of the --slotIdTable keeps its id without being created. Slots that are gone "
+            + "for longer are dropped from the table, and their ids may be given to other slots.")
+    public static int slotIdTableHistory = 10;
+
+    @Option("Number of processes that generate the constraints of the program at the same time, each for a share "
+            + "of its packages. Requires --constraintCacheDir, through which their constraints are handed to inference.")
+    public static int generationWorkers = 1;
+
+    /** Set by the launcher for a constraint generation worker, see InferenceLauncher.generateConstraintsInWorkers */
+    @Option("[path] file listing the source files whose constraints this process generates into --constraintCacheDir, "
+            + "without solving them. Used internally by --generationWorkers.")
+    public static String constraintWorkerUnits;
+
     /** If jsonFile is specified this will be set to the JsonSerializerSolver */
     @Option("The JSON file to which constraints should be dumped.  This field is mutually exclusive with solver.")
     public static String jsonFile;
@@ -100,6 +128,21 @@ public class InferenceOptions {
     @Option("Additional AFU options")
     public static String afuOptions;
 
+    @Option("Number of Annotation File Utilities processes that insert annotations at the same time. "
+            + "If greater than 1, inference writes one jaif per package to the directory <jaifFile>.shards "
+            + "instead of a single jaif, and the packages are inserted concurrently.")
+    public static int afuThreads = 1;
+
+    @Option("Also write the classes whose annotations changed since the previous run to <jaifFile>.delta, "
+            + "and insert only those into the source files that contain them. Requires --afuOutputDir, "
+            + "which must keep the files written by the previous run.")
+    public static boolean deltaJaif;
+
+    @Option("Insert annotations into the source files at the source positions recorded during inference, "
+            + "instead of through the Annotation File Utilities. Files with annotations whose position is not "
+            + "known, e.g. on qualified or array types, are still inserted by the Annotation File Utilities.")
+    public static boolean directInsert;
+
     // ------------------------------------------------------
     @OptionGroup("Help")
 
@@ -125,6 +168,20 @@ public class InferenceOptions {
     // end of command-line options
     // ------------------------------------------------------
 
+    /** Initial values of the command-line options, restored by {@link #reset()}. */
+    private static final Map<Field, Object> optionDefaults = new HashMap<>();
+    static {
+        for (Field field : InferenceOptions.class.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Option.class)) {
+                try {
+                    optionDefaults.put(field, field.get(null));
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
     public static List<String> javacOptions;
     public static String [] javaFiles;
 
@@ -133,6 +190,23 @@ public class InferenceOptions {
     public static File distDir = new File(checkersInferenceDir, "dist");
     public static File checkerJar = new File(distDir, "checker.jar");
 
+    /**
+     * Restore every command-line option to its initial value, so that options of a previous
+     * {@link #init} call do not leak into the next one when several invocations share a JVM,
+     * as they do in {@link InferenceDaemon}.
+     */
+    public static void reset() {
+        for (Map.Entry<Field, Object> entry : optionDefaults.entrySet()) {
+            try {
+                entry.getKey().set(null, entry.getValue());
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        javacOptions = null;
+        javaFiles = null;
+    }
+
     public static InitStatus init(String [] args, boolean requireMode) {
         List<String> errors = new ArrayList<>();
         Options options = new Options("inference [options]", InferenceOptions.class);
@@ -188,7 +262,7 @@ public class InferenceOptions {
             } catch (IllegalArgumentException iexc) {
                 System.out.println("Could not recognize mode: " + InferenceOptions.mode + "\n"
                         + "valid modes: " + SystemUtil.join(", ", Mode.values()));
-                System.exit(1);
+                InferenceMain.exit(1);
             }
 
             if (modeEnum != Mode.TYPECHECK) {
@@ -217,12 +291,40 @@ public class InferenceOptions {
                     errors.add("You cannot specify both an Annotation File Utilities output directory (--afuOutputDir or -afud) and --inPlace.");
                 }
 
+                if (deltaJaif && inPlace) {
+                    errors.add("--deltaJaif inserts annotations from the original sources into --afuOutputDir, it cannot be used with --inPlace.");
+                }
+
                 if (afuOptions != null && afuOptions.contains("\\s-d\\s")) {
                     errors.add("Annotation File Utilities output dir must be specified via (--afuOutputDir or -afud) not -d in AFU Options.");
                 }
             }
         }
 
+        if (deltaJaif && afuThreads > 1) {
+            errors.add("You cannot specify both --deltaJaif and --afuThreads greater than 1.");
+        }
+
+        if (directInsert && (deltaJaif || afuThreads > 1)) {
+            errors.add("You cannot specify --directInsert with --deltaJaif or --afuThreads greater than 1.");
+        }
+
+        if (slotIdTableHistory < 0) {
+            errors.add("--slotIdTableHistory must not be negative.");
+        }
+
+        if (generationWorkers > 1 && constraintCacheDir == null) {
+            errors.add("--generationWorkers greater than 1 requires --constraintCacheDir, to which the workers write the constraints.");
+        }
+
+        if (constraintWorkerUnits != null && constraintCacheDir == null) {
+            errors.add("--constraintWorkerUnits requires --constraintCacheDir.");
+        }
+
+        if (directInsert && afuOutputDir == null && !inPlace) {
+            errors.add("--directInsert writes the annotated files itself, it needs --afuOutputDir or --inPlace.");
+        }
+
         return new InitStatus(options, errors, help);
     }
 
@@ -339,12 +441,12 @@ public class InferenceOptions {
             if (!errors.isEmpty()) {
                 System.out.println(SystemUtil.join(errorDelimiter, errors));
                 options.printUsage();
-                System.exit(1);
+                InferenceMain.exit(1);
             }
 
             if (printHelp) {
                 options.printUsage();
-                System.exit(0);
+                InferenceMain.exit(0);
             }
         }
     }
@@ -0,0 +1,172 @@
+package checkers.inference;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A persistent table of slot ids, so that a slot gets the same id in every run in which it is
+ * created, see {@link InferenceOptions#slotIdTable}.
+ *
+ * Each slot that can be identified across runs has a key, derived from its
+ * {@link checkers.inference.model.AnnotationLocation}, its constant value, or the ids of the slots
+ * it is made of, see {@link DefaultSlotManager}.  The first run that creates a slot for a key gives
+ * it the next unused id, and the table keeps that id for the key from then on, even in runs that
+ * do not create the slot.  Ids therefore stay small integers that solvers can use as indices, but
+ * the ids of slots that are gone leave gaps, so {@link SlotManager#getNumberOfSlots()} is the
+ * largest id rather than the number of slots.
+ *
+ * So that the table does not grow with every slot a program ever had, a key is dropped once it
+ * has not been used for the given number of runs, see {@link InferenceOptions#slotIdTableHistory}.
+ * Its id may then be given to another key.
+ *
+ * The file starts with a {@link #HEADER} line, followed by one line per key: the id, a tab, the
+ * number of runs since the key was last used, a tab, and the key.  Keys must not contain line
+ * breaks.  Files without the header have one line per key of the id, a tab, and the key.
+ */
+public class SlotIdTable {
+
+    static final String HEADER = "# slot id table 2";
+
+    private final File file;
+
+    /** Number of runs a key is kept without being used. */
+    private final int history;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /** Number of runs since each key in the file was last used, as read. */
+    private final Map<String, Integer> ages = new HashMap<>();
+
+    /** Keys given an id in this run, in the order they were given one. */
+    private final List<String> newKeys = new ArrayList<>();
+
+    /** Keys whose id was asked for in this run, including new keys. */
+    private final Set<String> usedKeys = new HashSet<>();
+
+    private int largestId = 0;
+
+    /**
+     * Load the table from the file, if it exists.
+     *
+     * @param history the number of runs a key is kept after the last run that used it
+     */
+    public SlotIdTable(File file, int history) throws IOException {
+        this.file = file;
+        this.history = history;
+        if (!file.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            final boolean withAges = HEADER.equals(line);
+            if (withAges) {
+                line = reader.readLine();
+            }
+            final String expected = withAges ? "<id>\\t<age>\\t<key>" : "<id>\\t<key>";
+            for (; line != null; line = reader.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                int ageTab = withAges && tab >= 0 ? line.indexOf('\t', tab + 1) : tab;
+                if (ageTab < 0) {
+                    throw new IllegalArgumentException("Parse error: expected " + expected + " but found " + line);
+                }
+                final int id;
+                final int age;
+                try {
+                    id = Integer.parseInt(line.substring(0, tab));
+                    age = withAges ? Integer.parseInt(line.substring(tab + 1, ageTab)) : 0;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Parse error: expected " + expected + " but found " + line, e);
+                }
+                String key = line.substring(ageTab + 1);
+                ids.put(key, id);
+                ages.put(key, age);
+                largestId = Math.max(largestId, id);
+            }
+        }
+    }
+
+    /**
+     * @return the id of the key, which is given the next unused id if it has none yet
+     */
+    public int getId(String key) {
+        usedKeys.add(key);
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = newId();
+            ids.put(key, id);
+            newKeys.add(key);
+        }
+        return id;
+    }
+
+    /**
+     * @return an id that no key has, for a slot that cannot be identified across runs.  The id is
+     * not kept, and a later run may give it to a key.
+     */
+    public int newId() {
+        return ++largestId;
+    }
+
+    /**
+     * @return the number of keys that were given an id in this run
+     */
+    public int getNumberOfNewKeys() {
+        return newKeys.size();
+    }
+
+    /**
+     * @return the number of keys that {@link #write()} drops, as they were not used for more than
+     * the history of runs
+     */
+    public int getNumberOfPrunedKeys() {
+        int pruned = 0;
+        for (Map.Entry<String, Integer> age : ages.entrySet()) {
+            if (!usedKeys.contains(age.getKey()) && age.getValue() >= history) {
+                pruned++;
+            }
+        }
+        return pruned;
+    }
+
+    /**
+     * Write the keys used in this run, and the keys not used for at most the history of runs, to
+     * the file.  The others are dropped.
+     */
+    public void write() throws IOException {
+        final Path target = file.toPath();
+        final Path directory = Files.createDirectories(target.toAbsolutePath().getParent());
+        final Path temp = Files.createTempFile(directory, ".slot-ids", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            final List<Map.Entry<String, Integer>> entries = new ArrayList<>(ids.entrySet());
+            entries.sort(Map.Entry.comparingByValue());
+            for (Map.Entry<String, Integer> entry : entries) {
+                final String key = entry.getKey();
+                final int age = usedKeys.contains(key) ? 0 : ages.get(key) + 1;
+                if (age <= history) {
+                    writer.write(entry.getValue() + "\t" + age + "\t" + key);
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        newKeys.clear();
+    }
+}
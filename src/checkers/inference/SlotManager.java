@@ -30,6 +30,24 @@ public interface SlotManager {
      */
     int getNumberOfSlots();
 
+    /**
+     * Return the number of slots created so far.  Unlike {@link #getNumberOfSlots()}, this is not the
+     * largest id when ids come from a {@link SlotIdTable}.
+     *
+     * @return number of slots created by this SlotManager
+     */
+    int getNumberOfCreatedSlots();
+
+    /**
+     * Return the slots created after the first {@code count} slots, in the order they were created.
+     * With {@link #getNumberOfCreatedSlots()} taken before some work, this gives the slots that
+     * work created.
+     *
+     * @param count number of slots created before the slots to return
+     * @return the slots created after the first count slots
+     */
+    List<Slot> getSlotsCreatedAfter(int count);
+
     /**
      * Create new VariableSlot and return the reference to it if no VariableSlot
      * on this location exists. Otherwise return the reference to existing
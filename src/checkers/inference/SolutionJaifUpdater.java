@@ -1,22 +1,14 @@
 package checkers.inference;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.Set;
 
-import org.json.simple.parser.ParseException;
-
-import checkers.inference.model.serialization.JsonDeserializer;
+import checkers.inference.model.serialization.JsonSolutionReader;
 import org.plumelib.options.Option;
 import org.plumelib.options.Options;
 
@@ -49,7 +41,7 @@ public class SolutionJaifUpdater {
     @Option("The string representation of the bottom annotation in the hierarchy (e.g. @NonNull)")
     public static String botAnnotation;
 
-    public static void main(String[] args) throws IOException, ParseException {
+    public static void main(String[] args) throws IOException {
         Options options = new Options("SolutionJaifUpdator [options]", SolutionJaifUpdater.class);
         options.parse(true, args);
         if (solvedJson == null || originalJson == null ||  outputFilename == null || topAnnotation == null || botAnnotation == null) {
@@ -58,84 +50,74 @@ public class SolutionJaifUpdater {
             System.exit(1);
         }
 
-        String solvedJsonStr = readFile(solvedJson);
-        JsonDeserializer solvedDeserializer = new JsonDeserializer(null, solvedJsonStr);
-
-        Map<String, Boolean> existentialValues = getExistentialValues(originalJson, solvedDeserializer);
-        Map<String, String> solvedValues = getSolvedValues(solvedDeserializer, topAnnotation, botAnnotation);
-        updateJaif(solvedValues, existentialValues, jaifFilename, outputFilename);
+        JsonSolutionReader solution = new JsonSolutionReader();
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(solvedJson), StandardCharsets.UTF_8)) {
+            solution.readSolution(in);
+        }
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(originalJson), StandardCharsets.UTF_8)) {
+            solution.readPotentialVariables(in);
+        }
+        updateJaif(solution, topAnnotation, botAnnotation, jaifFilename, outputFilename);
     }
 
     /**
      * Parses the inference.jaif file provided by verigames.jar and updates the variable values
-     * with a boolean of true/false depending on the results obtained from the updates xml file
-     * after the user plays the game.
-     * @param values Map<String, Boolean> where the integer is the variable id and the boolean
-     * is the value to replace the variable id with.
-     * @param existentialValues
-     * @throws FileNotFoundException thrown if the file inference.jaif is not found in the current
-     * directory.
+     * with the top or bottom annotation depending on the solved value of the variable, 0 being
+     * bottom.  Lines of potential variables that are not enabled in the solution are dropped.
+     *
+     * The jaif is streamed line by line, and each line is searched for the VarAnnot prefix only,
+     * so the update takes time linear in the size of the jaif.
+     * @param solution the solved values and enabled variables
      */
-    private static void updateJaif(Map<String, String> values, Map<String, Boolean> existentialValues,
-                                   String jaifPath, String outputFile) throws FileNotFoundException {
-        if (values == null) {
-            throw new IllegalArgumentException("Map passed must not be null");
+    private static void updateJaif(JsonSolutionReader solution, String top, String bottom,
+                                   String jaifPath, String outputFile) throws IOException {
+        if (solution == null) {
+            throw new IllegalArgumentException("Solution passed must not be null");
         }
 
-        try (Scanner in = new Scanner(new File(jaifPath));
-             PrintStream out = new PrintStream(new File(outputFile))) {
-
-            while (in.hasNextLine()) {
-                String line = in.nextLine();
-                int start = -1;
-                if ((start = line.indexOf(CHECKERS_INFERENCE_QUALS_VAR_ANNOT)) != -1) {
-
-                    int end = start + (CHECKERS_INFERENCE_QUALS_VAR_ANNOT.length());
-                    String key = line.substring(end, line.length() - 1);
-
-                    if (values.get(key) == null) {
-                        System.out.println("Warning: Could not find value for " + key + " using supertype, skipping");
-                    } else {
-                        Boolean exists = existentialValues.get(key);
-                        if (exists == null || exists) {
-                            out.print(line.substring(0, start));
-                            out.println(values.get(key));
-                        }
-                    }
-
-                } else
-                    out.println(line);
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(jaifPath), Charset.defaultCharset());
+             BufferedWriter out = Files.newBufferedWriter(Paths.get(outputFile), Charset.defaultCharset())) {
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                int start = line.indexOf(CHECKERS_INFERENCE_QUALS_VAR_ANNOT);
+                if (start == -1) {
+                    out.write(line);
+                    out.newLine();
+                    continue;
+                }
+
+                int end = start + CHECKERS_INFERENCE_QUALS_VAR_ANNOT.length();
+                int id = parseVarAnnotId(line, end);
+                if (id < 0 || !solution.hasValue(id)) {
+                    System.out.println("Warning: Could not find value for " + line.substring(end, Math.max(end, line.length() - 1))
+                            + " using supertype, skipping");
+                } else if (!solution.isPotential(id) || solution.isEnabled(id)) {
+                    out.write(line, 0, start);
+                    out.write(solution.getValue(id) == 0 ? bottom : top);
+                    out.newLine();
+                }
             }
         }
     }
 
-    private static final Map<String, Boolean> getExistentialValues(String originalJsonFilename, JsonDeserializer solvedDeserializer) throws IOException, ParseException {
-        String json = readFile(originalJsonFilename);
-        JsonDeserializer deserializer = new JsonDeserializer(null, json);
-        List<String> allPotentialVariables = deserializer.getPotentialVariables();
-        Set<String> enabledVars = solvedDeserializer.getEnabledVars();
-
-        Map<String, Boolean> out = new LinkedHashMap<>();
-        for (String potentialVar : allPotentialVariables) {
-            out.put(potentialVar, enabledVars.contains(potentialVar));
+    /**
+     * @return the id of a VarAnnot whose value starts at {@code start} and which ends the line,
+     * or -1 if the line does not end with {@code <digits>)}
+     */
+    private static int parseVarAnnotId(String line, int start) {
+        int last = line.length() - 1;
+        if (last <= start || line.charAt(last) != ')') {
+            return -1;
         }
-
-        return out;
-    }
-
-    private static final Map<String, String> getSolvedValues(JsonDeserializer deserializer, String top, String bottom) throws IOException, ParseException {
-        Map<String, String> values = deserializer.getAnnotationValues();
-        Map<String, String> results = new HashMap<>();
-        for (Map.Entry<String, String> entry: values.entrySet()) {
-            String value = entry.getValue().equals("0") ? bottom : top;
-            results.put(entry.getKey(), value);
+        int id = 0;
+        for (int i = start; i < last; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9' || id > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
         }
-
-        return results;
-    }
-
-    static String readFile(String path) throws IOException {
-        byte[] encoded = Files.readAllBytes(Paths.get(path));
-        return new String(encoded, Charset.defaultCharset());
+        return id;
     }
 }
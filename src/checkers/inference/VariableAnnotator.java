@@ -44,11 +44,13 @@ import com.sun.source.tree.BinaryTree;
 import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
 import com.sun.source.tree.IntersectionTypeTree;
 import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.NewArrayTree;
 import com.sun.source.tree.ParameterizedTypeTree;
+import com.sun.source.tree.PrimitiveTypeTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.Tree.Kind;
 import com.sun.source.tree.TypeParameterTree;
@@ -69,6 +71,7 @@ import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.ConstraintManager;
 import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.SourceInsertion;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.model.tree.ArtificialExtendsBoundTree;
 import checkers.inference.qual.VarAnnot;
@@ -175,11 +178,11 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
             return AnnotationLocation.MISSING_LOCATION;
         } // else
 
-        ASTPathUtil.getASTRecordForPath(typeFactory, path);
         if (tree.getKind() == Kind.CLASS || tree.getKind() == Kind.INTERFACE
          || tree.getKind() == Kind.ENUM  || tree.getKind() == Kind.ANNOTATION_TYPE) {
             TypeElement typeElement = TreeUtils.elementFromDeclaration((ClassTree) tree);
-            return new ClassDeclLocation(((ClassSymbol)typeElement).flatName().toString());
+            return new ClassDeclLocation(((ClassSymbol)typeElement).flatName().toString(),
+                    InferenceOptions.directInsert ? getClassDeclInsertion(path) : null);
         } // else
 
         ASTRecord record = ASTPathUtil.getASTRecordForPath(typeFactory, path);
@@ -187,10 +190,110 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
             return AnnotationLocation.MISSING_LOCATION;
         }
 
-        return new AstPathLocation(record);
+        return new AstPathLocation(record, InferenceOptions.directInsert ? getTypeUseInsertion(path) : null);
 
     }
 
+    /**
+     * @return where an annotation on the declaration of the class at the leaf of path goes in the
+     * source text: in front of the declaration, as the AFU inserts it.  Anonymous classes have no
+     * declaration to annotate.
+     */
+    private static SourceInsertion getClassDeclInsertion(TreePath path) {
+        final String sourceFile = path.getCompilationUnit().getSourceFile().getName();
+        final ClassTree classTree = (ClassTree) path.getLeaf();
+        if (classTree.getSimpleName().length() == 0) {
+            return SourceInsertion.unsupported(sourceFile);
+        }
+        return SourceInsertion.beforeToken(sourceFile, ((JCTree) classTree).getStartPosition(), null);
+    }
+
+    /**
+     * @return where an annotation on the type use at the leaf of path goes in the source text.
+     * Only type uses whose annotation goes right in front of their first token are supported:
+     * primitive types, simple type names, parameterized simple type names and wildcards.  Other
+     * trees, e.g. qualified names and array types, are left to the AFU.
+     */
+    private static SourceInsertion getTypeUseInsertion(TreePath path) {
+        final String sourceFile = path.getCompilationUnit().getSourceFile().getName();
+        final Tree tree = path.getLeaf();
+        final Tree parent = path.getParentPath() == null ? null : path.getParentPath().getLeaf();
+
+        String token = null;
+        switch (tree.getKind()) {
+            case PRIMITIVE_TYPE:
+                if (((PrimitiveTypeTree) tree).getPrimitiveTypeKind() != TypeKind.VOID) {
+                    token = tree.toString();
+                }
+                break;
+
+            case IDENTIFIER:
+                // Not the name of a parameterized type or the qualifier of a name, whose annotation
+                // goes elsewhere.
+                boolean qualifiedOrParameterized = parent != null
+                        && ((parent.getKind() == Kind.PARAMETERIZED_TYPE && ((ParameterizedTypeTree) parent).getType() == tree)
+                         || parent.getKind() == Kind.MEMBER_SELECT);
+                if (!qualifiedOrParameterized && isTypeName(tree)) {
+                    token = ((IdentifierTree) tree).getName().toString();
+                }
+                break;
+
+            case PARAMETERIZED_TYPE:
+                final Tree rawType = ((ParameterizedTypeTree) tree).getType();
+                if (rawType.getKind() == Kind.IDENTIFIER && isTypeName(rawType)) {
+                    token = ((IdentifierTree) rawType).getName().toString();
+                }
+                break;
+
+            case UNBOUNDED_WILDCARD:
+            case EXTENDS_WILDCARD:
+            case SUPER_WILDCARD:
+                token = "?";
+                break;
+
+            default:
+                break;
+        }
+
+        if (token == null) {
+            return SourceInsertion.unsupported(sourceFile);
+        }
+        return SourceInsertion.beforeToken(sourceFile, ((JCTree) tree).getStartPosition(), token);
+    }
+
+    /**
+     * @return true if the identifier names a class, interface or type variable, rather than e.g. a
+     * variable in an expression
+     */
+    private static boolean isTypeName(Tree identifier) {
+        final Element element = TreeUtils.elementFromTree(identifier);
+        return element != null
+                && (element.getKind().isClass() || element.getKind().isInterface()
+                    || element.getKind() == ElementKind.TYPE_PARAMETER);
+    }
+
+    /**
+     * @return where the annotation of a missing receiver goes in the source text: an explicit
+     * receiver parameter is added.  Only methods of non-inner, non-generic classes are supported,
+     * as only their receiver parameter can be written with the simple name of the class.
+     */
+    private static SourceInsertion getReceiverInsertion(TreePath pathToMethod, ExecutableElement methodElem,
+                                                        MethodTree methodTree, AnnotatedTypeMirror receiverType) {
+        final String sourceFile = pathToMethod.getCompilationUnit().getSourceFile().getName();
+        final Element enclosing = methodElem.getEnclosingElement();
+        if (((MethodSymbol) methodElem).isConstructor()
+                || !(enclosing instanceof ClassSymbol) || ((ClassSymbol) enclosing).isInner()
+                || enclosing.getSimpleName().length() == 0
+                || receiverType.getKind() != TypeKind.DECLARED
+                || !((AnnotatedDeclaredType) receiverType).getTypeArguments().isEmpty()) {
+            return SourceInsertion.unsupported(sourceFile);
+        }
+
+        String receiverParameter = enclosing.getSimpleName() + " this"
+                + (methodTree.getParameters().isEmpty() ? "" : ", ");
+        return SourceInsertion.receiver(sourceFile, ((JCTree) methodTree).pos, receiverParameter);
+    }
+
     protected AnnotationLocation treeToLocation(Tree tree) {
         return treeToLocation(inferenceTypeFactory, tree);
     }
@@ -1411,12 +1514,15 @@ public class VariableAnnotator extends AnnotatedTypeScanner<Void,Tree> {
                 ASTRecord toReceiver = astRecord.extend(Tree.Kind.METHOD, ASTPath.PARAMETER, -1);
                 IdentityHashMap<AnnotatedTypeMirror, ASTRecord> typesToPaths =
                         ASTPathUtil.getImpliedRecordForUse(toReceiver, receiverType);
+                final SourceInsertion receiverInsertion = InferenceOptions.directInsert && pathToMethod != null
+                        ? getReceiverInsertion(pathToMethod, methodElem, methodTree, receiverType) : null;
 
                 for (Entry<AnnotatedTypeMirror, ASTRecord> typeToPath : typesToPaths.entrySet()) {
                     final AnnotatedTypeMirror type = typeToPath.getKey();
                     final ASTRecord path = typeToPath.getValue();
 
-                    addImpliedPrimaryVariable(type, new AstPathLocation(path));
+                    // Only the primary annotation of the receiver has a place in the source text.
+                    addImpliedPrimaryVariable(type, new AstPathLocation(path, type == receiverType ? receiverInsertion : null));
                 }
 
                 receiverMissingTrees.put(methodElem, receiverType.deepCopy());
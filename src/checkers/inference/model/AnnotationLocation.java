@@ -1,5 +1,6 @@
 package checkers.inference.model;
 
+import checkers.inference.util.ASTPathUtil;
 import scenelib.annotations.io.ASTPath;
 import scenelib.annotations.io.ASTRecord;
 
@@ -49,14 +50,39 @@ public abstract class AnnotationLocation {
     }
 
     /**
-     * Associates an annotation with an exact location in source using Annotation File Utilities ASTRecords
+     * Associates an annotation with an exact location in source using Annotation File Utilities ASTRecords.
+     *
+     * What the JaifBuilder needs of the path is derived once, when the location is created, so that
+     * writing the Jaif does not walk or render each path again.
      */
     public static class AstPathLocation extends AnnotationLocation {
         private final ASTRecord astRecord;
 
+        /** The AST path as written in a Jaif. */
+        private final String astPathString;
+
+        /** The Jaif header of the top-level member of this location, see {@link ASTPathUtil#getMemberKey}. */
+        private final String memberKey;
+
+        private final boolean mainModOfLocalVar;
+
+        private final boolean emptyPath;
+
+        /** Where the annotation goes in the source text, if known, see {@link SourceInsertion}. */
+        private final SourceInsertion sourceInsertion;
+
         public AstPathLocation(ASTRecord astRecord) {
+            this(astRecord, null);
+        }
+
+        public AstPathLocation(ASTRecord astRecord, SourceInsertion sourceInsertion) {
             super(AnnotationLocation.Kind.AST_PATH);
             this.astRecord = astRecord;
+            this.sourceInsertion = sourceInsertion;
+            this.astPathString = astRecord.astPath.toString();
+            this.memberKey = ASTPathUtil.getMemberKey(astRecord.methodName, astRecord.varName);
+            this.mainModOfLocalVar = ASTPathUtil.isMainModOfLocalVar(astRecord.astPath);
+            this.emptyPath = astRecord.astPath.equals(ASTPath.empty());
         }
 
         public ASTRecord getAstRecord() {
@@ -67,6 +93,33 @@ public abstract class AnnotationLocation {
             return astRecord.astPath;
         }
 
+        public String getAstPathString() {
+            return astPathString;
+        }
+
+        public String getMemberKey() {
+            return memberKey;
+        }
+
+        /**
+         * @return true if the path is the main modifier of a local variable, see
+         * {@link ASTPathUtil#isMainModOfLocalVar(ASTPath)}
+         */
+        public boolean isMainModOfLocalVar() {
+            return mainModOfLocalVar;
+        }
+
+        public boolean isEmptyPath() {
+            return emptyPath;
+        }
+
+        /**
+         * @return where the annotation goes in the source text, or null if that was not recorded
+         */
+        public SourceInsertion getSourceInsertion() {
+            return sourceInsertion;
+        }
+
         @Override
         public boolean isInsertable() {
             return true;
@@ -102,15 +155,30 @@ public abstract class AnnotationLocation {
     public static class ClassDeclLocation extends AnnotationLocation {
         private final String fullyQualifiedClassName;
 
+        /** Where the annotation goes in the source text, if known, see {@link SourceInsertion}. */
+        private final SourceInsertion sourceInsertion;
+
         public ClassDeclLocation(String fullyQualifiedClassName) {
+            this(fullyQualifiedClassName, null);
+        }
+
+        public ClassDeclLocation(String fullyQualifiedClassName, SourceInsertion sourceInsertion) {
             super(AnnotationLocation.Kind.CLASS_DECL);
             this.fullyQualifiedClassName = fullyQualifiedClassName;
+            this.sourceInsertion = sourceInsertion;
         }
 
         public String getFullyQualifiedClassName() {
             return fullyQualifiedClassName;
         }
 
+        /**
+         * @return where the annotation goes in the source text, or null if that was not recorded
+         */
+        public SourceInsertion getSourceInsertion() {
+            return sourceInsertion;
+        }
+
         @Override
         public boolean isInsertable() {
             return true;
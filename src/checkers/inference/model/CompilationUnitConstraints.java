@@ -0,0 +1,768 @@
+package checkers.inference.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.framework.type.QualifierHierarchy;
+
+import com.sun.source.tree.CompilationUnitTree;
+
+import checkers.inference.SlotManager;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
+import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTRecord;
+
+/**
+ * The slots and constraints that visiting one compilation unit produced, in a compact binary form
+ * that does not depend on slot ids, so that a later run can add them to its slot and constraint
+ * managers instead of visiting the unit again, see {@link checkers.inference.ConstraintCache}.
+ *
+ * Slots are written by what identifies them in the {@link SlotManager}: variable, refinement and
+ * arithmetic slots by their {@link AnnotationLocation}, constant slots by their value, and comb,
+ * lub and existential slots by the slots they are made of.  Adding a unit creates every slot
+ * through the SlotManager, so a slot whose location is already known, e.g. a declaration that a
+ * unit visited in this run refers to, keeps the id it already has, and the constraints of the
+ * unit are remapped to the ids of the current run.  Variable slots with a missing location have
+ * nothing that identifies them across runs, so they are only consistent if a single unit refers
+ * to them, see {@link #isIdentifiedById(Slot)}.
+ *
+ * <pre>
+ * int         number of slots
+ * slot        each slot, after the slots it is made of:
+ *   byte        slot tag
+ *   location    VARIABLE, REFINEMENT and ARITHMETIC
+ *   string      serialized value, CONSTANT only
+ *   int, int    indices of the slots it is made of, REFINEMENT (-1 if none, second unused), COMB,
+ *               LUB and EXISTENTIAL
+ * int         number of constraints
+ * constraint  each constraint:
+ *   byte        constraint tag
+ *   location
+ *   int...      indices of its slots, and the weight of a PREFERENCE or the operation of an
+ *               ARITHMETIC constraint; EXISTENTIAL and IMPLICATION constraints list the constraints
+ *               they contain as an int count followed by the constraints
+ *
+ * location:
+ *   byte        MISSING, AST_PATH, CLASS_DECL or NONE
+ *   string...   class name, method name, variable name and AST path as written in a Jaif, or the
+ *               class name of a CLASS_DECL
+ *   insertion   boolean, then kind, offset and text of the {@link SourceInsertion}
+ *
+ * string:
+ *   int         -1 for null, -2 for a string not written before, followed by its modified UTF-8,
+ *               otherwise the index of an earlier string
+ * </pre>
+ */
+public class CompilationUnitConstraints {
+
+    /**
+     * Resolves what the slots of a unit written by an earlier run refer to in the current
+     * compilation.
+     */
+    public interface Resolver {
+
+        /**
+         * @param className the class name of an ASTRecord or ClassDeclLocation
+         * @return the compilation unit that declares the class, or null if it is not being compiled
+         */
+        CompilationUnitTree getCompilationUnit(String className);
+
+        /**
+         * @return the annotation whose toString() is the given string, or null if it is not known
+         */
+        AnnotationMirror getAnnotation(String annotation);
+    }
+
+    private static final byte VARIABLE_SLOT = 0;
+    private static final byte REFINEMENT_SLOT = 1;
+    private static final byte CONSTANT_SLOT = 2;
+    private static final byte COMB_SLOT = 3;
+    private static final byte LUB_SLOT = 4;
+    private static final byte EXISTENTIAL_SLOT = 5;
+    private static final byte ARITHMETIC_SLOT = 6;
+
+    private static final byte SUBTYPE = 0;
+    private static final byte EQUALITY = 1;
+    private static final byte INEQUALITY = 2;
+    private static final byte COMPARABLE = 3;
+    private static final byte COMBINE = 4;
+    private static final byte PREFERENCE = 5;
+    private static final byte EXISTENTIAL = 6;
+    private static final byte IMPLICATION = 7;
+    private static final byte ARITHMETIC = 8;
+
+    private static final byte NO_LOCATION = 0;
+    private static final byte MISSING_LOCATION = 1;
+    private static final byte AST_PATH_LOCATION = 2;
+    private static final byte CLASS_DECL_LOCATION = 3;
+
+    private static final ArithmeticOperationKind[] OPERATIONS = ArithmeticOperationKind.values();
+
+    private static final SourceInsertion.Kind[] INSERTION_KINDS = SourceInsertion.Kind.values();
+
+    /** A slot as read, with the locations and values it refers to resolved. */
+    private static class SlotRecord {
+        final byte tag;
+        final AnnotationLocation location;
+        final AnnotationMirror value;
+        final int first;
+        final int second;
+
+        SlotRecord(byte tag, AnnotationLocation location, AnnotationMirror value, int first, int second) {
+            this.tag = tag;
+            this.location = location;
+            this.value = value;
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    /** A constraint as read. */
+    private static class ConstraintRecord {
+        final byte tag;
+        final AnnotationLocation location;
+        final int[] operands;
+        final List<ConstraintRecord> first;
+        final List<ConstraintRecord> second;
+
+        ConstraintRecord(byte tag, AnnotationLocation location, int[] operands,
+                         List<ConstraintRecord> first, List<ConstraintRecord> second) {
+            this.tag = tag;
+            this.location = location;
+            this.operands = operands;
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    private final List<SlotRecord> slots;
+
+    private final List<ConstraintRecord> constraints;
+
+    private CompilationUnitConstraints(List<SlotRecord> slots, List<ConstraintRecord> constraints) {
+        this.slots = slots;
+        this.constraints = constraints;
+    }
+
+    public int getNumberOfSlots() {
+        return slots.size();
+    }
+
+    public int getNumberOfConstraints() {
+        return constraints.size();
+    }
+
+    /**
+     * @return true if nothing but the slot id identifies the slot, i.e. it is a variable or
+     * refinement slot without a location
+     */
+    public static boolean isIdentifiedById(Slot slot) {
+        if (slot.getKind() != Slot.Kind.VARIABLE && slot.getKind() != Slot.Kind.REFINEMENT_VARIABLE) {
+            return false;
+        }
+        AnnotationLocation location = slot.getLocation();
+        return location == null || location.getKind() == AnnotationLocation.Kind.MISSING;
+    }
+
+    /**
+     * @return the given slots, the slots of the given constraints, and the slots these are made of,
+     * each after the slots it is made of
+     */
+    public static List<Slot> collectSlots(Collection<? extends Slot> slots, Collection<Constraint> constraints) {
+        Map<Integer, Slot> collected = new LinkedHashMap<>();
+        for (Slot slot : slots) {
+            collect(slot, collected);
+        }
+        for (Constraint constraint : constraints) {
+            for (Slot slot : constraint.getSlots()) {
+                collect(slot, collected);
+            }
+        }
+        return new ArrayList<>(collected.values());
+    }
+
+    private static void collect(Slot slot, Map<Integer, Slot> collected) {
+        if (slot == null) {
+            return;
+        }
+        int id = getId(slot);
+        if (collected.containsKey(id)) {
+            return;
+        }
+        if (slot instanceof RefinementVariableSlot) {
+            collect(((RefinementVariableSlot) slot).getRefined(), collected);
+        } else if (slot instanceof CombVariableSlot) {
+            collect(((CombVariableSlot) slot).getFirst(), collected);
+            collect(((CombVariableSlot) slot).getSecond(), collected);
+        } else if (slot instanceof LubVariableSlot) {
+            collect(((LubVariableSlot) slot).getLeft(), collected);
+            collect(((LubVariableSlot) slot).getRight(), collected);
+        } else if (slot instanceof ExistentialVariableSlot) {
+            collect(((ExistentialVariableSlot) slot).getPotentialSlot(), collected);
+            collect(((ExistentialVariableSlot) slot).getAlternativeSlot(), collected);
+        }
+        collected.put(id, slot);
+    }
+
+    private static int getId(Slot slot) {
+        if (!(slot instanceof VariableSlot)) {
+            throw new IllegalArgumentException("Slot type unrecognized( " + slot.getClass() + ") Slot=" + slot);
+        }
+        return ((VariableSlot) slot).getId();
+    }
+
+    /**
+     * Write the given slots and constraints, and every slot they refer to.
+     *
+     * @param sourceFile the source file of the unit as javac names it.  Only the source insertions
+     *                   of locations in this file are written, the offsets of the others may change
+     *                   without the unit changing.
+     * @throws IllegalArgumentException if a slot or constraint has a kind that cannot be written
+     */
+    public static void write(DataOutput out, Collection<? extends Slot> slots, Collection<Constraint> constraints,
+                             String sourceFile) throws IOException {
+        new Writer(out, sourceFile).write(collectSlots(slots, constraints), constraints);
+    }
+
+    private static class Writer {
+        private final DataOutput out;
+        private final String sourceFile;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<Integer, Integer> slotIndices = new HashMap<>();
+
+        Writer(DataOutput out, String sourceFile) {
+            this.out = out;
+            this.sourceFile = sourceFile;
+        }
+
+        void write(List<Slot> slots, Collection<Constraint> constraints) throws IOException {
+            out.writeInt(slots.size());
+            for (Slot slot : slots) {
+                writeSlot(slot);
+                slotIndices.put(getId(slot), slotIndices.size());
+            }
+
+            out.writeInt(constraints.size());
+            for (Constraint constraint : constraints) {
+                writeConstraint(constraint);
+            }
+        }
+
+        private void writeSlot(Slot slot) throws IOException {
+            switch (slot.getKind()) {
+                case VARIABLE:
+                    out.writeByte(VARIABLE_SLOT);
+                    writeLocation(slot.getLocation());
+                    break;
+
+                case REFINEMENT_VARIABLE:
+                    out.writeByte(REFINEMENT_SLOT);
+                    writeLocation(slot.getLocation());
+                    Slot refined = ((RefinementVariableSlot) slot).getRefined();
+                    out.writeInt(refined == null ? -1 : index(refined));
+                    break;
+
+                case CONSTANT:
+                    out.writeByte(CONSTANT_SLOT);
+                    writeString(((ConstantSlot) slot).getValue().toString());
+                    break;
+
+                case COMB_VARIABLE:
+                    out.writeByte(COMB_SLOT);
+                    out.writeInt(index(((CombVariableSlot) slot).getFirst()));
+                    out.writeInt(index(((CombVariableSlot) slot).getSecond()));
+                    break;
+
+                case LUB_VARIABLE:
+                    out.writeByte(LUB_SLOT);
+                    out.writeInt(index(((LubVariableSlot) slot).getLeft()));
+                    out.writeInt(index(((LubVariableSlot) slot).getRight()));
+                    break;
+
+                case EXISTENTIAL_VARIABLE:
+                    out.writeByte(EXISTENTIAL_SLOT);
+                    out.writeInt(index(((ExistentialVariableSlot) slot).getPotentialSlot()));
+                    out.writeInt(index(((ExistentialVariableSlot) slot).getAlternativeSlot()));
+                    break;
+
+                case ARITHMETIC_VARIABLE:
+                    out.writeByte(ARITHMETIC_SLOT);
+                    writeLocation(slot.getLocation());
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Slot type unrecognized( " + slot.getClass() + ") Slot=" + slot);
+            }
+        }
+
+        private void writeConstraint(Constraint constraint) throws IOException {
+            if (constraint instanceof SubtypeConstraint) {
+                SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+                writeHeader(SUBTYPE, constraint);
+                out.writeInt(index(subtype.getSubtype()));
+                out.writeInt(index(subtype.getSupertype()));
+
+            } else if (constraint instanceof EqualityConstraint) {
+                EqualityConstraint equality = (EqualityConstraint) constraint;
+                writeHeader(EQUALITY, constraint);
+                out.writeInt(index(equality.getFirst()));
+                out.writeInt(index(equality.getSecond()));
+
+            } else if (constraint instanceof InequalityConstraint) {
+                InequalityConstraint inequality = (InequalityConstraint) constraint;
+                writeHeader(INEQUALITY, constraint);
+                out.writeInt(index(inequality.getFirst()));
+                out.writeInt(index(inequality.getSecond()));
+
+            } else if (constraint instanceof ComparableConstraint) {
+                ComparableConstraint comparable = (ComparableConstraint) constraint;
+                writeHeader(COMPARABLE, constraint);
+                out.writeInt(index(comparable.getFirst()));
+                out.writeInt(index(comparable.getSecond()));
+
+            } else if (constraint instanceof CombineConstraint) {
+                CombineConstraint combine = (CombineConstraint) constraint;
+                writeHeader(COMBINE, constraint);
+                out.writeInt(index(combine.getTarget()));
+                out.writeInt(index(combine.getDeclared()));
+                out.writeInt(index(combine.getResult()));
+
+            } else if (constraint instanceof PreferenceConstraint) {
+                PreferenceConstraint preference = (PreferenceConstraint) constraint;
+                writeHeader(PREFERENCE, constraint);
+                out.writeInt(index(preference.getVariable()));
+                out.writeInt(index(preference.getGoal()));
+                out.writeInt(preference.getWeight());
+
+            } else if (constraint instanceof ExistentialConstraint) {
+                ExistentialConstraint existential = (ExistentialConstraint) constraint;
+                writeHeader(EXISTENTIAL, constraint);
+                out.writeInt(index(existential.getPotentialVariable()));
+                writeConstraints(existential.potentialConstraints());
+                writeConstraints(existential.getAlternateConstraints());
+
+            } else if (constraint instanceof ImplicationConstraint) {
+                ImplicationConstraint implication = (ImplicationConstraint) constraint;
+                writeHeader(IMPLICATION, constraint);
+                writeConstraints(implication.getAssumptions());
+                writeConstraint(implication.getConclusion());
+
+            } else if (constraint instanceof ArithmeticConstraint) {
+                ArithmeticConstraint arithmetic = (ArithmeticConstraint) constraint;
+                writeHeader(ARITHMETIC, constraint);
+                out.writeInt(arithmetic.getOperation().ordinal());
+                out.writeInt(index(arithmetic.getLeftOperand()));
+                out.writeInt(index(arithmetic.getRightOperand()));
+                out.writeInt(index(arithmetic.getResult()));
+
+            } else {
+                throw new IllegalArgumentException("Unrecognized constraint: " + constraint.getClass());
+            }
+        }
+
+        private void writeHeader(byte tag, Constraint constraint) throws IOException {
+            out.writeByte(tag);
+            writeLocation(constraint.getLocation());
+        }
+
+        private void writeConstraints(Collection<Constraint> constraints) throws IOException {
+            out.writeInt(constraints.size());
+            for (Constraint constraint : constraints) {
+                writeConstraint(constraint);
+            }
+        }
+
+        private void writeLocation(AnnotationLocation location) throws IOException {
+            if (location == null) {
+                out.writeByte(NO_LOCATION);
+                return;
+            }
+
+            switch (location.getKind()) {
+                case AST_PATH:
+                    AstPathLocation astLocation = (AstPathLocation) location;
+                    ASTRecord record = astLocation.getAstRecord();
+                    out.writeByte(AST_PATH_LOCATION);
+                    writeString(record.className);
+                    writeString(record.methodName);
+                    writeString(record.varName);
+                    writeString(astLocation.getAstPathString());
+                    writeInsertion(astLocation.getSourceInsertion());
+                    break;
+
+                case CLASS_DECL:
+                    ClassDeclLocation classLocation = (ClassDeclLocation) location;
+                    out.writeByte(CLASS_DECL_LOCATION);
+                    writeString(classLocation.getFullyQualifiedClassName());
+                    writeInsertion(classLocation.getSourceInsertion());
+                    break;
+
+                default:
+                    out.writeByte(MISSING_LOCATION);
+            }
+        }
+
+        private void writeInsertion(SourceInsertion insertion) throws IOException {
+            if (insertion == null || !insertion.getSourceFile().equals(sourceFile)) {
+                out.writeBoolean(false);
+                return;
+            }
+            out.writeBoolean(true);
+            out.writeByte(insertion.getKind().ordinal());
+            out.writeInt(insertion.getOffset());
+            writeString(insertion.getText());
+        }
+
+        private void writeString(String string) throws IOException {
+            if (string == null) {
+                out.writeInt(-1);
+                return;
+            }
+            Integer index = strings.get(string);
+            if (index != null) {
+                out.writeInt(index);
+            } else {
+                out.writeInt(-2);
+                out.writeUTF(string);
+                strings.put(string, strings.size());
+            }
+        }
+
+        private int index(Slot slot) {
+            Integer index = slotIndices.get(getId(slot));
+            if (index == null) {
+                throw new IllegalArgumentException("Slot written before the slots it is made of: " + slot);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Read the slots and constraints of a unit, resolving their locations and values against the
+     * current compilation.  Nothing is created until {@link #addTo}, so a unit that cannot be
+     * resolved can still be visited instead.
+     *
+     * @param sourceFile the source file of the unit as javac names it in this run
+     * @throws IllegalArgumentException if the input is malformed or refers to a class or value that
+     * cannot be resolved
+     */
+    public static CompilationUnitConstraints read(DataInput in, String sourceFile, Resolver resolver) throws IOException {
+        return new Reader(in, sourceFile, resolver).read();
+    }
+
+    private static class Reader {
+        private final DataInput in;
+        private final String sourceFile;
+        private final Resolver resolver;
+        private final List<String> strings = new ArrayList<>();
+        private int slotCount;
+
+        Reader(DataInput in, String sourceFile, Resolver resolver) {
+            this.in = in;
+            this.sourceFile = sourceFile;
+            this.resolver = resolver;
+        }
+
+        CompilationUnitConstraints read() throws IOException {
+            int count = readCount();
+            List<SlotRecord> slots = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                slots.add(readSlot());
+                slotCount++;
+            }
+
+            count = readCount();
+            List<ConstraintRecord> constraints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                constraints.add(readConstraint());
+            }
+            return new CompilationUnitConstraints(slots, constraints);
+        }
+
+        private SlotRecord readSlot() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case VARIABLE_SLOT:
+                case ARITHMETIC_SLOT:
+                    return new SlotRecord(tag, readLocation(), null, -1, -1);
+
+                case REFINEMENT_SLOT:
+                    AnnotationLocation location = readLocation();
+                    int refined = in.readInt();
+                    return new SlotRecord(tag, location, null, refined == -1 ? -1 : checkIndex(refined), -1);
+
+                case CONSTANT_SLOT:
+                    String serialized = readString();
+                    AnnotationMirror value = resolver.getAnnotation(serialized);
+                    if (value == null) {
+                        throw new IllegalArgumentException("Parse error: unknown constant: " + serialized);
+                    }
+                    return new SlotRecord(tag, null, value, -1, -1);
+
+                case COMB_SLOT:
+                case LUB_SLOT:
+                case EXISTENTIAL_SLOT:
+                    int first = readIndex();
+                    int second = readIndex();
+                    return new SlotRecord(tag, null, null, first, second);
+
+                default:
+                    throw new IllegalArgumentException("Parse error: unknown slot tag: " + tag);
+            }
+        }
+
+        private ConstraintRecord readConstraint() throws IOException {
+            byte tag = in.readByte();
+            AnnotationLocation location = readLocation();
+            switch (tag) {
+                case SUBTYPE:
+                case EQUALITY:
+                case INEQUALITY:
+                case COMPARABLE:
+                    return new ConstraintRecord(tag, location, new int[] {readIndex(), readIndex()}, null, null);
+
+                case COMBINE:
+                    return new ConstraintRecord(tag, location, new int[] {readIndex(), readIndex(), readIndex()},
+                            null, null);
+
+                case PREFERENCE:
+                    return new ConstraintRecord(tag, location, new int[] {readIndex(), readIndex(), in.readInt()},
+                            null, null);
+
+                case EXISTENTIAL:
+                    int potential = readIndex();
+                    return new ConstraintRecord(tag, location, new int[] {potential}, readConstraints(), readConstraints());
+
+                case IMPLICATION:
+                    List<ConstraintRecord> assumptions = readConstraints();
+                    List<ConstraintRecord> conclusion = new ArrayList<>(1);
+                    conclusion.add(readConstraint());
+                    return new ConstraintRecord(tag, location, new int[0], assumptions, conclusion);
+
+                case ARITHMETIC:
+                    int operation = in.readInt();
+                    if (operation < 0 || operation >= OPERATIONS.length) {
+                        throw new IllegalArgumentException("Parse error: unknown arithmetic operation: " + operation);
+                    }
+                    return new ConstraintRecord(tag, location,
+                            new int[] {operation, readIndex(), readIndex(), readIndex()}, null, null);
+
+                default:
+                    throw new IllegalArgumentException("Parse error: unknown constraint tag: " + tag);
+            }
+        }
+
+        private List<ConstraintRecord> readConstraints() throws IOException {
+            int count = readCount();
+            List<ConstraintRecord> constraints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                constraints.add(readConstraint());
+            }
+            return constraints;
+        }
+
+        private AnnotationLocation readLocation() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NO_LOCATION:
+                    return null;
+
+                case MISSING_LOCATION:
+                    return AnnotationLocation.MISSING_LOCATION;
+
+                case AST_PATH_LOCATION:
+                    String className = readString();
+                    String methodName = readString();
+                    String varName = readString();
+                    String astPath = readString();
+                    SourceInsertion insertion = readInsertion();
+                    return new AstPathLocation(new ASTRecord(getCompilationUnit(className), className,
+                            methodName, varName, parseAstPath(astPath)), insertion);
+
+                case CLASS_DECL_LOCATION:
+                    String fullyQualifiedClassName = readString();
+                    getCompilationUnit(fullyQualifiedClassName);
+                    return new ClassDeclLocation(fullyQualifiedClassName, readInsertion());
+
+                default:
+                    throw new IllegalArgumentException("Parse error: unknown location tag: " + tag);
+            }
+        }
+
+        private SourceInsertion readInsertion() throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            byte kind = in.readByte();
+            int offset = in.readInt();
+            String text = readString();
+            if (kind < 0 || kind >= INSERTION_KINDS.length) {
+                throw new IllegalArgumentException("Parse error: unknown source insertion kind: " + kind);
+            }
+            switch (INSERTION_KINDS[kind]) {
+                case BEFORE_TOKEN:
+                    return SourceInsertion.beforeToken(sourceFile, offset, text);
+                case RECEIVER:
+                    return SourceInsertion.receiver(sourceFile, offset, text);
+                default:
+                    return SourceInsertion.unsupported(sourceFile);
+            }
+        }
+
+        private CompilationUnitTree getCompilationUnit(String className) {
+            if (className == null) {
+                throw new IllegalArgumentException("Parse error: location without a class name");
+            }
+            CompilationUnitTree unit = resolver.getCompilationUnit(className);
+            if (unit == null) {
+                throw new IllegalArgumentException("Parse error: no compilation unit declares " + className);
+            }
+            return unit;
+        }
+
+        private static ASTPath parseAstPath(String astPath) {
+            if (astPath == null) {
+                throw new IllegalArgumentException("Parse error: location without an AST path");
+            }
+            if (astPath.isEmpty()) {
+                return ASTPath.empty();
+            }
+            try {
+                return ASTPath.parse(astPath);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Parse error: invalid AST path: " + astPath, e);
+            }
+        }
+
+        private String readString() throws IOException {
+            int index = in.readInt();
+            if (index == -1) {
+                return null;
+            } else if (index == -2) {
+                String string = in.readUTF();
+                strings.add(string);
+                return string;
+            } else if (index < 0 || index >= strings.size()) {
+                throw new IllegalArgumentException("Parse error: string index out of range: " + index);
+            }
+            return strings.get(index);
+        }
+
+        private int readCount() throws IOException {
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IllegalArgumentException("Parse error: negative count: " + count);
+            }
+            return count;
+        }
+
+        private int readIndex() throws IOException {
+            return checkIndex(in.readInt());
+        }
+
+        /** Slots only refer to slots before them, and constraints to any slot. */
+        private int checkIndex(int index) {
+            if (index < 0 || index >= slotCount) {
+                throw new IllegalArgumentException("Parse error: slot index out of range: " + index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Create the slots of this unit through the slot manager, and add its constraints, over the
+     * slots of the current run, to the constraint manager.
+     */
+    public void addTo(SlotManager slotManager, ConstraintManager constraintManager,
+                      QualifierHierarchy realQualHierarchy) {
+        final Slot[] created = new Slot[slots.size()];
+        for (int i = 0; i < created.length; i++) {
+            SlotRecord record = slots.get(i);
+            switch (record.tag) {
+                case VARIABLE_SLOT:
+                    created[i] = slotManager.createVariableSlot(record.location);
+                    break;
+                case REFINEMENT_SLOT:
+                    created[i] = slotManager.createRefinementVariableSlot(record.location,
+                            record.first == -1 ? null : created[record.first]);
+                    break;
+                case CONSTANT_SLOT:
+                    created[i] = slotManager.createConstantSlot(record.value);
+                    break;
+                case COMB_SLOT:
+                    created[i] = slotManager.createCombVariableSlot(created[record.first], created[record.second]);
+                    break;
+                case LUB_SLOT:
+                    created[i] = slotManager.createLubVariableSlot(created[record.first], created[record.second]);
+                    break;
+                case EXISTENTIAL_SLOT:
+                    created[i] = slotManager.createExistentialVariableSlot(
+                            (VariableSlot) created[record.first], (VariableSlot) created[record.second]);
+                    break;
+                case ARITHMETIC_SLOT:
+                    created[i] = slotManager.createArithmeticVariableSlot(record.location);
+                    break;
+            }
+        }
+
+        List<Constraint> result = new ArrayList<>(constraints.size());
+        for (ConstraintRecord record : constraints) {
+            result.add(create(record, created, realQualHierarchy));
+        }
+        constraintManager.addAll(result);
+    }
+
+    private static Constraint create(ConstraintRecord record, Slot[] slots, QualifierHierarchy realQualHierarchy) {
+        final int[] operands = record.operands;
+        switch (record.tag) {
+            case SUBTYPE:
+                return SubtypeConstraint.create(slots[operands[0]], slots[operands[1]], record.location,
+                        realQualHierarchy);
+            case EQUALITY:
+                return EqualityConstraint.create(slots[operands[0]], slots[operands[1]], record.location);
+            case INEQUALITY:
+                return InequalityConstraint.create(slots[operands[0]], slots[operands[1]], record.location);
+            case COMPARABLE:
+                return ComparableConstraint.create(slots[operands[0]], slots[operands[1]], record.location,
+                        realQualHierarchy);
+            case COMBINE:
+                return CombineConstraint.create(slots[operands[0]], slots[operands[1]], slots[operands[2]],
+                        record.location);
+            case PREFERENCE:
+                return PreferenceConstraint.create((VariableSlot) slots[operands[0]], (ConstantSlot) slots[operands[1]],
+                        operands[2], record.location);
+            case EXISTENTIAL:
+                return ExistentialConstraint.create((VariableSlot) slots[operands[0]],
+                        create(record.first, slots, realQualHierarchy),
+                        create(record.second, slots, realQualHierarchy), record.location);
+            case IMPLICATION:
+                return ImplicationConstraint.create(create(record.first, slots, realQualHierarchy),
+                        create(record.second.get(0), slots, realQualHierarchy), record.location);
+            case ARITHMETIC:
+                return ArithmeticConstraint.create(OPERATIONS[operands[0]], slots[operands[1]], slots[operands[2]],
+                        (ArithmeticVariableSlot) slots[operands[3]], record.location);
+            default:
+                throw new IllegalArgumentException("Parse error: unknown constraint tag: " + record.tag);
+        }
+    }
+
+    private static List<Constraint> create(List<ConstraintRecord> records, Slot[] slots,
+                                           QualifierHierarchy realQualHierarchy) {
+        List<Constraint> result = new ArrayList<>(records.size());
+        for (ConstraintRecord record : records) {
+            result.add(create(record, slots, realQualHierarchy));
+        }
+        return result;
+    }
+}
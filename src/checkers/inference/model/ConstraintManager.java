@@ -1,5 +1,6 @@
 package checkers.inference.model;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -23,6 +24,12 @@ public class ConstraintManager {
 
     private final Set<Constraint> constraints = new HashSet<Constraint>();
 
+    /**
+     * Every constraint added since {@link #startRecording()}, including ones that were already in
+     * the constraint set, or null if not recording.
+     */
+    private List<Constraint> recordedConstraints;
+
     private InferenceAnnotatedTypeFactory inferenceTypeFactory;
 
     private SourceChecker checker;
@@ -57,6 +64,9 @@ public class ConstraintManager {
                         "An AlwaysFalseConstraint is being added to the constraint set.");
             } else if (!(constraint instanceof AlwaysTrueConstraint)) {
                 constraints.add(constraint);
+                if (recordedConstraints != null) {
+                    recordedConstraints.add(constraint);
+                }
             }
         }
     }
@@ -74,6 +84,23 @@ public class ConstraintManager {
         }
     }
 
+    /**
+     * Start recording the constraints that are added, see {@link #stopRecording()}.
+     */
+    public void startRecording() {
+        recordedConstraints = new ArrayList<>();
+    }
+
+    /**
+     * @return every constraint added since the last call to {@link #startRecording()}, in the
+     * order they were added, even if an equal constraint was added before
+     */
+    public List<Constraint> stopRecording() {
+        List<Constraint> recorded = recordedConstraints;
+        recordedConstraints = null;
+        return recorded;
+    }
+
     public void startIgnoringConstraints() {
         ignoreConstraints = true;
     }
@@ -0,0 +1,83 @@
+package checkers.inference.model;
+
+/**
+ * Where the annotation of an {@link AnnotationLocation} goes in the text of its source file, for
+ * inserting annotations directly into the sources rather than through a Jaif and the Annotation
+ * File Utilities.  Insertions are recorded when the location is created, from the positions
+ * javac gives the trees, see {@link checkers.inference.DirectSourceInserter}.
+ *
+ * Offsets are in chars of the source file as javac decoded it.
+ */
+public class SourceInsertion {
+
+    public enum Kind {
+        /** The annotation and a space go at the offset, which must start with the expected token. */
+        BEFORE_TOKEN,
+
+        /**
+         * The annotation and a receiver parameter go after the first '(' following the offset,
+         * which is that of the method name.
+         */
+        RECEIVER,
+
+        /** The annotation cannot be inserted without the Annotation File Utilities. */
+        UNSUPPORTED
+    }
+
+    private final Kind kind;
+    private final String sourceFile;
+    private final int offset;
+
+    /** The expected token for BEFORE_TOKEN, or null if not checked, the receiver parameter for RECEIVER. */
+    private final String text;
+
+    private SourceInsertion(Kind kind, String sourceFile, int offset, String text) {
+        this.kind = kind;
+        this.sourceFile = sourceFile;
+        this.offset = offset;
+        this.text = text;
+    }
+
+    public static SourceInsertion beforeToken(String sourceFile, int offset, String expectedToken) {
+        if (offset < 0) {
+            return unsupported(sourceFile);
+        }
+        return new SourceInsertion(Kind.BEFORE_TOKEN, sourceFile, offset, expectedToken);
+    }
+
+    /**
+     * @param receiverParameter the receiver parameter without its annotation, followed by a comma if
+     *                          the method has other parameters, e.g. {@code "MyClass this, "}
+     */
+    public static SourceInsertion receiver(String sourceFile, int methodNameOffset, String receiverParameter) {
+        if (methodNameOffset < 0) {
+            return unsupported(sourceFile);
+        }
+        return new SourceInsertion(Kind.RECEIVER, sourceFile, methodNameOffset, receiverParameter);
+    }
+
+    public static SourceInsertion unsupported(String sourceFile) {
+        return new SourceInsertion(Kind.UNSUPPORTED, sourceFile, -1, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSourceFile() {
+        return sourceFile;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return "SourceInsertion( " + kind + " " + sourceFile + ":" + offset + (text == null ? "" : " " + text) + " )";
+    }
+}
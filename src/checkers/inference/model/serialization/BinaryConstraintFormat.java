@@ -0,0 +1,96 @@
+package checkers.inference.model.serialization;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the binary constraint file written by {@link BinaryConstraintWriter} and loaded by
+ * {@link BinaryConstraintReader}.
+ *
+ * <pre>
+ * header (HEADER_SIZE bytes, big-endian):
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   number of constraints
+ *   int   number of slots
+ *   int   number of strings
+ *   int   number of constraints the writer left out, as the format cannot hold them
+ *   long  offset of the slot table
+ *   long  offset of the string table
+ *
+ * constraints, starting at HEADER_SIZE, one record each:
+ *   byte    ConstraintKind ordinal
+ *   varint  arity
+ *   varint  slot table index of each slot, arity times
+ *   int     weight, PREFERENCE only
+ *
+ * slot table, fixed-width SLOT_RECORD_SIZE records, so slot i is at offset + i * SLOT_RECORD_SIZE:
+ *   int   slot id, -1 if the slot has no known id
+ *   byte  VARIABLE_SLOT or CONSTANT_SLOT
+ *   int   string table index of the serialized value of a constant slot, -1 otherwise
+ *
+ * string table, one entry each:
+ *   varint  length of the UTF-8 encoding
+ *   bytes   UTF-8 encoding
+ * </pre>
+ *
+ * Constraints come first so that a writer can stream them while it assigns slot and string
+ * indices, and only append the tables and patch the header at the end. Varints are unsigned
+ * LEB128.
+ */
+public class BinaryConstraintFormat {
+
+    /** "CFIB" in ASCII. */
+    public static final int MAGIC = 0x43464942;
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 40;
+
+    public static final int SLOT_RECORD_SIZE = 9;
+
+    public static final byte VARIABLE_SLOT = 0;
+
+    public static final byte CONSTANT_SLOT = 1;
+
+    /** Kinds of constraints the binary format can hold. Stored by ordinal, so only append to this. */
+    public enum ConstraintKind {
+        SUBTYPE,
+        EQUALITY,
+        INEQUALITY,
+        COMPARABLE,
+        PREFERENCE,
+        COMBINE;
+
+        private static final ConstraintKind[] VALUES = values();
+
+        public static ConstraintKind fromOrdinal(int ordinal) {
+            if (ordinal < 0 || ordinal >= VALUES.length) {
+                throw new IllegalArgumentException("Parse error: unknown constraint kind: " + ordinal);
+            }
+            return VALUES[ordinal];
+        }
+    }
+
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Varints must not be negative: " + value);
+        }
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Parse error: malformed varint at " + buffer.position());
+    }
+}
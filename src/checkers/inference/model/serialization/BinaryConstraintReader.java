@@ -0,0 +1,170 @@
+package checkers.inference.model.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import org.checkerframework.framework.type.QualifierHierarchy;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.InferenceResult;
+import checkers.inference.InferenceSolver;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.ConstraintManager;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.BinaryConstraintFormat.ConstraintKind;
+
+/**
+ * Loads a constraint file in the format described by {@link BinaryConstraintFormat}.
+ *
+ * The file is memory-mapped, and the string and slot tables are decoded before the constraints,
+ * so loading is a single sequential scan of the constraint section. Like {@link JsonDeserializer},
+ * constraints are created through the {@link ConstraintManager} of the current
+ * {@link InferenceMain} instance.
+ */
+public class BinaryConstraintReader {
+
+    protected final AnnotationMirrorSerializer annotationSerializer;
+
+    private final ConstraintManager constraintManager;
+
+    /** Slots of the last loaded file, indexed by slot table index. */
+    private List<Slot> slots = Collections.emptyList();
+
+    /** Number of constraints the writer of the last loaded file left out. */
+    private int skippedConstraintCount = 0;
+
+    public BinaryConstraintReader(AnnotationMirrorSerializer annotationSerializer) {
+        this.annotationSerializer = annotationSerializer;
+        this.constraintManager = InferenceMain.getInstance().getConstraintManager();
+    }
+
+    /**
+     * Load the constraints of the given file.
+     */
+    public List<Constraint> read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binary constraint files larger than 2GB cannot be mapped: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != BinaryConstraintFormat.MAGIC) {
+            throw new IllegalArgumentException("Parse error: not a binary constraint file: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != BinaryConstraintFormat.VERSION) {
+            throw new IllegalArgumentException("Parse error: unsupported binary constraint file version "
+                    + version + ", expected " + BinaryConstraintFormat.VERSION);
+        }
+        int constraintCount = buffer.getInt();
+        int slotCount = buffer.getInt();
+        int stringCount = buffer.getInt();
+        skippedConstraintCount = buffer.getInt();
+        int slotTableOffset = (int) buffer.getLong();
+        int stringTableOffset = (int) buffer.getLong();
+
+        String[] strings = readStrings((ByteBuffer) buffer.duplicate().position(stringTableOffset), stringCount);
+        slots = readSlots((ByteBuffer) buffer.duplicate().position(slotTableOffset), slotCount, strings);
+
+        ByteBuffer constraintSection = (ByteBuffer) buffer.duplicate().position(BinaryConstraintFormat.HEADER_SIZE);
+        List<Constraint> constraints = new ArrayList<>(constraintCount);
+        for (int i = 0; i < constraintCount; i++) {
+            constraints.add(readConstraint(constraintSection));
+        }
+        return constraints;
+    }
+
+    /**
+     * Slots of the file last loaded by {@link #read(Path)}.
+     */
+    public List<Slot> getSlots() {
+        return slots;
+    }
+
+    /**
+     * Number of constraints the writer of the file last loaded by {@link #read(Path)} left out, as
+     * the binary format cannot hold them.
+     */
+    public int getSkippedConstraintCount() {
+        return skippedConstraintCount;
+    }
+
+    /**
+     * Load the constraints of the given file and solve them with the given solver.
+     */
+    public InferenceResult replay(Path file, InferenceSolver solver, Map<String, String> configuration,
+            QualifierHierarchy qualHierarchy, ProcessingEnvironment processingEnvironment) throws IOException {
+        List<Constraint> constraints = read(file);
+        return solver.solve(configuration, slots, constraints, qualHierarchy, processingEnvironment);
+    }
+
+    private String[] readStrings(ByteBuffer buffer, int stringCount) {
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            byte[] bytes = new byte[BinaryConstraintFormat.getVarInt(buffer)];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private List<Slot> readSlots(ByteBuffer buffer, int slotCount, String[] strings) {
+        Slot[] result = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            int id = buffer.getInt();
+            byte kind = buffer.get();
+            int stringIndex = buffer.getInt();
+            if (kind == BinaryConstraintFormat.VARIABLE_SLOT) {
+                result[i] = new VariableSlot(id);
+            } else if (kind == BinaryConstraintFormat.CONSTANT_SLOT) {
+                result[i] = InferenceMain.getInstance().getSlotManager().createConstantSlot(
+                        annotationSerializer.deserialize(strings[stringIndex]));
+            } else {
+                throw new IllegalArgumentException("Parse error: unknown slot kind: " + kind);
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    private Constraint readConstraint(ByteBuffer buffer) {
+        ConstraintKind kind = ConstraintKind.fromOrdinal(buffer.get());
+        Slot[] operands = new Slot[BinaryConstraintFormat.getVarInt(buffer)];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = slots.get(BinaryConstraintFormat.getVarInt(buffer));
+        }
+
+        switch (kind) {
+            case SUBTYPE:
+                return constraintManager.createSubtypeConstraint(operands[0], operands[1]);
+            case EQUALITY:
+                return constraintManager.createEqualityConstraint(operands[0], operands[1]);
+            case INEQUALITY:
+                return constraintManager.createInequalityConstraint(operands[0], operands[1]);
+            case COMPARABLE:
+                return constraintManager.createComparableConstraint(operands[0], operands[1]);
+            case COMBINE:
+                return constraintManager.createCombineConstraint(operands[0], operands[1], operands[2]);
+            case PREFERENCE:
+                return constraintManager.createPreferenceConstraint((VariableSlot) operands[0],
+                        (ConstantSlot) operands[1], buffer.getInt());
+            default:
+                throw new IllegalArgumentException("Parse error: unsupported constraint kind: " + kind);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package checkers.inference.model.serialization;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.model.serialization.BinaryConstraintFormat.ConstraintKind;
+
+/**
+ * Writes constraints to a file in the format described by {@link BinaryConstraintFormat}.
+ *
+ * Constraints are streamed to the file channel through a fixed-size buffer as they are written.
+ * Slot and string table indices are assigned on first use, and the tables are appended when the
+ * writer is closed.
+ */
+public class BinaryConstraintWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final AnnotationMirrorSerializer annotationSerializer;
+
+    /** Slot table index of each variable slot, keyed by slot id. */
+    private final Map<Integer, Integer> variableSlotIndices = new HashMap<>();
+
+    /** Slot table index of each constant slot, keyed by string table index of its value. */
+    private final Map<Integer, Integer> constantSlotIndices = new HashMap<>();
+
+    /** Slot table records, as id, kind and string index triples. */
+    private final List<int[]> slotRecords = new ArrayList<>();
+
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+
+    private final List<String> strings = new ArrayList<>();
+
+    private int constraintCount = 0;
+
+    private int skippedConstraintCount = 0;
+
+    /**
+     * @param file the file to write, which is overwritten if it exists
+     * @param annotationSerializer serializer of constant slot values, may be null if constant
+     *            slots are only added through {@link #constantSlot(int, String)}
+     */
+    public BinaryConstraintWriter(Path file, AnnotationMirrorSerializer annotationSerializer) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.annotationSerializer = annotationSerializer;
+        // Reserve the header, it is written once the counts and offsets are known.
+        channel.position(BinaryConstraintFormat.HEADER_SIZE);
+    }
+
+    /**
+     * @return true if the binary format can hold the given constraint, see {@link #write(Constraint)}
+     */
+    public static boolean canWrite(Constraint constraint) {
+        return constraint instanceof SubtypeConstraint
+                || constraint instanceof EqualityConstraint
+                || constraint instanceof InequalityConstraint
+                || constraint instanceof ComparableConstraint
+                || constraint instanceof CombineConstraint
+                || constraint instanceof PreferenceConstraint;
+    }
+
+    /**
+     * Write the given constraint.
+     *
+     * @throws IllegalArgumentException if the binary format cannot hold this kind of constraint,
+     *         see {@link #canWrite(Constraint)}
+     */
+    public void write(Constraint constraint) throws IOException {
+        if (constraint instanceof SubtypeConstraint) {
+            SubtypeConstraint subtype = (SubtypeConstraint) constraint;
+            writeConstraint(ConstraintKind.SUBTYPE, slot(subtype.getSubtype()), slot(subtype.getSupertype()));
+        } else if (constraint instanceof EqualityConstraint) {
+            EqualityConstraint equality = (EqualityConstraint) constraint;
+            writeConstraint(ConstraintKind.EQUALITY, slot(equality.getFirst()), slot(equality.getSecond()));
+        } else if (constraint instanceof InequalityConstraint) {
+            InequalityConstraint inequality = (InequalityConstraint) constraint;
+            writeConstraint(ConstraintKind.INEQUALITY, slot(inequality.getFirst()), slot(inequality.getSecond()));
+        } else if (constraint instanceof ComparableConstraint) {
+            ComparableConstraint comparable = (ComparableConstraint) constraint;
+            writeConstraint(ConstraintKind.COMPARABLE, slot(comparable.getFirst()), slot(comparable.getSecond()));
+        } else if (constraint instanceof CombineConstraint) {
+            CombineConstraint combine = (CombineConstraint) constraint;
+            writeConstraint(ConstraintKind.COMBINE, slot(combine.getTarget()), slot(combine.getDeclared()),
+                    slot(combine.getResult()));
+        } else if (constraint instanceof PreferenceConstraint) {
+            PreferenceConstraint preference = (PreferenceConstraint) constraint;
+            writePreference(slot(preference.getVariable()), slot(preference.getGoal()), preference.getWeight());
+        } else {
+            throw new IllegalArgumentException("Binary constraint files cannot hold constraint: " + constraint);
+        }
+    }
+
+    /**
+     * Write a constraint of the given kind over the given slot table indices.
+     */
+    public void writeConstraint(ConstraintKind kind, int... slotIndices) throws IOException {
+        if (kind == ConstraintKind.PREFERENCE) {
+            throw new IllegalArgumentException("Preference constraints need a weight, use writePreference.");
+        }
+        beginConstraint(kind, slotIndices);
+    }
+
+    /**
+     * Write a preference constraint over the given slot table indices.
+     */
+    public void writePreference(int variableIndex, int goalIndex, int weight) throws IOException {
+        beginConstraint(ConstraintKind.PREFERENCE, variableIndex, goalIndex);
+        buffer.putInt(weight);
+    }
+
+    /**
+     * Record that the given number of constraints were left out, as the format cannot hold them.
+     * The count is written to the header.
+     */
+    public void addSkippedConstraints(int count) {
+        skippedConstraintCount += count;
+    }
+
+    private void beginConstraint(ConstraintKind kind, int... slotIndices) throws IOException {
+        // Kind, arity and slot indices as varints of at most 5 bytes, and a preference's weight.
+        ensureRemaining(1 + 5 + 5 * slotIndices.length + 4);
+        buffer.put((byte) kind.ordinal());
+        BinaryConstraintFormat.putVarInt(buffer, slotIndices.length);
+        for (int slotIndex : slotIndices) {
+            BinaryConstraintFormat.putVarInt(buffer, slotIndex);
+        }
+        constraintCount++;
+    }
+
+    /**
+     * Return the slot table index of the given slot, adding it to the slot table if needed.
+     */
+    public int slot(Slot slot) {
+        if (slot instanceof ConstantSlot) {
+            ConstantSlot constantSlot = (ConstantSlot) slot;
+            return constantSlot(constantSlot.getId(), annotationSerializer.serialize(constantSlot.getValue()));
+        }
+        return variableSlot(((VariableSlot) slot).getId());
+    }
+
+    /**
+     * Return the slot table index of the variable slot with the given id, adding it to the slot
+     * table if needed.
+     */
+    public int variableSlot(int id) {
+        Integer index = variableSlotIndices.get(id);
+        if (index == null) {
+            index = slotRecords.size();
+            slotRecords.add(new int[] {id, BinaryConstraintFormat.VARIABLE_SLOT, -1});
+            variableSlotIndices.put(id, index);
+        }
+        return index;
+    }
+
+    /**
+     * Return the slot table index of the constant slot with the given serialized value, adding it
+     * to the slot table if needed. Constant slots with the same value share one record.
+     *
+     * @param id the id of the constant slot, or -1 if it is not known
+     * @param value the constant value, serialized by an {@link AnnotationMirrorSerializer}
+     */
+    public int constantSlot(int id, String value) {
+        int stringIndex = string(value);
+        Integer index = constantSlotIndices.get(stringIndex);
+        if (index == null) {
+            index = slotRecords.size();
+            slotRecords.add(new int[] {id, BinaryConstraintFormat.CONSTANT_SLOT, stringIndex});
+            constantSlotIndices.put(stringIndex, index);
+        }
+        return index;
+    }
+
+    private int string(String value) {
+        Integer index = stringIndices.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndices.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Append the slot and string tables, write the header, and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long slotTableOffset = channel.position() + buffer.position();
+            for (int[] record : slotRecords) {
+                ensureRemaining(BinaryConstraintFormat.SLOT_RECORD_SIZE);
+                buffer.putInt(record[0]);
+                buffer.put((byte) record[1]);
+                buffer.putInt(record[2]);
+            }
+
+            long stringTableOffset = channel.position() + buffer.position();
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                ensureRemaining(5);
+                BinaryConstraintFormat.putVarInt(buffer, bytes.length);
+                if (bytes.length > buffer.remaining()) {
+                    flush();
+                    writeFully(ByteBuffer.wrap(bytes));
+                } else {
+                    buffer.put(bytes);
+                }
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(BinaryConstraintFormat.HEADER_SIZE);
+            header.putInt(BinaryConstraintFormat.MAGIC);
+            header.putInt(BinaryConstraintFormat.VERSION);
+            header.putInt(constraintCount);
+            header.putInt(slotRecords.size());
+            header.putInt(strings.size());
+            header.putInt(skippedConstraintCount);
+            header.putLong(slotTableOffset);
+            header.putLong(stringTableOffset);
+            header.flip();
+            channel.position(0);
+            writeFully(header);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void ensureRemaining(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
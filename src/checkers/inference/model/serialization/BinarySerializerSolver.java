@@ -0,0 +1,79 @@
+package checkers.inference.model.serialization;
+
+import org.checkerframework.framework.type.QualifierHierarchy;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.InferenceResult;
+import checkers.inference.InferenceSolver;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+
+/**
+ * InferenceSolver that serializes constraints to a file in the binary format of
+ * {@link BinaryConstraintFormat}, to be loaded again by {@link BinaryConstraintReader}.
+ * Constraints the format cannot hold, e.g. existential, implication and arithmetic constraints,
+ * are left out with a warning, and their number is recorded in the file's header.
+ *
+ * @see JsonSerializerSolver
+ */
+public class BinarySerializerSolver implements InferenceSolver {
+
+    private static final Logger logger = Logger.getLogger(BinarySerializerSolver.class.getName());
+
+    private static final String FILE_KEY = "constraint-file";
+    private static final String DEFAULT_FILE = "./constraints.bin";
+
+    @Override
+    public InferenceResult solve(
+            Map<String, String> configuration,
+            Collection<Slot> slots,
+            Collection<Constraint> constraints,
+            QualifierHierarchy qualHierarchy,
+            ProcessingEnvironment processingEnvironment) {
+
+        String outFile = configuration.containsKey(FILE_KEY) ?
+                configuration.get(FILE_KEY)
+                : DEFAULT_FILE;
+        AnnotationMirror top = qualHierarchy.getTopAnnotations().iterator().next();
+        AnnotationMirror bottom = qualHierarchy.getBottomAnnotations().iterator().next();
+        SimpleAnnotationMirrorSerializer annotationSerializer = new SimpleAnnotationMirrorSerializer(top, bottom);
+
+        // Sort out the constraints the format cannot hold before the file is opened.
+        List<Constraint> writable = new ArrayList<>(constraints.size());
+        Map<String, Integer> skipped = new TreeMap<>();
+        for (Constraint constraint : constraints) {
+            if (BinaryConstraintWriter.canWrite(constraint)) {
+                writable.add(constraint);
+            } else {
+                skipped.merge(constraint.getClass().getSimpleName(), 1, Integer::sum);
+            }
+        }
+        int skippedCount = constraints.size() - writable.size();
+        if (skippedCount > 0) {
+            logger.warning(String.format("Binary constraint files cannot hold %d constraints, they are left out of %s: %s",
+                    skippedCount, outFile, skipped));
+        }
+
+        try (BinaryConstraintWriter writer = new BinaryConstraintWriter(Paths.get(outFile), annotationSerializer)) {
+            writer.addSkippedConstraints(skippedCount);
+            for (Constraint constraint : writable) {
+                writer.write(constraint);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+}
@@ -11,6 +11,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.processing.ProcessingEnvironment;
@@ -24,15 +25,23 @@ import checkers.inference.InferenceSolver;
 import checkers.inference.SlotManager;
 import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.Constraint;
+import checkers.inference.model.ExistentialConstraint;
 import checkers.inference.model.Slot;
+import checkers.inference.solver.util.ParallelEncoder;
 
 /**
  * TODO: THIS IS NOT USEFUL UNTIL WE MAP EXISTENTIALVARIABLEIDS to POTENTIAL VAR
+ *
+ * Clauses are encoded and rendered on {@code encoding-threads} threads, which defaults to the
+ * number of available processors, and written in constraint order. Existential constraints
+ * allocate new variable ids while they are encoded, so constraints containing them are always
+ * encoded on a single thread to keep the output deterministic.
  */
 public class CnfSerializerSolver implements InferenceSolver {
 
     private static final String FILE_KEY = "constraint-file";
     private static final String DEFAULT_FILE = "./constraints.json";
+    private static final String ENCODING_THREADS_KEY = "encoding-threads";
     private SlotManager slotManager;
 
     @Override
@@ -56,11 +65,19 @@ public class CnfSerializerSolver implements InferenceSolver {
 
         String outFile = configuration.containsKey(FILE_KEY) ? configuration.get(FILE_KEY)
                                                               : DEFAULT_FILE;
-        printCnf(new File(outFile), constraints, cnfSerializer);
+        int numOfThreads = configuration.containsKey(ENCODING_THREADS_KEY) ?
+                Integer.parseInt(configuration.get(ENCODING_THREADS_KEY))
+                : Runtime.getRuntime().availableProcessors();
+        printCnf(new File(outFile), constraints, cnfSerializer, numOfThreads);
         return null;
     }
 
     protected void printCnf(File outputFile, Collection<Constraint> constraints, CnfVecIntSerializer serializer) {
+        printCnf(outputFile, constraints, serializer, 1);
+    }
+
+    protected void printCnf(File outputFile, Collection<Constraint> constraints, CnfVecIntSerializer serializer,
+            int numOfThreads) {
         try {
             int totalVars = slotManager.getNumberOfSlots();
             int totalConstraints = constraints.size();
@@ -78,14 +95,21 @@ public class CnfSerializerSolver implements InferenceSolver {
             writer.write(problem("cnf", totalVars, totalConstraints));
             writer.newLine();
 
+            boolean hasExistential = false;
             for (Constraint constraint : constraints) {
-                final VecInt[] clauses = constraint.serialize(serializer);
-                for (VecInt clause : clauses) {
-                    writer.write(makeClause(clause));
-                    writer.newLine();
+                if (constraint instanceof ExistentialConstraint) {
+                    hasExistential = true;
+                    break;
                 }
             }
 
+            final List<String> clauseBlocks = ParallelEncoder.encode(constraints,
+                    constraint -> makeClauses(constraint.serialize(serializer)),
+                    hasExistential ? 1 : numOfThreads);
+            for (String clauseBlock : clauseBlocks) {
+                writer.write(clauseBlock);
+            }
+
             writer.flush();
             writer.close();
 
@@ -112,6 +136,15 @@ public class CnfSerializerSolver implements InferenceSolver {
         return sb.toString();
     }
 
+    private String makeClauses(VecInt[] clauses) {
+        StringBuilder sb = new StringBuilder();
+        for (VecInt clause : clauses) {
+            sb.append(makeClause(clause));
+            sb.append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
     private String makeClause(VecInt clause) {
         StringBuilder sb = new StringBuilder();
 
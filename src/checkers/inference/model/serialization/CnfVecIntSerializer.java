@@ -28,6 +28,10 @@ import checkers.inference.model.SubtypeConstraint;
 import checkers.inference.model.VariableSlot;
 
 /**
+ * Serializing a constraint only reads the constraint and the slot manager, except for
+ * {@link ExistentialConstraint}s, which record a new variable in
+ * {@link #getExistentialToPotentialVar()}. So constraints may be serialized concurrently as
+ * long as none of them is existential.
  */
 public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt[]> {
     private final SlotManager slotManager;
@@ -0,0 +1,161 @@
+package checkers.inference.model.serialization;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import checkers.inference.model.Constraint;
+import static checkers.inference.model.serialization.JsonSerializer.CONSTRAINTS_KEY;
+
+/**
+ * Pull parser over the constraints of a json constraint file.
+ *
+ * The file is read with a {@link JsonReader}. Each element of the constraints array is read into
+ * the same json-simple representation {@link JsonDeserializer} uses, and converted by
+ * {@link JsonDeserializer#jsonToConstraint(Object)}, so both modes accept exactly the same files.
+ *
+ * @see JsonDeserializer#iterateConstraints(java.io.Reader)
+ */
+public class JsonConstraintIterator implements Iterator<Constraint>, Closeable {
+
+    private final JsonDeserializer deserializer;
+
+    private final JsonReader reader;
+
+    /**
+     * Whether the reader is positioned inside the constraints array.
+     */
+    private boolean inConstraints = false;
+
+    /**
+     * Whether every constraint has been read and the reader closed.
+     */
+    private boolean finished = false;
+
+    JsonConstraintIterator(JsonDeserializer deserializer, JsonReader reader) {
+        this.deserializer = deserializer;
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            if (finished) {
+                return false;
+            }
+            if (!inConstraints && !seekConstraints()) {
+                close();
+                return false;
+            }
+            if (reader.hasNext()) {
+                return true;
+            }
+
+            // End of the constraints array, skip whatever follows it.
+            reader.endArray();
+            inConstraints = false;
+            while (reader.hasNext()) {
+                reader.nextName();
+                reader.skipValue();
+            }
+            reader.endObject();
+            close();
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Parse error: could not read constraints", e);
+        }
+    }
+
+    @Override
+    public Constraint next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return deserializer.jsonToConstraint(readValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Parse error: could not read constraint", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        reader.close();
+    }
+
+    /**
+     * Advance the reader to the first element of the constraints array, skipping other members
+     * of the root object.
+     *
+     * @return false if the root object has no constraints array
+     */
+    private boolean seekConstraints() throws IOException {
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+        }
+        while (reader.hasNext()) {
+            if (CONSTRAINTS_KEY.equals(reader.nextName())) {
+                reader.beginArray();
+                inConstraints = true;
+                return true;
+            }
+            reader.skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * Read the next value of the reader into its json-simple representation.
+     */
+    @SuppressWarnings("unchecked")
+    private Object readValue() throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT: {
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    object.put(name, readValue());
+                }
+                reader.endObject();
+                return object;
+            }
+            case BEGIN_ARRAY: {
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.add(readValue());
+                }
+                reader.endArray();
+                return array;
+            }
+            case NUMBER: {
+                // json-simple represents integral numbers as Long and others as Double.
+                String number = reader.nextString();
+                try {
+                    return Long.valueOf(number);
+                } catch (NumberFormatException e) {
+                    return Double.valueOf(number);
+                }
+            }
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            case STRING:
+                return reader.nextString();
+            default:
+                throw new IllegalArgumentException("Parse error: unexpected json token: " + reader.peek());
+        }
+    }
+}
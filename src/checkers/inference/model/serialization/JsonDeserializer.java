@@ -1,5 +1,6 @@
 package checkers.inference.model.serialization;
 
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,6 +17,8 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import com.google.gson.stream.JsonReader;
+
 import checkers.inference.InferenceMain;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.ConstraintManager;
@@ -62,6 +65,16 @@ public class JsonDeserializer {
 
     private ConstraintManager constraintManager;
 
+    /**
+     * Create a deserializer that only supports {@link #iterateConstraints(Reader)}, as it holds no
+     * parsed document.
+     */
+    public JsonDeserializer(AnnotationMirrorSerializer annotationSerializer) {
+        this.annotationSerializer = annotationSerializer;
+        this.root = null;
+        this.constraintManager = InferenceMain.getInstance().getConstraintManager();
+    }
+
     public JsonDeserializer(AnnotationMirrorSerializer annotationSerializer, String json) throws ParseException {
         this.annotationSerializer = annotationSerializer;
         JSONParser parser = new JSONParser();
@@ -79,53 +92,77 @@ public class JsonDeserializer {
         List<Constraint> results = new LinkedList<Constraint>();
 
         for (Object obj: jsonConstraints) {
-            if (obj instanceof String) {
-                String constraintStr = (String) obj;
-                String[] parts = constraintStr.trim().split(" ");
-                if (parts.length != 3) {
-                    throw new IllegalArgumentException("Parse error: could not parse constraint: " + obj);
-                } else if (!SUBTYPE_STR.equals(parts[1])) {
-                    throw new IllegalArgumentException("Parse error: found unexpected constraint operation: " + obj);
-                }
-                Slot sub = parseSlot(parts[0]);
-                Slot sup = parseSlot(parts[2]);
-                results.add(constraintManager.createSubtypeConstraint(sub, sup));
-            } else if (obj instanceof JSONObject) {
-                JSONObject constraint = (JSONObject) obj;
-                String constraintType = (String) constraint.get(CONSTRAINT_KEY);
-                if (SUBTYPE_CONSTRAINT_KEY.equals(constraintType)) {
-                    Slot lhs = parseSlot((String) constraint.get(SUBTYPE_SUPER_KEY));
-                    Slot rhs = parseSlot((String) constraint.get(SUBTYPE_SUB_KEY));
-                    results.add(constraintManager.createSubtypeConstraint(rhs, lhs));
-                } else if (EQUALITY_CONSTRAINT_KEY.equals(constraintType)) {
-                    Slot lhs = parseSlot((String) constraint.get(EQUALITY_LHS));
-                    Slot rhs = parseSlot((String) constraint.get(EQUALITY_RHS));
-                    results.add(constraintManager.createEqualityConstraint(lhs, rhs));
-                } else if (INEQUALITY_CONSTRAINT_KEY.equals(constraintType)) {
-                    Slot lhs = parseSlot((String) constraint.get(INEQUALITY_LHS));
-                    Slot rhs = parseSlot((String) constraint.get(INEQUALITY_RHS));
-                    results.add(constraintManager.createInequalityConstraint(lhs, rhs));
-                } else if (COMP_CONSTRAINT_KEY.equals(constraintType)) {
-                    Slot lhs = parseSlot((String) constraint.get(INEQUALITY_LHS));
-                    Slot rhs = parseSlot((String) constraint.get(INEQUALITY_RHS));
-                    results.add(constraintManager.createComparableConstraint(lhs, rhs));
-                } else if (EXISTENTIAL_CONSTRAINT_KEY.equals(constraintType)) {
-                    Slot potential = parseSlot((String) constraint.get(EXISTENTIAL_ID));
-                    List<Constraint> thenConstraints =
-                            jsonArrayToConstraints((JSONArray) constraint.get(EXISTENTIAL_THEN));
-                    List<Constraint> elseConstraints =
-                            jsonArrayToConstraints((JSONArray) constraint.get(EXISTENTIAL_ELSE));
-                    results.add(constraintManager.createExistentialConstraint((VariableSlot) potential,
-                            thenConstraints, elseConstraints));
-                }  else {
-                    throw new IllegalArgumentException("Parse error: unknown constraint type: " + obj);
-                }
+            results.add(jsonToConstraint(obj));
+        }
+        return results;
+    }
+
+    /**
+     * Convert a single element of a constraints array, either a {@code "sub <= sup"} string or a
+     * constraint object, into a Constraint.
+     */
+    protected Constraint jsonToConstraint(final Object obj) {
+        if (obj instanceof String) {
+            String constraintStr = (String) obj;
+            String[] parts = constraintStr.trim().split(" ");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Parse error: could not parse constraint: " + obj);
+            } else if (!SUBTYPE_STR.equals(parts[1])) {
+                throw new IllegalArgumentException("Parse error: found unexpected constraint operation: " + obj);
+            }
+            Slot sub = parseSlot(parts[0]);
+            Slot sup = parseSlot(parts[2]);
+            return constraintManager.createSubtypeConstraint(sub, sup);
+        } else if (obj instanceof JSONObject) {
+            JSONObject constraint = (JSONObject) obj;
+            String constraintType = (String) constraint.get(CONSTRAINT_KEY);
+            if (SUBTYPE_CONSTRAINT_KEY.equals(constraintType)) {
+                Slot lhs = parseSlot((String) constraint.get(SUBTYPE_SUPER_KEY));
+                Slot rhs = parseSlot((String) constraint.get(SUBTYPE_SUB_KEY));
+                return constraintManager.createSubtypeConstraint(rhs, lhs);
+            } else if (EQUALITY_CONSTRAINT_KEY.equals(constraintType)) {
+                Slot lhs = parseSlot((String) constraint.get(EQUALITY_LHS));
+                Slot rhs = parseSlot((String) constraint.get(EQUALITY_RHS));
+                return constraintManager.createEqualityConstraint(lhs, rhs);
+            } else if (INEQUALITY_CONSTRAINT_KEY.equals(constraintType)) {
+                Slot lhs = parseSlot((String) constraint.get(INEQUALITY_LHS));
+                Slot rhs = parseSlot((String) constraint.get(INEQUALITY_RHS));
+                return constraintManager.createInequalityConstraint(lhs, rhs);
+            } else if (COMP_CONSTRAINT_KEY.equals(constraintType)) {
+                Slot lhs = parseSlot((String) constraint.get(INEQUALITY_LHS));
+                Slot rhs = parseSlot((String) constraint.get(INEQUALITY_RHS));
+                return constraintManager.createComparableConstraint(lhs, rhs);
+            } else if (EXISTENTIAL_CONSTRAINT_KEY.equals(constraintType)) {
+                Slot potential = parseSlot((String) constraint.get(EXISTENTIAL_ID));
+                List<Constraint> thenConstraints =
+                        jsonArrayToConstraints((JSONArray) constraint.get(EXISTENTIAL_THEN));
+                List<Constraint> elseConstraints =
+                        jsonArrayToConstraints((JSONArray) constraint.get(EXISTENTIAL_ELSE));
+                return constraintManager.createExistentialConstraint((VariableSlot) potential,
+                        thenConstraints, elseConstraints);
+            }  else {
                 // TODO: map.get, enabled_check, selection_check
-            } else {
-                throw new IllegalArgumentException("Parse error: unexpected json value: " + obj);
+                throw new IllegalArgumentException("Parse error: unknown constraint type: " + obj);
             }
+        } else {
+            throw new IllegalArgumentException("Parse error: unexpected json value: " + obj);
         }
-        return results;
+    }
+
+    /**
+     * Return an iterator that parses the constraints of the json constraint file read from
+     * {@code json} one at a time, without building the document in memory. Only the json of the
+     * constraint being converted is held at any point, so downstream solvers and normalizers can
+     * consume files that are too large to parse as a whole.
+     *
+     * Members of the file other than the constraints are skipped. The returned iterator closes
+     * {@code json} once all constraints are consumed.
+     *
+     * @param json a reader of a json constraint file
+     * @return an iterator over the constraints in the file, in file order
+     */
+    public JsonConstraintIterator iterateConstraints(Reader json) {
+        return new JsonConstraintIterator(this, new JsonReader(json));
     }
 
     public List<String> getPotentialVariables() {
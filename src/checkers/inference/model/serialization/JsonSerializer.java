@@ -1,5 +1,6 @@
 package checkers.inference.model.serialization;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -11,6 +12,9 @@ import checkers.inference.model.LubVariableSlot;
 import checkers.inference.model.ImplicationConstraint;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+
+import com.google.gson.stream.JsonWriter;
+
 import checkers.inference.model.ArithmeticConstraint;
 import checkers.inference.model.CombVariableSlot;
 import checkers.inference.model.CombineConstraint;
@@ -185,6 +189,72 @@ public class JsonSerializer implements Serializer<String, JSONObject> {
         return result;
     }
 
+    /**
+     * Write the same constraint file as {@link #generateConstraintFile()} to the given writer,
+     * without materializing it. Solutions and constraints are emitted one at a time, so only the
+     * JSON object of a single constraint is held in memory at any point.
+     *
+     * @param out the writer to emit the constraint file to
+     * @throws IOException if writing to {@code out} fails
+     */
+    public void writeConstraintFile(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name(VERSION_KEY).value(VERSION);
+
+        if (solutions != null && solutions.size() > 0) {
+            out.name(VARIABLES_KEY);
+            out.beginObject();
+            for (Map.Entry<Integer, AnnotationMirror> entry: solutions.entrySet()) {
+                out.name(VAR_PREFIX + entry.getKey());
+                out.beginObject();
+                out.name(VARIABLES_VALUE_KEY).value(getConstantString(entry.getValue()));
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        out.name(CONSTRAINTS_KEY);
+        out.beginArray();
+        for (Constraint constraint : constraints) {
+            JSONObject constraintObj = constraint.serialize(this);
+            if (constraintObj != null) {
+                writeJsonValue(out, constraintObj);
+            }
+        }
+        out.endArray();
+
+        out.endObject();
+    }
+
+    /**
+     * Write a value built by this serializer, i.e. a JSON object, a list, a string, a number,
+     * a boolean, or null, to the given writer.
+     */
+    protected void writeJsonValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof Map) {
+            out.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                out.name(String.valueOf(entry.getKey()));
+                writeJsonValue(out, entry.getValue());
+            }
+            out.endObject();
+        } else if (value instanceof Collection) {
+            out.beginArray();
+            for (Object element : (Collection<?>) value) {
+                writeJsonValue(out, element);
+            }
+            out.endArray();
+        } else if (value instanceof Number) {
+            out.value((Number) value);
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else {
+            out.value(value.toString());
+        }
+    }
+
     @SuppressWarnings("unchecked")
     protected JSONObject generateVariablesSection() {
         JSONObject variables = new JSONObject();
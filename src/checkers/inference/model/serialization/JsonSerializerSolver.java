@@ -2,17 +2,21 @@ package checkers.inference.model.serialization;
 
 import org.checkerframework.framework.type.QualifierHierarchy;
 
-import java.io.FileNotFoundException;
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
 import checkers.inference.InferenceResult;
 import checkers.inference.InferenceSolver;
@@ -22,6 +26,10 @@ import checkers.inference.model.Slot;
 /**
  * InferenceSolver that serializes constraints to a file in JSON format.
  *
+ * The file is streamed, so the constraints are never held as one JSON document in memory.
+ * Pretty printing can be turned off with {@code pretty-print=false}, and a constraint file
+ * whose name ends with {@code .gz} is gzip compressed.
+ *
  * @author mcarthur
  *
  */
@@ -30,6 +38,8 @@ public class JsonSerializerSolver implements InferenceSolver {
 
     private static final String FILE_KEY = "constraint-file";
     private static final String DEFAULT_FILE = "./constraints.json";
+    private static final String PRETTY_PRINT_KEY = "pretty-print";
+    private static final String GZIP_SUFFIX = ".gz";
     private Map<String, String> configuration;
 
     @Override
@@ -51,16 +61,28 @@ public class JsonSerializerSolver implements InferenceSolver {
     }
 
     protected void printJson(JsonSerializer serializer) {
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        String json = gson.toJson(serializer.generateConstraintFile());
-
         String outFile = configuration.containsKey(FILE_KEY) ?
                 configuration.get(FILE_KEY)
                 : DEFAULT_FILE;
-        try (PrintWriter writer = new PrintWriter(new FileOutputStream(outFile))) {
-            writer.print(json);
-        } catch (FileNotFoundException e) {
+        boolean prettyPrint = !"false".equalsIgnoreCase(configuration.get(PRETTY_PRINT_KEY));
+
+        try (JsonWriter writer = new JsonWriter(openOutput(outFile))) {
+            if (prettyPrint) {
+                writer.setIndent("  ");
+            }
+            // Match Gson's default of omitting null members.
+            writer.setSerializeNulls(false);
+            serializer.writeConstraintFile(writer);
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    private Writer openOutput(String outFile) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile));
+        if (outFile.endsWith(GZIP_SUFFIX)) {
+            out = new GZIPOutputStream(out);
+        }
+        return new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    }
 }
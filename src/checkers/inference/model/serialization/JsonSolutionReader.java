@@ -0,0 +1,185 @@
+package checkers.inference.model.serialization;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import static checkers.inference.model.serialization.JsonSerializer.*;
+
+/**
+ * Reads the solution of a solved json constraint file, and the potential variables of the
+ * original constraint file, into tables indexed by variable id.
+ *
+ * Both files are read with a {@link JsonReader} in a single pass, without building a document,
+ * and the solution is kept as primitive ints rather than strings.  This is what
+ * {@link checkers.inference.SolutionJaifUpdater} needs of the files that {@link JsonDeserializer}
+ * would otherwise fully parse.
+ */
+public class JsonSolutionReader {
+
+    /** Type value of each solved variable, valid where {@link #solved} is set. */
+    private int[] values = new int[1024];
+
+    private final BitSet solved = new BitSet();
+
+    /** Variables listed in the enabled_vars of the solution. */
+    private final BitSet enabled = new BitSet();
+
+    /** Potential variables of the existential constraints of the original file. */
+    private final BitSet potential = new BitSet();
+
+    /**
+     * Read the variables and enabled_vars of a solved json constraint file.  A variable is either
+     * {@code "var:<id>": "type:<value>"}, or an object with the value under type_value.
+     */
+    public void readSolution(Reader json) throws IOException {
+        try (JsonReader reader = new JsonReader(json)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (VARIABLES_KEY.equals(name)) {
+                    readVariables(reader);
+                } else if (EXISTENTIAL_VARIABLES_KEY.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        enabled.set(parseId(reader.nextString()));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    /**
+     * Read the ids of the potential variables of the existential constraints, including nested
+     * ones, in the constraints of an original json constraint file.
+     */
+    public void readPotentialVariables(Reader json) throws IOException {
+        try (JsonReader reader = new JsonReader(json)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (CONSTRAINTS_KEY.equals(reader.nextName())) {
+                    readPotentialVariables(reader, potential);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+    }
+
+    public boolean hasValue(int id) {
+        return solved.get(id);
+    }
+
+    /**
+     * @return the solved type value of the variable, only meaningful if {@link #hasValue(int)}
+     */
+    public int getValue(int id) {
+        return values[id];
+    }
+
+    public boolean isEnabled(int id) {
+        return enabled.get(id);
+    }
+
+    public boolean isPotential(int id) {
+        return potential.get(id);
+    }
+
+    private void readVariables(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int id = parseId(reader.nextName());
+            String typeValue = null;
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (VARIABLES_VALUE_KEY.equals(reader.nextName())) {
+                        typeValue = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                typeValue = reader.nextString();
+            }
+            if (typeValue == null) {
+                throw new IllegalArgumentException("Parse error: no " + VARIABLES_VALUE_KEY + " for variable " + id);
+            }
+            setValue(id, parseId(typeValue));
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read an array of constraints, adding the potential variable of each existential constraint
+     * and of the existential constraints nested in it to {@code potentialIds}.
+     */
+    private static void readPotentialVariables(JsonReader reader, BitSet potentialIds) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            // The members of a constraint may come in any order, so collect the potential
+            // variables of its branches until it is known to be an existential constraint.
+            String constraintType = null;
+            String potentialId = null;
+            BitSet nested = new BitSet();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (CONSTRAINT_KEY.equals(name)) {
+                    constraintType = reader.nextString();
+                } else if (EXISTENTIAL_ID.equals(name) && reader.peek() == JsonToken.STRING) {
+                    potentialId = reader.nextString();
+                } else if ((EXISTENTIAL_THEN.equals(name) || EXISTENTIAL_ELSE.equals(name))
+                        && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    readPotentialVariables(reader, nested);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (EXISTENTIAL_CONSTRAINT_KEY.equals(constraintType)) {
+                if (potentialId == null || !potentialId.startsWith(VAR_PREFIX)) {
+                    throw new IllegalArgumentException("Parse error: potential variable is not a variable: " + potentialId);
+                }
+                potentialIds.set(parseId(potentialId));
+                potentialIds.or(nested);
+            }
+        }
+        reader.endArray();
+    }
+
+    private void setValue(int id, int value) {
+        if (id >= values.length) {
+            values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+        }
+        values[id] = value;
+        solved.set(id);
+    }
+
+    /**
+     * @return the integer after the ':' of a serialized slot or value, e.g. 12 for "var:12"
+     */
+    private static int parseId(String serialized) {
+        try {
+            return Integer.parseInt(serialized.substring(serialized.indexOf(':') + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parse error: expected <prefix>:<int> but found " + serialized, e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package checkers.inference.model.serialization;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import checkers.inference.model.ArithmeticConstraint.ArithmeticOperationKind;
+import checkers.inference.model.serialization.BinaryConstraintFormat.ConstraintKind;
+
+import static checkers.inference.model.serialization.JsonSerializer.*;
+
+/**
+ * Converts a json constraint file, as written by {@link JsonSerializerSolver}, into the binary
+ * format of {@link BinaryConstraintFormat}.
+ *
+ * The conversion works on the serialized slots alone, so it runs outside of inference and never
+ * holds more than one constraint in memory. Slots prefixed with {@code var:} become variable slots,
+ * and any other slot is kept as the serialized value of a constant slot.
+ *
+ * Usage: {@code JsonToBinaryConverter <json constraint file> <binary constraint file>}
+ */
+public class JsonToBinaryConverter {
+
+    private static final String SUBTYPE_STR = "<=";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: JsonToBinaryConverter <json constraint file> <binary constraint file>");
+            System.exit(1);
+        }
+        convert(args[0], args[1]);
+    }
+
+    public static void convert(String jsonFile, String binaryFile) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(jsonFile), StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(in);
+             BinaryConstraintWriter writer = new BinaryConstraintWriter(Paths.get(binaryFile), null)) {
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!CONSTRAINTS_KEY.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    convertConstraint(reader, writer);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+    }
+
+    private static void convertConstraint(JsonReader reader, BinaryConstraintWriter writer) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            String constraintStr = reader.nextString();
+            String[] parts = constraintStr.trim().split(" ");
+            if (parts.length != 3 || !SUBTYPE_STR.equals(parts[1])) {
+                throw new IllegalArgumentException("Parse error: could not parse constraint: " + constraintStr);
+            }
+            writer.writeConstraint(ConstraintKind.SUBTYPE, slot(writer, parts[0]), slot(writer, parts[2]));
+            return;
+        }
+
+        // Members of a constraint object may come in any order, so collect them before writing.
+        Map<String, String> members = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                members.put(name, reader.nextString());
+            } else {
+                // Nested constraints, e.g. of existential or implication constraints.
+                reader.skipValue();
+                members.put(name, null);
+            }
+        }
+        reader.endObject();
+
+        String constraintType = members.get(CONSTRAINT_KEY);
+        if (SUBTYPE_CONSTRAINT_KEY.equals(constraintType)) {
+            writer.writeConstraint(ConstraintKind.SUBTYPE,
+                    slot(writer, members.get(SUBTYPE_SUB_KEY)), slot(writer, members.get(SUBTYPE_SUPER_KEY)));
+        } else if (EQUALITY_CONSTRAINT_KEY.equals(constraintType)) {
+            writer.writeConstraint(ConstraintKind.EQUALITY,
+                    slot(writer, members.get(EQUALITY_LHS)), slot(writer, members.get(EQUALITY_RHS)));
+        } else if (INEQUALITY_CONSTRAINT_KEY.equals(constraintType)) {
+            writer.writeConstraint(ConstraintKind.INEQUALITY,
+                    slot(writer, members.get(INEQUALITY_LHS)), slot(writer, members.get(INEQUALITY_RHS)));
+        } else if (COMP_CONSTRAINT_KEY.equals(constraintType)) {
+            writer.writeConstraint(ConstraintKind.COMPARABLE,
+                    slot(writer, members.get(COMP_LHS)), slot(writer, members.get(COMP_RHS)));
+        } else if (COMB_CONSTRAINT_KEY.equals(constraintType)) {
+            writer.writeConstraint(ConstraintKind.COMBINE, slot(writer, members.get(COMB_TARGET)),
+                    slot(writer, members.get(COMB_DECL)), slot(writer, members.get(COMB_RESULT)));
+        } else if (PREFERENCE_CONSTRAINT_KEY.equals(constraintType)) {
+            writer.writePreference(slot(writer, members.get(PREFERENCE_VARIABLE)),
+                    slot(writer, members.get(PREFERENCE_GOAL)), Integer.parseInt(members.get(PREFERENCE_WEIGHT)));
+        } else if (EXISTENTIAL_CONSTRAINT_KEY.equals(constraintType) || IMPLICATION_CONSTRAINT_KEY.equals(constraintType)
+                || isArithmeticConstraintKey(constraintType)) {
+            // Binary constraint files cannot hold these, count them in the header instead.
+            writer.addSkippedConstraints(1);
+        } else {
+            throw new IllegalArgumentException("Parse error: constraint type not supported by binary constraint files: "
+                    + constraintType);
+        }
+    }
+
+    /**
+     * @return true if the given constraint key is the key of an arithmetic constraint, which
+     * {@link JsonSerializer} writes as the lower case name of its {@link ArithmeticOperationKind}
+     */
+    private static boolean isArithmeticConstraintKey(String constraintType) {
+        for (ArithmeticOperationKind operation : ArithmeticOperationKind.values()) {
+            if (operation.name().toLowerCase().equals(constraintType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int slot(BinaryConstraintWriter writer, String slot) {
+        if (slot == null) {
+            throw new IllegalArgumentException("Parse error: missing slot in constraint");
+        }
+        if (slot.startsWith(VAR_PREFIX)) {
+            return writer.variableSlot(Integer.parseInt(slot.substring(VAR_PREFIX.length())));
+        }
+        return writer.constantSlot(-1, slot);
+    }
+}
@@ -64,6 +64,15 @@ import checkers.inference.solver.frontend.Lattice;
  * {@link checkers.inference.solver.backend.z3.Z3BitVectorFormatTranslator#initSolver(com.microsoft.z3.Optimize)}.
  * The general guideline is that {@link #finishInitializingEncoders() finishInitializingEncoders()} call
  * should always precede actual solving process.
+ * <p>
+ * Thread safety: once encoders are initialized, a solver may encode its constraints concurrently
+ * through {@link checkers.inference.solver.util.ParallelEncoder}, which calls the
+ * {@code serialize} methods of one translator from several threads. Subclasses that support this
+ * must only read their own state while serializing, as
+ * {@link checkers.inference.solver.backend.maxsat.MaxSatFormatTranslator} does with its unmodifiable
+ * {@code typeToInt} map. Subclasses that cache serialized slots or build expressions in a shared
+ * context, like {@link checkers.inference.solver.backend.z3.Z3BitVectorFormatTranslator}, are not
+ * thread safe and must be used from a single thread.
  *
  * @see ConstraintEncoderFactory
  * @see #finishInitializingEncoders()
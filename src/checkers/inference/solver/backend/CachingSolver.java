@@ -0,0 +1,81 @@
+package checkers.inference.solver.backend;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.solver.cache.CanonicalComponent;
+import checkers.inference.solver.cache.SolutionCache;
+
+/**
+ * CachingSolver looks up the solution of the constraints of another solver in a
+ * {@link SolutionCache} before solving them, and stores the solutions that solver finds.
+ *
+ * The key of a component is derived from its {@link CanonicalComponent canonical form}, the
+ * class of the underlying solver and the qualifiers of the lattice. Components with constraint
+ * kinds that cannot be canonicalized, and unsatisfiable components, are always solved.
+ *
+ * @param <T> type of FormatTranslator of the underlying solver
+ */
+public class CachingSolver<T extends FormatTranslator<?, ?, ?>> extends Solver<T> {
+
+    private final Solver<T> underlyingSolver;
+
+    private final SolutionCache cache;
+
+    public CachingSolver(Solver<T> underlyingSolver, SolutionCache cache) {
+        super(underlyingSolver.solverEnvironment, underlyingSolver.slots, underlyingSolver.constraints,
+                underlyingSolver.formatTranslator, underlyingSolver.lattice);
+        this.underlyingSolver = underlyingSolver;
+        this.cache = cache;
+    }
+
+    /**
+     * Wrap the given solver in a CachingSolver.
+     */
+    public static <T extends FormatTranslator<?, ?, ?>> CachingSolver<T> wrap(Solver<T> solver, SolutionCache cache) {
+        return new CachingSolver<>(solver, cache);
+    }
+
+    @Override
+    public Map<Integer, AnnotationMirror> solve() {
+        CanonicalComponent component = CanonicalComponent.canonicalize(constraints, context());
+        if (component == null) {
+            return underlyingSolver.solve();
+        }
+
+        Map<Integer, AnnotationMirror> solution = cache.get(component, lattice);
+        if (solution != null) {
+            return solution;
+        }
+
+        solution = underlyingSolver.solve();
+        if (solution != null) {
+            cache.put(component, solution);
+        }
+        return solution;
+    }
+
+    private String context() {
+        List<String> types = new ArrayList<>();
+        for (AnnotationMirror type : lattice.allTypes) {
+            types.add(type.toString());
+        }
+        types.sort(null);
+        return underlyingSolver.getClass().getName() + " " + types;
+    }
+
+    @Override
+    public Collection<Constraint> explainUnsatisfiable() {
+        return underlyingSolver.explainUnsatisfiable();
+    }
+
+    @Override
+    protected void encodeAllConstraints() {
+        underlyingSolver.encodeAllConstraints();
+    }
+}
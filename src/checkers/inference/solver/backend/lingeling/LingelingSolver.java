@@ -1,6 +1,7 @@
 package checkers.inference.solver.backend.lingeling;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -13,6 +14,7 @@ import java.nio.file.Paths;
 
 import javax.lang.model.element.AnnotationMirror;
 
+import org.checkerframework.javacutil.BugInCF;
 import org.sat4j.core.VecInt;
 
 import checkers.inference.model.Constraint;
@@ -28,6 +30,10 @@ import checkers.inference.solver.util.Statistics;
  * LingelingSolver is also a MaxSatSolver but it calls Lingeling SAT solver to solve the clauses. It
  * doesn't support soft constraint.
  *
+ * Each solve runs its own Lingeling process and streams the clauses to it through a pipe, and all
+ * per-solve state lives in the solver instance, so solvers of different components can solve
+ * concurrently.
+ *
  * @author jianchu
  *
  */
@@ -63,14 +69,16 @@ public class LingelingSolver extends MaxSatSolver {
         encodeWellFormednessRestriction();
         this.serializationEnd = System.currentTimeMillis();
 
-        buildCNFInput();
         collectVals();
         recordData();
-        int localNth = nth.incrementAndGet();
-        writeCNFInput("cnfdata" + localNth + ".txt");
+        if (shouldOutputCNF()) {
+            // The CNF file is only a record for debugging, Lingeling reads the clauses from stdIn.
+            buildCNFInput();
+            writeCNFInput("cnfdata" + nth.incrementAndGet() + ".txt");
+        }
 
         this.solvingStart = System.currentTimeMillis();
-        int[] resultArray = getSolverOutput(localNth);
+        int[] resultArray = getSolverOutput();
         // TODO What's the value of resultArray if there is no solution? Need to adapt this to
         // changes in the PR: https://github.com/opprop/checker-framework-inference/pull/128
         // , i.e. set solutions to null if there is no solution
@@ -87,23 +95,31 @@ public class LingelingSolver extends MaxSatSolver {
     }
 
     /**
-     * Create Lingeling process, and read output and error.
+     * Create Lingeling process, stream the CNF clauses to its input, and read output and error.
      *
-     * @param localNth
      * @return and int array, which stores truth assignment for CNF predicate.
      */
-    private int[] getSolverOutput(int localNth) {
-        String[] command = { lingeling,
-                CNFData.getAbsolutePath() + "/cnfdata" + localNth + ".txt" };
+    private int[] getSolverOutput() {
+        // Without a file argument Lingeling reads the DIMACS input from stdIn.
+        String[] command = { lingeling };
 
         final List<Integer> resultList = new ArrayList<Integer>();
-        ExternalSolverUtils.runExternalSolver(command, stdOut -> parseStdOut(stdOut, resultList),
+        ExternalSolverUtils.runExternalSolver(command, this::writeStdIn,
+                stdOut -> parseStdOut(stdOut, resultList),
                 stdErr -> ExternalSolverUtils.printStdStream(System.err, stdErr));
 
         // Java 8 style of List<Integer> to int[] conversion
         return resultList.stream().mapToInt(Integer::intValue).toArray();
     }
 
+    private void writeStdIn(BufferedWriter stdIn) {
+        try {
+            writeCNF(stdIn);
+        } catch (IOException e) {
+            throw new BugInCF("Could not write CNF clauses to Lingeling.", e);
+        }
+    }
+
     private void parseStdOut(BufferedReader stdOut, List<Integer> resultList) {
         String line;
 
@@ -140,13 +156,6 @@ public class LingelingSolver extends MaxSatSolver {
         }
     }
 
-    @Override
-    protected boolean shouldOutputCNF() {
-        // We need the CNF output to pass to Lingeling
-        // and so we unconditionally signal we want CNF output.
-        return true;
-    }
-
     private void recordData() {
         int totalClauses = hardClauses.size() + softClauses.size();
         int totalVariable = variableSet.size();
@@ -0,0 +1,69 @@
+package checkers.inference.solver.backend.logiql;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.solver.backend.logiql.datalog.DatalogEngine;
+import checkers.inference.solver.backend.logiql.datalog.LogiQLParser;
+import checkers.inference.solver.backend.logiql.datalog.Relation;
+import checkers.inference.solver.backend.logiql.datalog.SymbolTable;
+import checkers.inference.solver.backend.logiql.datalog.Tuple;
+
+/**
+ * DatalogRunner evaluates the LogiQL predicates generated by LogiQLPredicateGenerator and the
+ * LogiQL data generated by LogiQLFormatTranslator in process, as an alternative to running them
+ * through LogicBlox with {@link LogicBloxRunner}.
+ *
+ * @see DatalogEngine
+ */
+public class DatalogRunner {
+
+    /**
+     * Relation of (variable name, annotation name) pairs read back after evaluation, playing the
+     * role of orderedAnnotationOf printed by LogicBlox.
+     */
+    private static final String RESULT_PREDICATE = "solverAnnotationOf";
+
+    private static final String RESULT_RULE = RESULT_PREDICATE
+            + "(i, a) <- variable(v), hasvariableName(v:i), AnnotationOf[v] = a.\n";
+
+    private final DatalogEngine engine = new DatalogEngine();
+
+    /**
+     * @param predicates the LogiQL predicates of the type system
+     * @param data the LogiQL data of the constraints, variables and constants
+     */
+    public DatalogRunner(CharSequence predicates, CharSequence data) {
+        LogiQLParser parser = new LogiQLParser(engine);
+        parser.parse(predicates);
+        parser.parse(RESULT_RULE);
+        parser.parse(data);
+    }
+
+    /**
+     * Evaluate the LogiQL program.
+     *
+     * @return the simple name of the annotation inferred for each variable name, or null if the
+     *         constraints are contradictory
+     */
+    public Map<Integer, String> runDatalog() {
+        engine.evaluate();
+
+        String conflict = engine.findFunctionalConflict();
+        if (conflict != null) {
+            InferenceMain.getInstance().logger.warning("LogiQL constraints are contradictory: " + conflict);
+            return null;
+        }
+
+        Map<Integer, String> annotations = new HashMap<>();
+        Relation result = engine.getRelation(RESULT_PREDICATE);
+        if (result != null) {
+            SymbolTable symbols = engine.getSymbols();
+            for (Tuple tuple : result.tuples()) {
+                annotations.put(Integer.parseInt(symbols.symbol(tuple.get(0))), symbols.symbol(tuple.get(1)));
+            }
+        }
+        return annotations;
+    }
+}
@@ -48,6 +48,20 @@ public class DecodingTool {
         return result;
     }
 
+    /**
+     * Decode the annotations computed in process by DatalogRunner.
+     *
+     * @param annotations the simple name of the annotation inferred for each variable name
+     */
+    public Map<Integer, AnnotationMirror> decodeResult(Map<Integer, String> annotations) {
+        setDefault();
+        Map<String, AnnotationMirror> nameMap = mapStringToAnnoMirror();
+        for (Map.Entry<Integer, String> entry : annotations.entrySet()) {
+            result.put(entry.getKey(), nameMap.get(entry.getValue()));
+        }
+        return result;
+    }
+
     /**
      * DecodeLogicBloxOutput decodes the LogicBloxOutput, and put it in HashMap
      * result.
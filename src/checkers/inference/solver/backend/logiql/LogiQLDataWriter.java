@@ -0,0 +1,56 @@
+package checkers.inference.solver.backend.logiql;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * LogiQLDataWriter streams LogiQL data to an Appendable in a single pass: first the constants
+ * and variables, then the constraints. The number of lines is counted as they are written, so
+ * the data never has to be rescanned.
+ */
+public class LogiQLDataWriter implements Closeable {
+
+    private final Appendable out;
+
+    private int lineCount = 0;
+
+    public LogiQLDataWriter(Appendable out) {
+        this.out = out;
+    }
+
+    public void writeConstant(String constantName) throws IOException {
+        out.append("+constant(c), +hasconstantName[c] = \"").append(constantName).append("\".\n");
+        lineCount++;
+    }
+
+    public void writeVariable(int variableId) throws IOException {
+        out.append("+variable(v), +hasvariableName[v] = ").append(Integer.toString(variableId)).append(".\n");
+        lineCount++;
+    }
+
+    /**
+     * Write the encoding of a constraint, as produced by LogiQLFormatTranslator.
+     */
+    public void writeConstraint(String serializedConstraint) throws IOException {
+        out.append(serializedConstraint);
+        for (int i = 0; i < serializedConstraint.length(); i++) {
+            if (serializedConstraint.charAt(i) == '\n') {
+                lineCount++;
+            }
+        }
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out instanceof Closeable) {
+            ((Closeable) out).close();
+        } else if (out instanceof Flushable) {
+            ((Flushable) out).flush();
+        }
+    }
+}
@@ -32,16 +32,24 @@ public class LogiQLPredicateGenerator {
     }
 
     public void GenerateLogiqlEncoding() {
-        allEncodings.append(getBasicEncoding());
-        allEncodings.append(getEqualityConstraintEncoding());
-        allEncodings.append(getInequalityConstraintEncoding());
-        allEncodings.append(getSubTypeConstraintEncoding());
-        allEncodings.append(getComparableConstraintEncoding());
-
         // System.out.println(allEncodings.toString());
 
-        writeFile(allEncodings.toString());
+        writeFile(getLogiqlEncoding());
+
+    }
 
+    /**
+     * Return the logiql encoding of the type system, without writing it to a file.
+     */
+    public String getLogiqlEncoding() {
+        if (allEncodings.length() == 0) {
+            allEncodings.append(getBasicEncoding());
+            allEncodings.append(getEqualityConstraintEncoding());
+            allEncodings.append(getInequalityConstraintEncoding());
+            allEncodings.append(getSubTypeConstraintEncoding());
+            allEncodings.append(getComparableConstraintEncoding());
+        }
+        return allEncodings.toString();
     }
 
 
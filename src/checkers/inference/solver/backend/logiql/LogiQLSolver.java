@@ -1,27 +1,33 @@
 package checkers.inference.solver.backend.logiql;
 
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.lang.model.element.AnnotationMirror;
 
+import org.checkerframework.javacutil.BugInCF;
+
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
 import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.frontend.Lattice;
 import checkers.inference.solver.util.NameUtils;
+import checkers.inference.solver.util.SolverArg;
 import checkers.inference.solver.util.SolverEnvironment;
 import checkers.inference.solver.util.Statistics;
 
 /**
  * LogiQLSolver first creates LogiQL predicates text, then calls format translator
  * converts constraint into LogiQL data. With both predicate and data created,
- * it calls LogicBloxRunner that runs logicblox to solve the LogiQL, and reads
+ * it evaluates the LogiQL in process with DatalogRunner, or, if useLogicBlox is set,
+ * calls LogicBloxRunner that runs logicblox to solve the LogiQL, and reads
  * the output. Finally the output will be sent to DecodingTool and get decoded.
  *
  * @author jianchu
@@ -29,7 +35,14 @@ import checkers.inference.solver.util.Statistics;
  */
 public class LogiQLSolver extends Solver<LogiQLFormatTranslator> {
 
-    private final StringBuilder logiQLText = new StringBuilder();
+    protected enum LogiQLSolverArg implements SolverArg {
+        /**
+         * Whether to solve through an external LogicBlox installation instead of
+         * the in-process Datalog evaluator.
+         */
+        useLogicBlox;
+    }
+
     private final File logiqldata = new File(new File("").getAbsolutePath() + "/logiqldata");
     private static AtomicInteger nth = new AtomicInteger(0);
     private long serializationStart;
@@ -40,14 +53,16 @@ public class LogiQLSolver extends Solver<LogiQLFormatTranslator> {
             Collection<Constraint> constraints, LogiQLFormatTranslator formatTranslator, Lattice lattice) {
         super(solverEnvironment, slots, constraints, formatTranslator,
                 lattice);
-        logiqldata.mkdir();
+        if (useLogicBlox()) {
+            logiqldata.mkdir();
+        }
     }
 
     @Override
     public Map<Integer, AnnotationMirror> solve() {
         int localNth = nth.incrementAndGet();
         String logiqldataPath = logiqldata.getAbsolutePath();
-        Map<Integer, AnnotationMirror> result = new HashMap<>();
+        Map<Integer, AnnotationMirror> result;
         /**
          * creating a instance of LogiqlConstraintGenerator and running
          * GenerateLogiqlEncoding method, in order to generate the logiql fixed
@@ -55,15 +70,29 @@ public class LogiQLSolver extends Solver<LogiQLFormatTranslator> {
          */
         LogiQLPredicateGenerator constraintGenerator = new LogiQLPredicateGenerator(logiqldataPath,
                 lattice, localNth);
+        if (!useLogicBlox()) {
+            StringBuilder logiQLText = new StringBuilder();
+            writeLogiQLData(new LogiQLDataWriter(logiQLText));
+
+            this.solvingStart = System.currentTimeMillis();
+            DatalogRunner datalogRunner = new DatalogRunner(constraintGenerator.getLogiqlEncoding(), logiQLText);
+            Map<Integer, String> annotations = datalogRunner.runDatalog();
+            this.solvingEnd = System.currentTimeMillis();
+
+            Statistics.addOrIncrementEntry("logiql_solving_time(ms)", (solvingEnd - solvingStart));
+            if (annotations == null) {
+                return null;
+            }
+            return new DecodingTool(varSlotIds, logiqldataPath, lattice, localNth).decodeResult(annotations);
+        }
+
         constraintGenerator.GenerateLogiqlEncoding();
-        this.serializationStart = System.currentTimeMillis();
-        this.encodeAllConstraints();
-        this.serializationEnd = System.currentTimeMillis();
-        Statistics.addOrIncrementEntry("logiql_serialization_time(ms)",
-                (serializationEnd - serializationStart));
-        addVariables();
-        addConstants();
-        writeLogiQLData(logiqldataPath, localNth);
+        String writePath = logiqldataPath + "/data" + localNth + ".logic";
+        try {
+            writeLogiQLData(new LogiQLDataWriter(Files.newBufferedWriter(Paths.get(writePath), StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new BugInCF("Could not write LogiQL data to " + writePath, e);
+        }
 
         this.solvingStart = System.currentTimeMillis();
         LogicBloxRunner runLogicBlox = new LogicBloxRunner(logiqldataPath, localNth);
@@ -78,46 +107,65 @@ public class LogiQLSolver extends Solver<LogiQLFormatTranslator> {
         return result;
     }
 
+    protected boolean useLogicBlox() {
+        return solverEnvironment.getBoolArg(LogiQLSolverArg.useLogicBlox);
+    }
+
     @Override
     public Collection<Constraint> explainUnsatisfiable() {
         return new HashSet<>();// Doesn't support right now
     }
 
+    /**
+     * Encode the constants, variables and constraints to {@code writer}, and close it. Variables
+     * are collected by {@link #encodeAllConstraints()} first, so the data is written front to back
+     * in one go.
+     */
+    private void writeLogiQLData(LogiQLDataWriter writer) {
+        try (LogiQLDataWriter writerToClose = writer) {
+            this.serializationStart = System.currentTimeMillis();
+            this.encodeAllConstraints();
+            addConstants(writer);
+            addVariables(writer);
+            addConstraints(writer);
+            this.serializationEnd = System.currentTimeMillis();
+        } catch (IOException e) {
+            throw new BugInCF("Could not write LogiQL data", e);
+        }
+        Statistics.addOrIncrementEntry("logiql_serialization_time(ms)",
+                (serializationEnd - serializationStart));
+        Statistics.addOrIncrementEntry("logiql_data_size", writer.getLineCount());
+    }
+
+    /**
+     * Collect the variable slots of the constraints. The constraints themselves are encoded while
+     * {@link #writeLogiQLData(LogiQLDataWriter)} writes them, as they are only needed there.
+     */
     @Override
     public void encodeAllConstraints() {
         for (Constraint constraint : constraints) {
             collectVarSlots(constraint);
-            String serializedConstrant = constraint.serialize(formatTranslator);
-            if (serializedConstrant != null) {
-                logiQLText.append(serializedConstrant);
-            }
         }
     }
 
-    private void addConstants() {
+    private void addConstants(LogiQLDataWriter writer) throws IOException {
         for (AnnotationMirror annoMirror : lattice.allTypes) {
-            String constant = NameUtils.getSimpleName(annoMirror);
-            logiQLText.insert(0, "+constant(c), +hasconstantName[c] = \"" + constant + "\".\n");
+            writer.writeConstant(NameUtils.getSimpleName(annoMirror));
         }
     }
 
-    private void addVariables() {
+    private void addVariables(LogiQLDataWriter writer) throws IOException {
         for (Integer variable : varSlotIds) {
-            logiQLText.insert(0, "+variable(v), +hasvariableName[v] = " + variable + ".\n");
+            writer.writeVariable(variable);
         }
     }
 
-    private void writeLogiQLData(String path, int nth) {
-        String[] lines = logiQLText.toString().split("\r\n|\r|\n");
-        Statistics.addOrIncrementEntry("logiql_data_size", lines.length);
-        try {
-            String writePath = path + "/data" + nth + ".logic";
-            File f = new File(writePath);
-            PrintWriter pw = new PrintWriter(f);
-            pw.write(logiQLText.toString());
-            pw.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+    private void addConstraints(LogiQLDataWriter writer) throws IOException {
+        for (Constraint constraint : constraints) {
+            String serializedConstrant = constraint.serialize(formatTranslator);
+            if (serializedConstrant != null) {
+                writer.writeConstraint(serializedConstrant);
+            }
         }
     }
 }
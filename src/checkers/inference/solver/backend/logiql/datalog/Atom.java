@@ -0,0 +1,38 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import java.util.Arrays;
+
+/**
+ * An atom {@code predicate(t1, ..., tn)} of a Datalog rule.
+ *
+ * Each term is either a constant, stored as its non-negative symbol id, or a variable of the
+ * enclosing rule, stored as {@code -(index + 1)}.
+ */
+public class Atom {
+
+    public final String predicate;
+
+    public final int[] terms;
+
+    public Atom(String predicate, int[] terms) {
+        this.predicate = predicate;
+        this.terms = terms;
+    }
+
+    public static boolean isVariable(int term) {
+        return term < 0;
+    }
+
+    public static int variableIndex(int term) {
+        return -term - 1;
+    }
+
+    public static int variableTerm(int index) {
+        return -(index + 1);
+    }
+
+    @Override
+    public String toString() {
+        return predicate + Arrays.toString(terms);
+    }
+}
@@ -0,0 +1,243 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DatalogEngine computes the least model of a set of facts and positive Datalog rules by
+ * semi-naive evaluation.
+ *
+ * The first round applies every rule to all facts. Each later round only considers derivations
+ * that use at least one tuple derived in the previous round, by joining one body atom with the
+ * previous round's delta and the others with the full relations, until no new tuple is derived.
+ * The delta atom is joined first, so a round only touches what the previous round derived, and
+ * the remaining body atoms are joined in order, each through a hash index of its first bound
+ * column.
+ *
+ * Predicates marked as functional, i.e. whose last column is a function of the others like the
+ * {@code p[k] = v} predicates of LogiQL, are checked after evaluation by
+ * {@link #findFunctionalConflict()}.
+ */
+public class DatalogEngine {
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    private final Map<String, Relation> relations = new HashMap<>();
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    private final Set<String> functionalPredicates = new HashSet<>();
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public void addRule(Rule rule) {
+        rules.add(rule);
+    }
+
+    public void markFunctional(String predicate) {
+        functionalPredicates.add(predicate);
+    }
+
+    /**
+     * Add the fact {@code predicate(values)}.
+     */
+    public void addFact(String predicate, String... values) {
+        int[] ids = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ids[i] = symbols.intern(values[i]);
+        }
+        addFact(predicate, new Tuple(ids));
+    }
+
+    public void addFact(String predicate, Tuple tuple) {
+        relation(predicate, tuple.arity()).add(tuple);
+    }
+
+    /**
+     * Return the relation of the given predicate, or null if it has no tuples.
+     */
+    public Relation getRelation(String predicate) {
+        return relations.get(predicate);
+    }
+
+    private Relation relation(String predicate, int arity) {
+        Relation relation = relations.get(predicate);
+        if (relation == null) {
+            relation = new Relation(predicate, arity);
+            relations.put(predicate, relation);
+        }
+        return relation;
+    }
+
+    /**
+     * Derive all facts that follow from the facts and rules added so far.
+     */
+    public void evaluate() {
+        Map<String, Relation> derived = new LinkedHashMap<>();
+        for (Rule rule : rules) {
+            evaluateRule(rule, -1, null, derived);
+        }
+        Map<String, Relation> delta = commit(derived);
+
+        while (!delta.isEmpty()) {
+            derived = new LinkedHashMap<>();
+            for (Rule rule : rules) {
+                for (int i = 0; i < rule.body.size(); i++) {
+                    Relation deltaRelation = delta.get(rule.body.get(i).predicate);
+                    if (deltaRelation != null) {
+                        evaluateRule(rule, i, deltaRelation, derived);
+                    }
+                }
+            }
+            delta = commit(derived);
+        }
+    }
+
+    /**
+     * Add the derived tuples to the full relations.
+     *
+     * @return the derived tuples that were new
+     */
+    private Map<String, Relation> commit(Map<String, Relation> derived) {
+        Map<String, Relation> delta = new LinkedHashMap<>();
+        for (Relation derivedRelation : derived.values()) {
+            Relation full = relation(derivedRelation.getName(), derivedRelation.getArity());
+            for (Tuple tuple : derivedRelation.tuples()) {
+                if (full.add(tuple)) {
+                    delta.computeIfAbsent(full.getName(), name -> new Relation(name, full.getArity())).add(tuple);
+                }
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Apply the rule, joining body atom {@code deltaPosition} with {@code deltaRelation}
+     * instead of its full relation, and add the head tuples to {@code out}.
+     */
+    private void evaluateRule(Rule rule, int deltaPosition, Relation deltaRelation, Map<String, Relation> out) {
+        int[] binding = new int[rule.numOfVariables];
+        Arrays.fill(binding, -1);
+
+        int[] joinOrder = new int[rule.body.size()];
+        int next = 0;
+        if (deltaPosition >= 0) {
+            joinOrder[next++] = deltaPosition;
+        }
+        for (int i = 0; i < joinOrder.length; i++) {
+            if (i != deltaPosition) {
+                joinOrder[next++] = i;
+            }
+        }
+        join(rule, joinOrder, 0, deltaPosition, deltaRelation, binding, out);
+    }
+
+    private void join(Rule rule, int[] joinOrder, int step, int deltaPosition, Relation deltaRelation,
+            int[] binding, Map<String, Relation> out) {
+        if (step == joinOrder.length) {
+            Atom head = rule.head;
+            int[] values = new int[head.terms.length];
+            for (int i = 0; i < values.length; i++) {
+                int term = head.terms[i];
+                values[i] = Atom.isVariable(term) ? binding[Atom.variableIndex(term)] : term;
+            }
+            Tuple tuple = new Tuple(values);
+            Relation full = relations.get(head.predicate);
+            if (full == null || !full.contains(tuple)) {
+                out.computeIfAbsent(head.predicate, name -> new Relation(name, values.length)).add(tuple);
+            }
+            return;
+        }
+
+        int position = joinOrder[step];
+        Atom atom = rule.body.get(position);
+        Relation relation = position == deltaPosition ? deltaRelation : relations.get(atom.predicate);
+        if (relation == null || relation.getArity() != atom.terms.length) {
+            return;
+        }
+
+        List<Tuple> candidates = relation.tuples();
+        for (int column = 0; column < atom.terms.length; column++) {
+            int value = boundValue(atom.terms[column], binding);
+            if (value >= 0) {
+                candidates = relation.lookup(column, value);
+                break;
+            }
+        }
+
+        int[] newlyBound = new int[atom.terms.length];
+        for (Tuple tuple : candidates) {
+            int numOfNewlyBound = 0;
+            boolean matches = true;
+            for (int column = 0; column < atom.terms.length && matches; column++) {
+                int term = atom.terms[column];
+                int value = tuple.get(column);
+                if (!Atom.isVariable(term)) {
+                    matches = term == value;
+                } else if (binding[Atom.variableIndex(term)] >= 0) {
+                    matches = binding[Atom.variableIndex(term)] == value;
+                } else {
+                    binding[Atom.variableIndex(term)] = value;
+                    newlyBound[numOfNewlyBound++] = Atom.variableIndex(term);
+                }
+            }
+            if (matches) {
+                join(rule, joinOrder, step + 1, deltaPosition, deltaRelation, binding, out);
+            }
+            for (int i = 0; i < numOfNewlyBound; i++) {
+                binding[newlyBound[i]] = -1;
+            }
+        }
+    }
+
+    private static int boundValue(int term, int[] binding) {
+        return Atom.isVariable(term) ? binding[Atom.variableIndex(term)] : term;
+    }
+
+    /**
+     * Check that every functional predicate maps each key to at most one value.
+     *
+     * @return a description of the first conflict found, or null if there is none
+     */
+    public String findFunctionalConflict() {
+        for (String predicate : functionalPredicates) {
+            Relation relation = relations.get(predicate);
+            if (relation == null || relation.getArity() == 0) {
+                continue;
+            }
+            int keyLength = relation.getArity() - 1;
+            Map<Tuple, Integer> values = new HashMap<>();
+            for (Tuple tuple : relation.tuples()) {
+                int[] key = new int[keyLength];
+                for (int i = 0; i < keyLength; i++) {
+                    key[i] = tuple.get(i);
+                }
+                Integer previous = values.put(new Tuple(key), tuple.get(keyLength));
+                if (previous != null && previous != tuple.get(keyLength)) {
+                    return predicate + "[" + describe(key) + "] is both " + symbols.symbol(previous)
+                            + " and " + symbols.symbol(tuple.get(keyLength));
+                }
+            }
+        }
+        return null;
+    }
+
+    private String describe(int[] key) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(symbols.symbol(key[i]));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,238 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the subset of LogiQL written by
+ * {@link checkers.inference.solver.backend.logiql.LogiQLPredicateGenerator} and the LogiQL
+ * encoders into a {@link DatalogEngine}.
+ *
+ * <ul>
+ * <li>A functional atom {@code p[k1, ..., kn] = v} is the tuple {@code p(k1, ..., kn, v)}, and
+ * {@code p} is marked functional.</li>
+ * <li>A refmode atom {@code p(e:r)} is the tuple {@code p(e, r)}.</li>
+ * <li>Entities are identified by their refmode value. In a delta statement like
+ * {@code +variable(v), +hasvariableName[v] = 3.}, the placeholder {@code v} is replaced by
+ * {@code 3}, and every atom of the statement becomes a fact.</li>
+ * <li>Rules {@code head <- body.} with positive bodies become Datalog rules. Negated atoms
+ * {@code !p(x)} are rejected, since the engine only evaluates positive programs, i.e. a single
+ * stratum.</li>
+ * <li>Declarations {@code ... -> ...} only type predicates, and are skipped, as are {@code seq}
+ * rules, which only order the output of LogicBlox.</li>
+ * </ul>
+ */
+public class LogiQLParser {
+
+    private final DatalogEngine engine;
+
+    private List<String> tokens;
+
+    private int position;
+
+    /** Variables of the statement being parsed, by name. */
+    private Map<String, Integer> variables;
+
+    public LogiQLParser(DatalogEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Parse the given LogiQL text and add its rules and facts to the engine.
+     */
+    public void parse(CharSequence logiQL) {
+        List<String> allTokens = tokenize(logiQL);
+        int start = 0;
+        for (int i = 0; i < allTokens.size(); i++) {
+            if (".".equals(allTokens.get(i))) {
+                parseStatement(allTokens.subList(start, i));
+                start = i + 1;
+            }
+        }
+        if (start != allTokens.size()) {
+            throw new IllegalArgumentException("Parse error: statement is not terminated: "
+                    + String.join(" ", allTokens.subList(start, allTokens.size())));
+        }
+    }
+
+    private void parseStatement(List<String> statement) {
+        if (statement.isEmpty() || statement.contains("->") || statement.contains("<<")) {
+            return;
+        }
+        tokens = statement;
+        position = 0;
+        variables = new HashMap<>();
+
+        int arrow = statement.indexOf("<-");
+        if (arrow >= 0) {
+            Atom head = parseAtom();
+            expect("<-");
+            List<Atom> body = new ArrayList<>();
+            body.add(parseAtom());
+            while (position < tokens.size()) {
+                expect(",");
+                body.add(parseAtom());
+            }
+            engine.addRule(new Rule(head, body, variables.size()));
+        } else {
+            parseFacts();
+        }
+    }
+
+    private void parseFacts() {
+        List<Atom> atoms = new ArrayList<>();
+        atoms.add(parseAtom());
+        while (position < tokens.size()) {
+            expect(",");
+            atoms.add(parseAtom());
+        }
+
+        // Resolve entity placeholders through their refmode, e.g. hasvariableName[v] = 3.
+        int[] entities = new int[variables.size()];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = -1;
+        }
+        for (Atom atom : atoms) {
+            if (atom.terms.length == 2 && Atom.isVariable(atom.terms[0]) && !Atom.isVariable(atom.terms[1])) {
+                entities[Atom.variableIndex(atom.terms[0])] = atom.terms[1];
+            }
+        }
+
+        for (Atom atom : atoms) {
+            int[] values = new int[atom.terms.length];
+            for (int i = 0; i < values.length; i++) {
+                int term = atom.terms[i];
+                values[i] = Atom.isVariable(term) ? entities[Atom.variableIndex(term)] : term;
+                if (values[i] < 0) {
+                    throw new IllegalArgumentException("Parse error: entity without refmode in fact: " + tokens);
+                }
+            }
+            engine.addFact(atom.predicate, new Tuple(values));
+        }
+    }
+
+    private Atom parseAtom() {
+        if ("+".equals(peek())) {
+            position++;
+        } else if ("!".equals(peek())) {
+            throw new IllegalArgumentException("Parse error: negation is not supported: " + tokens);
+        }
+        String predicate = next();
+        List<Integer> terms = new ArrayList<>();
+        if ("[".equals(peek())) {
+            position++;
+            parseArguments(terms, "]");
+            expect("=");
+            terms.add(parseTerm());
+            engine.markFunctional(predicate);
+        } else {
+            expect("(");
+            parseArguments(terms, ")");
+        }
+        int[] termArray = new int[terms.size()];
+        for (int i = 0; i < termArray.length; i++) {
+            termArray[i] = terms.get(i);
+        }
+        return new Atom(predicate, termArray);
+    }
+
+    private void parseArguments(List<Integer> terms, String close) {
+        while (true) {
+            terms.add(parseTerm());
+            String token = next();
+            if (close.equals(token)) {
+                return;
+            } else if (!",".equals(token) && !":".equals(token)) {
+                throw new IllegalArgumentException("Parse error: unexpected " + token + " in " + tokens);
+            }
+        }
+    }
+
+    private int parseTerm() {
+        String token = next();
+        if (token.startsWith("\"")) {
+            return engine.getSymbols().intern(token.substring(1, token.length() - 1));
+        }
+        if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '-'
+                || "true".equals(token) || "false".equals(token)) {
+            return engine.getSymbols().intern(token);
+        }
+        if ("_".equals(token)) {
+            return Atom.variableTerm(newVariable());
+        }
+        Integer index = variables.get(token);
+        if (index == null) {
+            index = newVariable();
+            variables.put(token, index);
+        }
+        return Atom.variableTerm(index);
+    }
+
+    private int newVariable() {
+        int index = variables.size();
+        // Wildcards get a name no LogiQL variable can have.
+        variables.put("_" + index, index);
+        return index;
+    }
+
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw new IllegalArgumentException("Parse error: unexpected end of statement: " + tokens);
+        }
+        return tokens.get(position++);
+    }
+
+    private void expect(String expected) {
+        String token = next();
+        if (!expected.equals(token)) {
+            throw new IllegalArgumentException("Parse error: expected " + expected + " but found " + token
+                    + " in " + tokens);
+        }
+    }
+
+    private static List<String> tokenize(CharSequence text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = i + 1;
+                while (end < length && text.charAt(end) != '"') {
+                    end++;
+                }
+                tokens.add(text.subSequence(i, end + 1).toString());
+                i = end + 1;
+            } else if (Character.isLetterOrDigit(c) || c == '_'
+                    || (c == '-' && i + 1 < length && Character.isDigit(text.charAt(i + 1)))) {
+                int end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(text.charAt(end)) || text.charAt(end) == '_')) {
+                    end++;
+                }
+                tokens.add(text.subSequence(i, end).toString());
+                i = end;
+            } else if (i + 1 < length && isTwoCharOperator(c, text.charAt(i + 1))) {
+                tokens.add(text.subSequence(i, i + 2).toString());
+                i += 2;
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isTwoCharOperator(char first, char second) {
+        return (first == '<' && (second == '-' || second == '<'))
+                || (first == '-' && second == '>')
+                || (first == '>' && second == '>');
+    }
+}
@@ -0,0 +1,92 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of tuples of the same arity.
+ *
+ * Lookups by the value of a column are answered from a hash index of that column, which is
+ * built on the first lookup and then kept up to date as tuples are added.
+ */
+public class Relation {
+
+    private final String name;
+
+    private final int arity;
+
+    private final Set<Tuple> tupleSet = new HashSet<>();
+
+    private final List<Tuple> tuples = new ArrayList<>();
+
+    /** Index of each indexed column, from column value to the tuples with that value. */
+    private final Map<Integer, Map<Integer, List<Tuple>>> indexes = new HashMap<>();
+
+    public Relation(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * @return true if the tuple was not in this relation yet
+     */
+    public boolean add(Tuple tuple) {
+        if (tuple.arity() != arity) {
+            throw new IllegalArgumentException("Relation " + name + " has arity " + arity
+                    + ", but got tuple " + tuple);
+        }
+        if (!tupleSet.add(tuple)) {
+            return false;
+        }
+        tuples.add(tuple);
+        for (Map.Entry<Integer, Map<Integer, List<Tuple>>> index : indexes.entrySet()) {
+            index.getValue().computeIfAbsent(tuple.get(index.getKey()), value -> new ArrayList<>()).add(tuple);
+        }
+        return true;
+    }
+
+    public boolean contains(Tuple tuple) {
+        return tupleSet.contains(tuple);
+    }
+
+    public List<Tuple> tuples() {
+        return Collections.unmodifiableList(tuples);
+    }
+
+    /**
+     * Return the tuples whose value in the given column is the given value.
+     */
+    public List<Tuple> lookup(int column, int value) {
+        Map<Integer, List<Tuple>> index = indexes.get(column);
+        if (index == null) {
+            index = new HashMap<>();
+            for (Tuple tuple : tuples) {
+                index.computeIfAbsent(tuple.get(column), v -> new ArrayList<>()).add(tuple);
+            }
+            indexes.put(column, index);
+        }
+        List<Tuple> result = index.get(value);
+        return result == null ? Collections.<Tuple>emptyList() : result;
+    }
+
+    public int size() {
+        return tuples.size();
+    }
+
+    public boolean isEmpty() {
+        return tuples.isEmpty();
+    }
+}
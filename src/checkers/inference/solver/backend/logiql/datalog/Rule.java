@@ -0,0 +1,42 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Datalog rule {@code head <- body1, ..., bodyn}, whose variables are numbered from 0 to
+ * {@link #numOfVariables} - 1.
+ */
+public class Rule {
+
+    public final Atom head;
+
+    public final List<Atom> body;
+
+    public final int numOfVariables;
+
+    public Rule(Atom head, List<Atom> body, int numOfVariables) {
+        this.head = head;
+        this.body = Collections.unmodifiableList(body);
+        this.numOfVariables = numOfVariables;
+
+        boolean[] boundInBody = new boolean[numOfVariables];
+        for (Atom atom : body) {
+            for (int term : atom.terms) {
+                if (Atom.isVariable(term)) {
+                    boundInBody[Atom.variableIndex(term)] = true;
+                }
+            }
+        }
+        for (int term : head.terms) {
+            if (Atom.isVariable(term) && !boundInBody[Atom.variableIndex(term)]) {
+                throw new IllegalArgumentException("Unsafe rule, head variable is not bound by the body: " + this);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return head + " <- " + body;
+    }
+}
@@ -0,0 +1,30 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the constants of a Datalog program, so relations store and compare ints.
+ */
+public class SymbolTable {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private final List<String> symbols = new ArrayList<>();
+
+    public int intern(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id == null) {
+            id = symbols.size();
+            symbols.add(symbol);
+            ids.put(symbol, id);
+        }
+        return id;
+    }
+
+    public String symbol(int id) {
+        return symbols.get(id);
+    }
+}
@@ -0,0 +1,41 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import java.util.Arrays;
+
+/**
+ * A tuple of a {@link Relation}, i.e. an array of symbol ids of a {@link SymbolTable}.
+ */
+public final class Tuple {
+
+    private final int[] values;
+
+    private final int hashCode;
+
+    public Tuple(int[] values) {
+        this.values = values;
+        this.hashCode = Arrays.hashCode(values);
+    }
+
+    public int get(int column) {
+        return values[column];
+    }
+
+    public int arity() {
+        return values.length;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Tuple && Arrays.equals(values, ((Tuple) obj).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
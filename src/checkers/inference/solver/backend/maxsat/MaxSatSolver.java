@@ -1,10 +1,17 @@
 package checkers.inference.solver.backend.maxsat;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -27,9 +34,13 @@ import checkers.inference.SlotManager;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.PreferenceConstraint;
 import checkers.inference.model.Slot;
+import checkers.inference.solver.SolverEngine.SolverEngineArg;
 import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.strategy.PlainSolvingStrategy;
 import checkers.inference.solver.util.FileUtils;
+import checkers.inference.solver.util.NameUtils;
+import checkers.inference.solver.util.ParallelEncoder;
 import checkers.inference.solver.util.SolverArg;
 import checkers.inference.solver.util.SolverEnvironment;
 import checkers.inference.solver.util.Statistics;
@@ -47,9 +58,34 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         /**
          * Whether should print the CNF formulas.
          */
-        outputCNF;
+        outputCNF,
+
+        /**
+         * Number of threads that encode constraints at the same time.
+         */
+        numOfEncodingThreads,
+
+        /**
+         * Whether should print the weighted problem as a WCNF file, to be solved by an
+         * external MaxSAT solver. Only with the Plain solving strategy, which writes the whole
+         * problem to one file.
+         */
+        outputWCNF,
+
+        /**
+         * Model file of an external MaxSAT solver for the WCNF file written by
+         * {@link #outputWCNF}. If given, the model is decoded instead of solving with Sat4j.
+         * Only with the Plain solving strategy.
+         */
+        wcnfModel;
     }
 
+    /**
+     * Default value of {@link MaxSatSolverArg#numOfEncodingThreads}. Components are often
+     * solved in parallel already, so constraints are encoded on the solving thread by default.
+     */
+    private static final int DEFAULT_NUM_OF_ENCODING_THREADS = 1;
+
     protected final SlotManager slotManager;
     protected final List<VecInt> hardClauses = new LinkedList<>();
     private List<VecInt> wellFormednessClauses = new LinkedList<>();
@@ -69,11 +105,27 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
                 lattice);
         this.slotManager = InferenceMain.getInstance().getSlotManager();
 
-        if (shouldOutputCNF()) {
+        if ((shouldOutputWCNF() || solverEnvironment.getArg(MaxSatSolverArg.wcnfModel) != null)
+                && !isSolvedAsOneProblem()) {
+            // Every solver would write and read the same file, components even at the same time.
+            throw new BugInCF("outputWCNF and wcnfModel require the "
+                    + NameUtils.getStrategyName(PlainSolvingStrategy.class) + " solving strategy.");
+        }
+
+        if (shouldOutputCNF() || shouldOutputWCNF()) {
             CNFData.mkdir();
         }
     }
 
+    /**
+     * @return true if the whole problem is given to one solver, i.e. the constraints are not
+     * split into components that are solved separately
+     */
+    private boolean isSolvedAsOneProblem() {
+        final String strategyName = solverEnvironment.getArg(SolverEngineArg.solvingStrategy);
+        return strategyName == null || strategyName.equals(NameUtils.getStrategyName(PlainSolvingStrategy.class));
+    }
+
     @Override
     public Map<Integer, AnnotationMirror> solve() {
 
@@ -91,6 +143,13 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
             buildCNFInput();
             writeCNFInput();
         }
+        if (shouldOutputWCNF()) {
+            writeWCNFInput();
+        }
+        final String wcnfModel = solverEnvironment.getArg(MaxSatSolverArg.wcnfModel);
+        if (wcnfModel != null) {
+            return decodeWCNFModel(new File(wcnfModel));
+        }
         // printClauses();
         configureSatSolver(solver);
 
@@ -129,12 +188,21 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
 
     /**
      * Convert constraints to list of VecInt.
+     *
+     * Constraints are encoded on {@link MaxSatSolverArg#numOfEncodingThreads} threads, and the
+     * resulting clauses are collected in constraint order on the calling thread.
      */
     @Override
     public void encodeAllConstraints() {
         for (Constraint constraint : constraints) {
             collectVarSlots(constraint);
-            VecInt[] encoding = constraint.serialize(formatTranslator);
+        }
+        List<VecInt[]> encodings = ParallelEncoder.encode(constraints,
+                constraint -> constraint.serialize(formatTranslator), getNumOfEncodingThreads());
+
+        Iterator<VecInt[]> encodingIterator = encodings.iterator();
+        for (Constraint constraint : constraints) {
+            VecInt[] encoding = encodingIterator.next();
             if (encoding == null) {
                 InferenceMain.getInstance().logger.warning(getClass()
                         + " doesn't support encoding constraint: " + constraint
@@ -221,6 +289,16 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
         Statistics.addOrIncrementEntry("cnf_variable_size", vars.size());
     }
 
+    protected int getNumOfEncodingThreads() {
+        final String numOfEncodingThreads = solverEnvironment.getArg(MaxSatSolverArg.numOfEncodingThreads);
+        return numOfEncodingThreads == null ? DEFAULT_NUM_OF_ENCODING_THREADS
+                : Integer.parseInt(numOfEncodingThreads);
+    }
+
+    protected boolean shouldOutputWCNF() {
+        return solverEnvironment.getBoolArg(MaxSatSolverArg.outputWCNF);
+    }
+
     protected boolean shouldOutputCNF() {
         return solverEnvironment.getBoolArg(MaxSatSolverArg.outputCNF);
     }
@@ -229,32 +307,149 @@ public class MaxSatSolver extends Solver<MaxSatFormatTranslator> {
      * Write CNF clauses into a string.
      */
     protected void buildCNFInput() {
+        try {
+            writeCNF(CNFInput);
+        } catch (IOException e) {
+            // StringBuilder never throws IOException.
+            throw new BugInCF("Unexpected error occurred!", e);
+        }
+    }
+
+    /**
+     * Write the hard and well-formedness clauses in DIMACS CNF format to the given output.
+     * Clauses are appended one literal at a time, so that a buffered writer can stream them
+     * to their destination without materializing the whole formula.
+     *
+     * @param out the output to append the DIMACS CNF to
+     * @throws IOException if appending to the given output fails
+     */
+    protected void writeCNF(Appendable out) throws IOException {
 
         final int totalClauses = hardClauses.size()+ wellFormednessClauses.size();
         final int totalVars = slotManager.getNumberOfSlots() * lattice.numTypes;
 
-        CNFInput.append("c This is the CNF input\n");
-        CNFInput.append("p cnf ");
-        CNFInput.append(totalVars);
-        CNFInput.append(" ");
-        CNFInput.append(totalClauses);
-        CNFInput.append("\n");
+        out.append("c This is the CNF input\n");
+        out.append("p cnf ");
+        out.append(Integer.toString(totalVars));
+        out.append(" ");
+        out.append(Integer.toString(totalClauses));
+        out.append("\n");
 
         for (VecInt hardClause : hardClauses) {
-            buildCNFInputHelper(hardClause);
+            writeCNFClause(out, hardClause);
         }
         for (VecInt wellFormedNessClause: wellFormednessClauses) {
-            buildCNFInputHelper(wellFormedNessClause);
+            writeCNFClause(out, wellFormedNessClause);
+        }
+    }
+
+    /**
+     * Write the problem given to Sat4j in DIMACS WCNF format to the given output. Hard and
+     * well-formedness clauses get the top weight. Each soft clause gets weight 1, since that is
+     * the weight {@link WeightedMaxSatDecorator#addSoftClause(org.sat4j.specs.IVecInt)} gives it.
+     *
+     * @param out the output to append the DIMACS WCNF to
+     * @throws IOException if appending to the given output fails
+     */
+    protected void writeWCNF(Appendable out) throws IOException {
+
+        final int totalClauses = hardClauses.size() + wellFormednessClauses.size() + softClauses.size();
+        final int totalVars = slotManager.getNumberOfSlots() * lattice.numTypes;
+        // The top weight must exceed the sum of the weights of all soft clauses.
+        final String top = Integer.toString(softClauses.size() + 1);
+
+        out.append("c This is the WCNF input\n");
+        out.append("p wcnf ");
+        out.append(Integer.toString(totalVars));
+        out.append(" ");
+        out.append(Integer.toString(totalClauses));
+        out.append(" ");
+        out.append(top);
+        out.append("\n");
+
+        for (VecInt hardClause : hardClauses) {
+            out.append(top).append(" ");
+            writeCNFClause(out, hardClause);
+        }
+        for (VecInt wellFormedNessClause: wellFormednessClauses) {
+            out.append(top).append(" ");
+            writeCNFClause(out, wellFormedNessClause);
+        }
+        for (VecInt softClause : softClauses) {
+            out.append("1 ");
+            writeCNFClause(out, softClause);
+        }
+    }
+
+    protected void writeWCNFInput() {
+        File file = new File(CNFData.getAbsolutePath() + "/wcnfdata.wcnf");
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writeWCNF(writer);
+        } catch (IOException e) {
+            throw new BugInCF("Could not write WCNF file " + file, e);
+        }
+    }
+
+    /**
+     * Decode the model an external MaxSAT solver found for the WCNF written by
+     * {@link #writeWCNF(Appendable)}.
+     *
+     * Both the classic model format, i.e. {@code v} lines of literals, and the binary string
+     * format of recent MaxSAT evaluations, i.e. one {@code v} line of a 0 or 1 per variable, are
+     * accepted.
+     *
+     * @param modelFile the output of the external solver
+     * @return the solution, or null if the solver reported the problem as unsatisfiable
+     */
+    protected Map<Integer, AnnotationMirror> decodeWCNFModel(File modelFile) {
+        final int totalVars = slotManager.getNumberOfSlots() * lattice.numTypes;
+        List<Integer> literals = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(modelFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("s ") && line.contains("UNSATISFIABLE")) {
+                    System.out.println("Not solvable!");
+                    unsatisfiableConstraintExplainer = new MaxSATUnsatisfiableConstraintExplainer();
+                    return null;
+                }
+                if (!line.startsWith("v ")) {
+                    continue;
+                }
+                String[] values = line.substring(2).trim().split("\\s+");
+                if (values.length == 1 && totalVars > 1 && values[0].length() == totalVars
+                        && values[0].matches("[01]+")) {
+                    for (int i = 0; i < totalVars; i++) {
+                        literals.add(values[0].charAt(i) == '1' ? i + 1 : -(i + 1));
+                    }
+                    continue;
+                }
+                for (String value : values) {
+                    int literal = Integer.parseInt(value);
+                    // Ignore auxiliary variables the external solver may have introduced.
+                    if (literal != 0 && Math.abs(literal) <= totalVars) {
+                        literals.add(literal);
+                    }
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new BugInCF("Could not read WCNF model file " + modelFile, e);
+        }
+
+        if (literals.isEmpty()) {
+            throw new BugInCF("WCNF model file " + modelFile + " contains no model.");
         }
+        return decode(literals.stream().mapToInt(Integer::intValue).toArray());
     }
 
-    private void buildCNFInputHelper(VecInt clause) {
+    private void writeCNFClause(Appendable out, VecInt clause) throws IOException {
         int[] literals = clause.toArray();
         for (int i = 0; i < literals.length; i++) {
-            CNFInput.append(literals[i]);
-            CNFInput.append(" ");
+            out.append(Integer.toString(literals[i]));
+            out.append(" ");
         }
-        CNFInput.append("0\n");
+        out.append("0\n");
     }
 
     protected void writeCNFInput() {
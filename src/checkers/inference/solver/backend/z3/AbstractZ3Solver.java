@@ -0,0 +1,242 @@
+package checkers.inference.solver.backend.z3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Model;
+import com.microsoft.z3.Optimize;
+import com.microsoft.z3.Status;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.backend.FormatTranslator;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * Solves constraints as a Max-SMT problem with Z3: hard constraints are asserted to an optimizing
+ * solver, preference constraints are asserted soft, and an unsat core is computed if the hard
+ * constraints are unsatisfiable.  Sub-classes choose the encoding through their format translator
+ * and decode the model it yields.
+ *
+ * @param <T> the format translator, which encodes every constraint as a Z3 BoolExpr
+ */
+public abstract class AbstractZ3Solver<T extends FormatTranslator<?, BoolExpr, ?>> extends Solver<T> {
+
+    /**
+     * Number of hard constraints that are conjoined and asserted to the underlying solver at once.
+     * Batching keeps the number of JNI round trips per component small.
+     */
+    protected static final int ASSERTION_BATCH_SIZE = 512;
+
+    /**
+     * Z3 context of the current {@link #solve()} call. It is created when solving starts rather
+     * than when this solver is created, because a strategy may create solvers for all components
+     * up front, and is closed once solving finishes.
+     */
+    protected Context context;
+    protected Optimize solver;
+
+    /**
+     * Constraints in the unsat core found when the last {@link #solve()} call turned out
+     * unsatisfiable. Empty if the constraints were satisfiable.
+     */
+    private Collection<Constraint> unsatCore = new HashSet<>();
+
+    public AbstractZ3Solver(SolverEnvironment solverEnvironment, Collection<Slot> slots,
+            Collection<Constraint> constraints, T formatTranslator, Lattice lattice) {
+        super(solverEnvironment, slots, constraints, formatTranslator, lattice);
+    }
+
+    /**
+     * Hand the context and solver of the current {@link #solve()} call to the format translator.
+     */
+    protected abstract void initFormatTranslator(Context context, Optimize solver);
+
+    /**
+     * @return the prefix of the timing statistics of this solver, e.g. "z3"
+     */
+    protected abstract String getStatisticsPrefix();
+
+    protected abstract Map<Integer, AnnotationMirror> decodeSolution(Model model);
+
+    /**
+     * @return restrictions that hold for every solution regardless of the constraints, which are
+     * asserted after the constraints and are never part of an unsat core.  True by default.
+     */
+    protected BoolExpr encodeWellFormednessRestriction() {
+        return context.mkTrue();
+    }
+
+    /**
+     * @return the encoding of the given constraint, or null if the format translator does not
+     * support it
+     */
+    protected BoolExpr serializeConstraint(Constraint constraint) {
+        return constraint.serialize(formatTranslator);
+    }
+
+    @Override
+    public Map<Integer, AnnotationMirror> solve() {
+        Map<Integer, AnnotationMirror> result = new HashMap<>();
+
+        context = new Context();
+        try {
+            solver = context.mkOptimize();
+            initFormatTranslator(context, solver);
+
+            long serializationStart = System.currentTimeMillis();
+            encodeAllConstraints();
+            BoolExpr wellFormedness = encodeWellFormednessRestriction();
+            if (!wellFormedness.isTrue()) {
+                solver.Assert(wellFormedness);
+            }
+            long serializationEnd = System.currentTimeMillis();
+
+            Status status = solver.Check();
+            long solvingEnd = System.currentTimeMillis();
+
+            Statistics.addOrIncrementEntry(getStatisticsPrefix() + "_serialization_time(ms)",
+                    serializationEnd - serializationStart);
+            Statistics.addOrIncrementEntry(getStatisticsPrefix() + "_solving_time(ms)", solvingEnd - serializationEnd);
+
+            switch (status) {
+                case SATISFIABLE: {
+                    result = decodeSolution(solver.getModel());
+                    break;
+                }
+
+                case UNSATISFIABLE: {
+                    System.out.println("Unsatisfiable!");
+                    // Return null so that the solving strategy asks for an explanation.
+                    result = null;
+                    unsatCore = computeUnsatCore();
+                    break;
+                }
+
+                case UNKNOWN:
+                default: {
+                    System.out.println("Solver failed to solve due to Unknown reason!");
+                    break;
+                }
+            }
+        } finally {
+            solver = null;
+            context.close();
+            context = null;
+        }
+        return result;
+    }
+
+    @Override
+    public Collection<Constraint> explainUnsatisfiable() {
+        return unsatCore;
+    }
+
+    @Override
+    protected void encodeAllConstraints() {
+        List<BoolExpr> hardConstraintBatch = new ArrayList<>(ASSERTION_BATCH_SIZE);
+
+        for (Constraint constraint : constraints) {
+            BoolExpr serializedConstraint = serializeConstraint(constraint);
+
+            if (serializedConstraint == null) {
+                // TODO: Should error abort if unsupported constraint detected.
+                // Currently warning is a workaround for making ontology working, as in some cases existential constraints generated.
+                // Should investigate on this, and change this to ErrorAbort when eliminated unsupported constraints.
+                InferenceMain.getInstance().logger.warning("Unsupported constraint detected! Constraint type: " + constraint.getClass());
+                continue;
+            } else if (serializedConstraint.isTrue()) {
+                // Skip tautology.
+                continue;
+            }
+
+            if (constraint instanceof PreferenceConstraint) {
+                solver.AssertSoft(serializedConstraint, ((PreferenceConstraint) constraint).getWeight(), "preferCons");
+            } else {
+                hardConstraintBatch.add(serializedConstraint);
+                if (hardConstraintBatch.size() == ASSERTION_BATCH_SIZE) {
+                    assertHardConstraints(hardConstraintBatch);
+                }
+            }
+        }
+
+        assertHardConstraints(hardConstraintBatch);
+    }
+
+    /**
+     * Assert the given hard constraints to the underlying solver as a single conjunction,
+     * then clear the given list.
+     */
+    private void assertHardConstraints(List<BoolExpr> hardConstraints) {
+        if (hardConstraints.isEmpty()) {
+            return;
+        }
+
+        solver.Assert(context.mkAnd(hardConstraints.toArray(new BoolExpr[hardConstraints.size()])));
+        hardConstraints.clear();
+    }
+
+    /**
+     * Compute an unsat core of the hard constraints. Each hard constraint is asserted to a plain
+     * Z3 solver tracked by its own Boolean constant, and the constants in the core returned by Z3
+     * are mapped back to the constraints they track. The well-formedness restriction is asserted
+     * untracked. This is only called once the optimizing solver has reported unsatisfiable, so
+     * satisfiable runs pay nothing for it.
+     *
+     * @return the constraints in the unsat core, which are not solvable together
+     */
+    protected Collection<Constraint> computeUnsatCore() {
+        Collection<Constraint> core = new HashSet<>();
+        Map<BoolExpr, Constraint> trackedConstraints = new HashMap<>();
+        com.microsoft.z3.Solver coreSolver = context.mkSolver();
+        coreSolver.add(encodeWellFormednessRestriction());
+
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof PreferenceConstraint) {
+                // Soft constraints never cause unsatisfiability.
+                continue;
+            }
+
+            BoolExpr serializedConstraint = serializeConstraint(constraint);
+            if (serializedConstraint == null || serializedConstraint.isTrue()) {
+                // Unsupported constraints were already warned in encodeAllConstraints().
+                continue;
+            }
+
+            BoolExpr tracker = context.mkBoolConst("track_" + trackedConstraints.size());
+            trackedConstraints.put(tracker, constraint);
+            coreSolver.assertAndTrack(serializedConstraint, tracker);
+        }
+
+        if (coreSolver.check() != Status.UNSATISFIABLE) {
+            InferenceMain.getInstance().logger.warning("Z3 could not reproduce the unsatisfiability of the "
+                    + "hard constraints, no unsat core is available.");
+            return core;
+        }
+
+        for (BoolExpr tracker : coreSolver.getUnsatCore()) {
+            Constraint constraint = trackedConstraints.get(tracker);
+            if (constraint == null) {
+                throw new BugInCF("Unsat core contains an untracked expression: " + tracker);
+            }
+            core.add(constraint);
+        }
+
+        return core;
+    }
+}
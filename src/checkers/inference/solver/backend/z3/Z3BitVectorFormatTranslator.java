@@ -23,6 +23,7 @@ import checkers.inference.model.ConstantSlot;
 import checkers.inference.model.ExistentialVariableSlot;
 import checkers.inference.model.LubVariableSlot;
 import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
 import checkers.inference.model.VariableSlot;
 import checkers.inference.solver.frontend.Lattice;
 
@@ -34,16 +35,42 @@ public abstract class Z3BitVectorFormatTranslator extends AbstractFormatTranslat
 
     private Map<Integer, BitVecExpr> serializedSlots;
 
+    /**
+     * Complements of the encoded slots, keyed by slot id. Constant slots are complemented into
+     * numerals up front, so a constant operand of the subset predicate costs no extra term.
+     */
+    private Map<Integer, BitVecExpr> complementedSlots;
+
     protected final Z3BitVectorCodec z3BitVectorCodec;
 
+    /**
+     * Mask with every bit of the fixed bit vector size set, used to complement constant encodings.
+     */
+    private final BigInteger fullMask;
+
+    /**
+     * The empty set, i.e. the all-zero bit vector in the current context.
+     */
+    protected BitVecNum emptySet;
+
     public Z3BitVectorFormatTranslator(Lattice lattice) {
         super(lattice);
         z3BitVectorCodec = createZ3BitVectorCodec();
+        fullMask = BigInteger.ONE.shiftLeft(z3BitVectorCodec.getFixedBitVectorSize()).subtract(BigInteger.ONE);
         serializedSlots = new HashMap<>();
+        complementedSlots = new HashMap<>();
     }
 
+    /**
+     * Bind this translator to the given context. Expressions cached by a previous context are
+     * dropped, and the lattice predicates are compiled once for the new context, so that each
+     * constraint encoding only instantiates them.
+     */
     public final void initContext(Context context) {
         this.context = context;
+        serializedSlots = new HashMap<>();
+        complementedSlots = new HashMap<>();
+        emptySet = context.mkBV(0, z3BitVectorCodec.getFixedBitVectorSize());
         finishInitializingEncoders();
         postInitWithContext();
     }
@@ -115,6 +142,40 @@ public abstract class Z3BitVectorFormatTranslator extends AbstractFormatTranslat
         return bitVecNum;
     }
 
+    /**
+     * Encode that the set of bits in {@code subSet} is contained in the set of bits in {@code superSet},
+     * i.e. {@code subSet & ~superSet == 0}. This is the bit-mask form of the lattice subtype relation;
+     * it is equivalent to requiring both {@code subSet & superSet == subSet} and
+     * {@code subSet | superSet == superSet}, but needs a single comparison.
+     *
+     * @param subSet the encoding of the slot whose bits should be contained
+     * @param superSet the encoding of the slot whose bits should contain {@code subSet}
+     * @return the encoded subset relation
+     */
+    public BoolExpr encodeSubset(Slot subSet, Slot superSet) {
+        BitVecExpr subSetBv = subSet.serialize(this);
+        BitVecExpr complementOfSuperSet = serializeComplement(superSet);
+        return context.mkEq(context.mkBVAND(subSetBv, complementOfSuperSet), emptySet);
+    }
+
+    private BitVecExpr serializeComplement(Slot slot) {
+        int slotId = ((VariableSlot) slot).getId();
+
+        BitVecExpr complement = complementedSlots.get(slotId);
+        if (complement == null) {
+            if (slot instanceof ConstantSlot) {
+                BigInteger numeralValue = z3BitVectorCodec.encodeConstantAM(((ConstantSlot) slot).getValue());
+                complement = context.mkBV(numeralValue.xor(fullMask).toString(),
+                        z3BitVectorCodec.getFixedBitVectorSize());
+            } else {
+                complement = context.mkBVNot(slot.serialize(this));
+            }
+            complementedSlots.put(slotId, complement);
+        }
+
+        return complement;
+    }
+
     @Override
     protected ConstraintEncoderFactory<BoolExpr> createConstraintEncoderFactory() {
         return new Z3BitVectorConstraintEncoderFactory(lattice, context, this);
@@ -6,7 +6,6 @@ import checkers.inference.model.VariableSlot;
 import checkers.inference.solver.backend.encoder.binary.SubtypeConstraintEncoder;
 import checkers.inference.solver.backend.z3.Z3BitVectorFormatTranslator;
 import checkers.inference.solver.frontend.Lattice;
-import com.microsoft.z3.BitVecExpr;
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.Context;
 
@@ -22,23 +21,11 @@ public class Z3BitVectorSubtypeConstraintEncoder extends Z3BitVectorAbstractCons
     }
 
     protected BoolExpr encode(Slot subtype, Slot supertype) {
-        BitVecExpr subtypeBv = subtype.serialize(z3BitVectorFormatTranslator);
-        BitVecExpr supertypeBv = supertype.serialize(z3BitVectorFormatTranslator);
-        BitVecExpr subSet;
-        BitVecExpr superSet;
-
         if (isSubtypeSubset()) {
-            subSet = subtypeBv;
-            superSet = supertypeBv;
+            return z3BitVectorFormatTranslator.encodeSubset(subtype, supertype);
         } else {
-            superSet = subtypeBv;
-            subSet = supertypeBv;
+            return z3BitVectorFormatTranslator.encodeSubset(supertype, subtype);
         }
-
-        BoolExpr sub_intersect_super = context.mkEq(context.mkBVAND(subtypeBv, supertypeBv), subSet);
-        BoolExpr sub_union_super = context.mkEq(context.mkBVOR(subtypeBv, supertypeBv), superSet);
-
-        return context.mkAnd(sub_intersect_super, sub_union_super);
     }
 
     @Override
@@ -0,0 +1,248 @@
+package checkers.inference.solver.backend.z3int;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.BugInCF;
+
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.FuncDecl;
+import com.microsoft.z3.IntExpr;
+import com.microsoft.z3.IntNum;
+import com.microsoft.z3.Optimize;
+import com.microsoft.z3.Sort;
+
+import checkers.inference.model.CombVariableSlot;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.ExistentialVariableSlot;
+import checkers.inference.model.LubVariableSlot;
+import checkers.inference.model.RefinementVariableSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.AbstractFormatTranslator;
+import checkers.inference.solver.backend.encoder.ConstraintEncoderFactory;
+import checkers.inference.solver.backend.z3int.encoder.Z3IntConstraintEncoderFactory;
+import checkers.inference.solver.frontend.Lattice;
+
+/**
+ * Z3IntFormatTranslator encodes each slot as a Z3 integer ranging over the qualifiers of the
+ * {@link Lattice}, as an alternative to the bit vector encoding of
+ * {@link checkers.inference.solver.backend.z3.Z3BitVectorFormatTranslator}.
+ * <p>
+ * The encoding is derived from the lattice alone, so no type system specific codec is needed.
+ * Qualifiers are numbered along a linear extension of the lattice order, i.e. a qualifier always
+ * gets a smaller number than each of its strict supertypes. If the lattice is a chain, subtyping
+ * is exactly integer {@code <=}. Otherwise, subtyping is a finite relation over the qualifier
+ * numbers, asserted once per context as a table of ground facts, and conjoined with the
+ * {@code <=} it implies.
+ */
+public class Z3IntFormatTranslator extends AbstractFormatTranslator<IntExpr, BoolExpr, IntNum> {
+
+    /**
+     * typeToInt maps each type qualifier to its position in a linear extension of the lattice order,
+     * starting from 0 on continuous basis.
+     */
+    protected final Map<AnnotationMirror, Integer> typeToInt;
+
+    /**
+     * intToType maps an integer value to each type qualifier, which is a
+     * reversed map of typeToInt.
+     */
+    protected final Map<Integer, AnnotationMirror> intToType;
+
+    /**
+     * Whether every two qualifiers of the lattice are comparable.
+     */
+    protected final boolean isChain;
+
+    protected Context context;
+
+    protected Optimize solver;
+
+    private Map<Integer, IntExpr> serializedSlots;
+
+    /**
+     * Subtype relation over qualifier numbers. Null if the lattice is a chain, as integer
+     * comparison is then enough.
+     */
+    private FuncDecl subtypeRelation;
+
+    public Z3IntFormatTranslator(Lattice lattice) {
+        super(lattice);
+
+        // A strict subtype has strictly fewer subtypes than its supertype, so sorting
+        // by the number of subtypes gives a linear extension of the lattice order.
+        List<AnnotationMirror> orderedTypes = new ArrayList<>(lattice.allTypes);
+        orderedTypes.sort(Comparator.comparingInt(type -> lattice.subType.get(type).size()));
+
+        Map<AnnotationMirror, Integer> typeToIntRes = AnnotationUtils.createAnnotationMap();
+        Map<Integer, AnnotationMirror> intToTypeRes = new HashMap<>();
+        int curInt = 0;
+        for (AnnotationMirror type : orderedTypes) {
+            typeToIntRes.put(type, curInt);
+            intToTypeRes.put(curInt, type);
+            curInt ++;
+        }
+
+        typeToInt = Collections.unmodifiableMap(typeToIntRes);
+        intToType = Collections.unmodifiableMap(intToTypeRes);
+        isChain = lattice.incomparableType.isEmpty();
+        serializedSlots = new HashMap<>();
+    }
+
+    /**
+     * Bind this translator to the given context, dropping expressions cached for a previous context.
+     */
+    public final void initContext(Context context) {
+        this.context = context;
+        serializedSlots = new HashMap<>();
+        if (isChain) {
+            subtypeRelation = null;
+        } else {
+            subtypeRelation = context.mkFuncDecl("subtype",
+                    new Sort[] {context.getIntSort(), context.getIntSort()}, context.getBoolSort());
+        }
+        finishInitializingEncoders();
+    }
+
+    public final void initSolver(Optimize solver) {
+        this.solver = solver;
+    }
+
+    public boolean isChain() {
+        return isChain;
+    }
+
+    @Override
+    protected ConstraintEncoderFactory<BoolExpr> createConstraintEncoderFactory() {
+        return new Z3IntConstraintEncoderFactory(lattice, context, this);
+    }
+
+    /**
+     * Encode the subtype relation of the lattice as a table of ground facts over the qualifier
+     * numbers. The table only depends on the lattice, so it is asserted once per context.
+     *
+     * @return the encoded lattice table, or true if the lattice is a chain
+     */
+    public BoolExpr encodeLatticeTable() {
+        if (isChain) {
+            return context.mkTrue();
+        }
+
+        List<BoolExpr> facts = new ArrayList<>(lattice.numTypes * lattice.numTypes);
+        for (Map.Entry<AnnotationMirror, Integer> sub : typeToInt.entrySet()) {
+            for (Map.Entry<AnnotationMirror, Integer> sup : typeToInt.entrySet()) {
+                BoolExpr fact = (BoolExpr) context.mkApp(subtypeRelation,
+                        context.mkInt(sub.getValue()), context.mkInt(sup.getValue()));
+                if (AnnotationUtils.containsSame(lattice.subType.get(sup.getKey()), sub.getKey())) {
+                    facts.add(fact);
+                } else {
+                    facts.add(context.mkNot(fact));
+                }
+            }
+        }
+        return context.mkAnd(facts.toArray(new BoolExpr[facts.size()]));
+    }
+
+    /**
+     * Restrict the slot with the given id to the range of qualifier numbers.
+     */
+    public BoolExpr encodeDomainRestriction(int varSlotId) {
+        IntExpr slotExpr = context.mkIntConst(String.valueOf(varSlotId));
+        return context.mkAnd(context.mkLe(context.mkInt(0), slotExpr),
+                context.mkLt(slotExpr, context.mkInt(lattice.numTypes)));
+    }
+
+    /**
+     * Encode that {@code subtype} is a subtype of {@code supertype} in the lattice.
+     */
+    public BoolExpr encodeSubtype(Slot subtype, Slot supertype) {
+        IntExpr subtypeExpr = subtype.serialize(this);
+        IntExpr supertypeExpr = supertype.serialize(this);
+        BoolExpr ordered = context.mkLe(subtypeExpr, supertypeExpr);
+
+        if (isChain) {
+            return ordered;
+        }
+        return context.mkAnd(ordered, (BoolExpr) context.mkApp(subtypeRelation, subtypeExpr, supertypeExpr));
+    }
+
+    public IntExpr serializeVarSlot(VariableSlot slot) {
+        if (slot instanceof ConstantSlot) {
+            throw new BugInCF("Attempt to serializing ConstantSlot by serializeVarSlot() method. Should use serializeConstantSlot() instead!");
+        }
+
+        int slotId = slot.getId();
+
+        if (serializedSlots.containsKey(slotId)) {
+            return serializedSlots.get(slotId);
+        }
+
+        IntExpr intExpr = context.mkIntConst(String.valueOf(slotId));
+        serializedSlots.put(slotId, intExpr);
+
+        return intExpr;
+    }
+
+    public IntExpr serializeConstantSlot(ConstantSlot slot) {
+        int slotId = slot.getId();
+
+        if (serializedSlots.containsKey(slotId)) {
+            return serializedSlots.get(slotId);
+        }
+
+        Integer typeInt = typeToInt.get(slot.getValue());
+        if (typeInt == null) {
+            throw new BugInCF("Constant slot value " + slot.getValue() + " is not a qualifier of the lattice.");
+        }
+
+        IntNum intNum = context.mkInt(typeInt);
+        serializedSlots.put(slotId, intNum);
+
+        return intNum;
+    }
+
+    @Override
+    public IntExpr serialize(VariableSlot slot) {
+        return serializeVarSlot(slot);
+    }
+
+    @Override
+    public IntExpr serialize(ConstantSlot slot) {
+        return serializeConstantSlot(slot);
+    }
+
+    @Override
+    public IntExpr serialize(ExistentialVariableSlot slot) {
+        return serializeVarSlot(slot);
+    }
+
+    @Override
+    public IntExpr serialize(RefinementVariableSlot slot) {
+        return serializeVarSlot(slot);
+    }
+
+    @Override
+    public IntExpr serialize(CombVariableSlot slot) {
+        return serializeVarSlot(slot);
+    }
+
+    @Override
+    public IntExpr serialize(LubVariableSlot slot) {
+        return serializeVarSlot(slot);
+    }
+
+    @Override
+    public AnnotationMirror decodeSolution(IntNum solution, ProcessingEnvironment processingEnvironment) {
+        return intToType.get(solution.getInt());
+    }
+}
@@ -0,0 +1,93 @@
+package checkers.inference.solver.backend.z3int;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.Expr;
+import com.microsoft.z3.FuncDecl;
+import com.microsoft.z3.IntNum;
+import com.microsoft.z3.Model;
+import com.microsoft.z3.Optimize;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.backend.z3.AbstractZ3Solver;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Z3IntSolver solves constraints encoded by {@link Z3IntFormatTranslator} as a Max-SMT problem
+ * over integers with Z3.
+ * <p>
+ * It reports the same timing statistics as {@link checkers.inference.solver.backend.z3.Z3Solver}
+ * under a {@code z3int_} prefix, so the two encodings can be compared by running both backends
+ * with {@code collectStatistics=true} on the same input.
+ */
+public class Z3IntSolver extends AbstractZ3Solver<Z3IntFormatTranslator> {
+
+    public Z3IntSolver(SolverEnvironment solverEnvironment, Collection<Slot> slots,
+            Collection<Constraint> constraints, Z3IntFormatTranslator formatTranslator, Lattice lattice) {
+        super(solverEnvironment, slots, constraints, formatTranslator, lattice);
+    }
+
+    @Override
+    protected void initFormatTranslator(Context context, Optimize solver) {
+        formatTranslator.initContext(context);
+        formatTranslator.initSolver(solver);
+    }
+
+    @Override
+    protected String getStatisticsPrefix() {
+        return "z3int";
+    }
+
+    /**
+     * Collects the variable slots of the constraint, which {@link #encodeWellFormednessRestriction()}
+     * restricts, as it encodes it.
+     */
+    @Override
+    protected BoolExpr serializeConstraint(Constraint constraint) {
+        collectVarSlots(constraint);
+        return super.serializeConstraint(constraint);
+    }
+
+    /**
+     * Encode the lattice table and restrict every variable slot to the range of qualifier numbers.
+     */
+    @Override
+    protected BoolExpr encodeWellFormednessRestriction() {
+        List<BoolExpr> wellFormedness = new ArrayList<>(varSlotIds.size() + 1);
+        wellFormedness.add(formatTranslator.encodeLatticeTable());
+        for (Integer varSlotId : varSlotIds) {
+            wellFormedness.add(formatTranslator.encodeDomainRestriction(varSlotId));
+        }
+        return context.mkAnd(wellFormedness.toArray(new BoolExpr[wellFormedness.size()]));
+    }
+
+    @Override
+    protected Map<Integer, AnnotationMirror> decodeSolution(Model model) {
+        Map<Integer, AnnotationMirror> result = new HashMap<>();
+
+        // Only constants are slots, the subtype relation is a function declaration.
+        for (FuncDecl funcDecl : model.getConstDecls()) {
+            int slotId = Integer.valueOf(funcDecl.getName().toString());
+            Expr constInterp = model.getConstInterp(funcDecl);
+            if (! (constInterp instanceof IntNum)) {
+                throw new BugInCF("Wrong solution type detected: All solution must be type of IntNum, but get: " + constInterp.getClass());
+            }
+
+            result.put(slotId, formatTranslator.decodeSolution((IntNum) constInterp, solverEnvironment.processingEnvironment));
+        }
+
+        return result;
+    }
+}
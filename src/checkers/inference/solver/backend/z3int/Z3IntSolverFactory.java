@@ -0,0 +1,29 @@
+package checkers.inference.solver.backend.z3int;
+
+import java.util.Collection;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.Slot;
+import checkers.inference.solver.backend.AbstractSolverFactory;
+import checkers.inference.solver.backend.Solver;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.SolverEnvironment;
+
+/**
+ * Unlike {@link checkers.inference.solver.backend.z3.Z3SolverFactory}, this factory is concrete:
+ * the integer encoding is derived from the lattice and needs no type system specific codec.
+ */
+public class Z3IntSolverFactory extends AbstractSolverFactory<Z3IntFormatTranslator> {
+
+    @Override
+    public Solver<?> createSolver(SolverEnvironment solverEnvironment, Collection<Slot> slots,
+            Collection<Constraint> constraints, Lattice lattice) {
+        Z3IntFormatTranslator formatTranslator = createFormatTranslator(lattice);
+        return new Z3IntSolver(solverEnvironment, slots, constraints, formatTranslator, lattice);
+    }
+
+    @Override
+    protected Z3IntFormatTranslator createFormatTranslator(Lattice lattice) {
+        return new Z3IntFormatTranslator(lattice);
+    }
+}
@@ -0,0 +1,23 @@
+package checkers.inference.solver.backend.z3int.encoder;
+
+import checkers.inference.solver.backend.encoder.AbstractConstraintEncoder;
+import checkers.inference.solver.backend.z3int.Z3IntFormatTranslator;
+import checkers.inference.solver.frontend.Lattice;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+
+/**
+ * Abstract base class for every Z3Int constraint encoders.
+ */
+public class Z3IntAbstractConstraintEncoder extends AbstractConstraintEncoder<BoolExpr> {
+
+    protected final Context context;
+    protected final Z3IntFormatTranslator z3IntFormatTranslator;
+
+    public Z3IntAbstractConstraintEncoder(Lattice lattice, Context context,
+            Z3IntFormatTranslator z3IntFormatTranslator) {
+        super(lattice, context.mkTrue(), context.mkFalse());
+        this.context = context;
+        this.z3IntFormatTranslator = z3IntFormatTranslator;
+    }
+}
@@ -0,0 +1,42 @@
+package checkers.inference.solver.backend.z3int.encoder;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.binary.ComparableConstraintEncoder;
+import checkers.inference.solver.backend.z3int.Z3IntFormatTranslator;
+import checkers.inference.solver.frontend.Lattice;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+
+public class Z3IntComparableConstraintEncoder extends Z3IntAbstractConstraintEncoder implements ComparableConstraintEncoder<BoolExpr> {
+
+    public Z3IntComparableConstraintEncoder(Lattice lattice, Context context,
+            Z3IntFormatTranslator z3IntFormatTranslator) {
+        super(lattice, context, z3IntFormatTranslator);
+    }
+
+    protected BoolExpr encode(Slot fst, Slot snd) {
+        if (z3IntFormatTranslator.isChain()) {
+            // Every two qualifiers of a chain are comparable.
+            return emptyValue;
+        }
+        return context.mkOr(z3IntFormatTranslator.encodeSubtype(fst, snd),
+                z3IntFormatTranslator.encodeSubtype(snd, fst));
+    }
+
+    @Override
+    public BoolExpr encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
+        return encode(fst, snd);
+    }
+
+    @Override
+    public BoolExpr encodeVariable_Constant(VariableSlot fst, ConstantSlot snd) {
+        return encode(fst, snd);
+    }
+
+    @Override
+    public BoolExpr encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
+        return encode(fst, snd);
+    }
+}
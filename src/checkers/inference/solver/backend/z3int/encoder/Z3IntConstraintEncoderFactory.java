@@ -0,0 +1,77 @@
+package checkers.inference.solver.backend.z3int.encoder;
+
+import checkers.inference.solver.backend.encoder.AbstractConstraintEncoderFactory;
+import checkers.inference.solver.backend.encoder.ArithmeticConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.ComparableConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.EqualityConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.InequalityConstraintEncoder;
+import checkers.inference.solver.backend.encoder.binary.SubtypeConstraintEncoder;
+import checkers.inference.solver.backend.encoder.combine.CombineConstraintEncoder;
+import checkers.inference.solver.backend.encoder.existential.ExistentialConstraintEncoder;
+import checkers.inference.solver.backend.encoder.implication.ImplicationConstraintEncoder;
+import checkers.inference.solver.backend.encoder.preference.PreferenceConstraintEncoder;
+import checkers.inference.solver.backend.z3int.Z3IntFormatTranslator;
+import checkers.inference.solver.frontend.Lattice;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+
+/**
+ * Z3Int implementation of {@link checkers.inference.solver.backend.encoder.ConstraintEncoderFactory}.
+ *
+ * @see checkers.inference.solver.backend.encoder.ConstraintEncoderFactory
+ */
+public class Z3IntConstraintEncoderFactory extends AbstractConstraintEncoderFactory<BoolExpr, Z3IntFormatTranslator> {
+
+    protected final Context context;
+
+    public Z3IntConstraintEncoderFactory(Lattice lattice, Context context,
+            Z3IntFormatTranslator formatTranslator) {
+        super(lattice, formatTranslator);
+        this.context = context;
+    }
+
+    @Override
+    public SubtypeConstraintEncoder<BoolExpr> createSubtypeConstraintEncoder() {
+        return new Z3IntSubtypeConstraintEncoder(lattice, context, formatTranslator);
+    }
+
+    @Override
+    public EqualityConstraintEncoder<BoolExpr> createEqualityConstraintEncoder() {
+        return new Z3IntEqualityConstraintEncoder(lattice, context, formatTranslator);
+    }
+
+    @Override
+    public InequalityConstraintEncoder<BoolExpr> createInequalityConstraintEncoder() {
+        return new Z3IntInequalityConstraintEncoder(lattice, context, formatTranslator);
+    }
+
+    @Override
+    public ComparableConstraintEncoder<BoolExpr> createComparableConstraintEncoder() {
+        return new Z3IntComparableConstraintEncoder(lattice, context, formatTranslator);
+    }
+
+    @Override
+    public PreferenceConstraintEncoder<BoolExpr> createPreferenceConstraintEncoder() {
+        return new Z3IntPreferenceConstraintEncoder(lattice, context, formatTranslator);
+    }
+
+    @Override
+    public CombineConstraintEncoder<BoolExpr> createCombineConstraintEncoder() {
+        return null;
+    }
+
+    @Override
+    public ExistentialConstraintEncoder<BoolExpr> createExistentialConstraintEncoder() {
+        return null;
+    }
+
+    @Override
+    public ImplicationConstraintEncoder<BoolExpr> createImplicationConstraintEncoder() {
+        return null;
+    }
+
+    @Override
+    public ArithmeticConstraintEncoder<BoolExpr> createArithmeticConstraintEncoder() {
+        return null;
+    }
+}
@@ -0,0 +1,40 @@
+package checkers.inference.solver.backend.z3int.encoder;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Slot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.binary.EqualityConstraintEncoder;
+import checkers.inference.solver.backend.z3int.Z3IntFormatTranslator;
+import checkers.inference.solver.frontend.Lattice;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.IntExpr;
+
+public class Z3IntEqualityConstraintEncoder extends Z3IntAbstractConstraintEncoder implements EqualityConstraintEncoder<BoolExpr> {
+
+    public Z3IntEqualityConstraintEncoder(Lattice lattice, Context context,
+            Z3IntFormatTranslator z3IntFormatTranslator) {
+        super(lattice, context, z3IntFormatTranslator);
+    }
+
+    protected BoolExpr encode(Slot fst, Slot snd) {
+        IntExpr fstInt = fst.serialize(z3IntFormatTranslator);
+        IntExpr sndInt = snd.serialize(z3IntFormatTranslator);
+        return context.mkEq(fstInt, sndInt);
+    }
+
+    @Override
+    public BoolExpr encodeVariable_Variable(VariableSlot fst, VariableSlot snd) {
+        return encode(fst, snd);
+    }
+
+    @Override
+    public BoolExpr encodeVariable_Constant(VariableSlot fst, ConstantSlot snd) {
+        return encode(fst, snd);
+    }
+
+    @Override
+    public BoolExpr encodeConstant_Variable(ConstantSlot fst, VariableSlot snd) {
+        return encode(fst, snd);
+    }
+}
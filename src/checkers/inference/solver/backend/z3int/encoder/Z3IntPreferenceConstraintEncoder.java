@@ -0,0 +1,34 @@
+package checkers.inference.solver.backend.z3int.encoder;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.preference.PreferenceConstraintEncoder;
+import checkers.inference.solver.backend.z3int.Z3IntFormatTranslator;
+import checkers.inference.solver.frontend.Lattice;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.IntExpr;
+
+public class Z3IntPreferenceConstraintEncoder extends Z3IntAbstractConstraintEncoder implements PreferenceConstraintEncoder<BoolExpr> {
+
+    public Z3IntPreferenceConstraintEncoder(Lattice lattice, Context context,
+            Z3IntFormatTranslator z3IntFormatTranslator) {
+        super(lattice, context, z3IntFormatTranslator);
+    }
+
+    /**
+     * Return an equality constraint between variable and constant goal.
+     * The caller should add the serialized constraint with soft option.
+     */
+    @Override
+    public BoolExpr encode(PreferenceConstraint constraint) {
+        VariableSlot variableSlot = constraint.getVariable();
+        ConstantSlot constantSlot = constraint.getGoal();
+
+        IntExpr varInt = z3IntFormatTranslator.serializeVarSlot(variableSlot);
+        IntExpr constInt = z3IntFormatTranslator.serializeConstantSlot(constantSlot);
+
+        return context.mkEq(varInt, constInt);
+    }
+}
@@ -0,0 +1,32 @@
+package checkers.inference.solver.backend.z3int.encoder;
+
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.backend.encoder.binary.SubtypeConstraintEncoder;
+import checkers.inference.solver.backend.z3int.Z3IntFormatTranslator;
+import checkers.inference.solver.frontend.Lattice;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+
+public class Z3IntSubtypeConstraintEncoder extends Z3IntAbstractConstraintEncoder implements SubtypeConstraintEncoder<BoolExpr> {
+
+    public Z3IntSubtypeConstraintEncoder(Lattice lattice, Context context,
+            Z3IntFormatTranslator z3IntFormatTranslator) {
+        super(lattice, context, z3IntFormatTranslator);
+    }
+
+    @Override
+    public BoolExpr encodeVariable_Variable(VariableSlot subtype, VariableSlot supertype) {
+        return z3IntFormatTranslator.encodeSubtype(subtype, supertype);
+    }
+
+    @Override
+    public BoolExpr encodeVariable_Constant(VariableSlot subtype, ConstantSlot supertype) {
+        return z3IntFormatTranslator.encodeSubtype(subtype, supertype);
+    }
+
+    @Override
+    public BoolExpr encodeConstant_Variable(ConstantSlot subtype, VariableSlot supertype) {
+        return z3IntFormatTranslator.encodeSubtype(subtype, supertype);
+    }
+}
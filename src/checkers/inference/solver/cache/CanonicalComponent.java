@@ -0,0 +1,165 @@
+package checkers.inference.solver.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.model.CombineConstraint;
+import checkers.inference.model.ComparableConstraint;
+import checkers.inference.model.ConstantSlot;
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.InequalityConstraint;
+import checkers.inference.model.PreferenceConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+
+/**
+ * Canonical form of a set of constraints, that is the same for sets of constraints that only
+ * differ in the ids of their variable slots.
+ *
+ * Constraints are sorted by kind and slots, and variable slots are then relabeled 0, 1, 2, ...
+ * by first occurrence. Sorting uses the concrete slot ids, so two components get the same form
+ * if their slot ids are ordered the same way, which is the case for code generated from the
+ * same template. The canonical form fully describes the constraints up to relabeling, so a
+ * solution of one component, relabeled, is a solution of any component with the same key.
+ */
+public class CanonicalComponent {
+
+    /** SHA-256 of the canonical form, in hex. */
+    private final String key;
+
+    /** Concrete id of each canonical variable slot. */
+    private final List<Integer> slotIds;
+
+    private CanonicalComponent(String key, List<Integer> slotIds) {
+        this.key = key;
+        this.slotIds = Collections.unmodifiableList(slotIds);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Return the concrete id of each canonical variable slot, indexed by canonical label.
+     */
+    public List<Integer> getSlotIds() {
+        return slotIds;
+    }
+
+    /**
+     * Canonicalize the given constraints.
+     *
+     * @param constraints the constraints of a component
+     * @param context anything besides the constraints the solution depends on, e.g. the solver
+     *            backend and the lattice, which is hashed into the key
+     * @return the canonical component, or null if a constraint is of a kind that cannot be
+     *         canonicalized
+     */
+    public static CanonicalComponent canonicalize(Collection<Constraint> constraints, String context) {
+        for (Constraint constraint : constraints) {
+            if (!isSupported(constraint)) {
+                return null;
+            }
+        }
+
+        List<Constraint> sorted = new ArrayList<>(constraints);
+        sorted.sort(CanonicalComponent::compare);
+
+        Map<Integer, Integer> labels = new HashMap<>();
+        List<Integer> slotIds = new ArrayList<>();
+        StringBuilder form = new StringBuilder(context).append('\n');
+        for (Constraint constraint : sorted) {
+            form.append(constraint.getClass().getSimpleName()).append('(');
+            for (Slot slot : constraint.getSlots()) {
+                if (slot instanceof ConstantSlot) {
+                    form.append('@').append(((ConstantSlot) slot).getValue());
+                } else {
+                    int id = ((VariableSlot) slot).getId();
+                    Integer label = labels.get(id);
+                    if (label == null) {
+                        label = slotIds.size();
+                        labels.put(id, label);
+                        slotIds.add(id);
+                    }
+                    form.append(slot.getClass().getSimpleName()).append('#').append(label);
+                }
+                form.append(',');
+            }
+            form.append(')');
+            if (constraint instanceof PreferenceConstraint) {
+                form.append(((PreferenceConstraint) constraint).getWeight());
+            }
+            form.append('\n');
+        }
+
+        return new CanonicalComponent(sha256(form.toString()), slotIds);
+    }
+
+    private static boolean isSupported(Constraint constraint) {
+        return constraint instanceof SubtypeConstraint
+                || constraint instanceof EqualityConstraint
+                || constraint instanceof InequalityConstraint
+                || constraint instanceof ComparableConstraint
+                || constraint instanceof CombineConstraint
+                || constraint instanceof PreferenceConstraint;
+    }
+
+    private static int compare(Constraint c1, Constraint c2) {
+        int result = c1.getClass().getName().compareTo(c2.getClass().getName());
+        if (result != 0) {
+            return result;
+        }
+        List<Slot> slots1 = c1.getSlots();
+        List<Slot> slots2 = c2.getSlots();
+        for (int i = 0; i < Math.min(slots1.size(), slots2.size()); i++) {
+            result = compare(slots1.get(i), slots2.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        result = Integer.compare(slots1.size(), slots2.size());
+        if (result == 0 && c1 instanceof PreferenceConstraint) {
+            result = Integer.compare(((PreferenceConstraint) c1).getWeight(), ((PreferenceConstraint) c2).getWeight());
+        }
+        return result;
+    }
+
+    /**
+     * Constants sort before variables, constants by value and variables by id.
+     */
+    private static int compare(Slot s1, Slot s2) {
+        boolean constant1 = s1 instanceof ConstantSlot;
+        boolean constant2 = s2 instanceof ConstantSlot;
+        if (constant1 != constant2) {
+            return constant1 ? -1 : 1;
+        }
+        if (constant1) {
+            return ((ConstantSlot) s1).getValue().toString().compareTo(((ConstantSlot) s2).getValue().toString());
+        }
+        return Integer.compare(((VariableSlot) s1).getId(), ((VariableSlot) s2).getId());
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new BugInCF("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package checkers.inference.solver.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import checkers.inference.InferenceMain;
+import checkers.inference.solver.frontend.Lattice;
+import checkers.inference.solver.util.Statistics;
+
+/**
+ * SolutionCache stores solutions of components by the key of their {@link CanonicalComponent},
+ * with each solution stored over canonical slot labels, so it can be mapped back onto the slot
+ * ids of any component with the same key.
+ *
+ * The cache holds at most {@code maxEntries} solutions and evicts the least recently used one
+ * when it is full. It is persisted to a text file, one solution per line from the least to the
+ * most recently used, as the key followed by tab separated pairs of canonical label and
+ * annotation. All methods are synchronized, as components may be solved in parallel.
+ */
+public class SolutionCache {
+
+    private final Path file;
+
+    private final Map<String, String> entries;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    public SolutionCache(Path file, final int maxEntries) {
+        this.file = file;
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Load the cache file, if it exists.
+     */
+    public synchronized void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    entries.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        } catch (IOException e) {
+            InferenceMain.getInstance().logger.warning("Could not read solution cache " + file + ": " + e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Write the cache file, replacing it atomically.
+     */
+    public synchronized void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            InferenceMain.getInstance().logger.warning("Could not write solution cache " + file + ": " + e);
+        }
+        Statistics.addOrIncrementEntry("solution_cache_hits", hits);
+        Statistics.addOrIncrementEntry("solution_cache_misses", misses);
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Return the cached solution of the given component over its concrete slot ids, or null if
+     * there is none.
+     */
+    public synchronized Map<Integer, AnnotationMirror> get(CanonicalComponent component, Lattice lattice) {
+        String value = entries.get(component.getKey());
+        if (value == null) {
+            misses++;
+            return null;
+        }
+
+        Map<String, AnnotationMirror> annotations = new HashMap<>();
+        for (AnnotationMirror type : lattice.allTypes) {
+            annotations.put(type.toString(), type);
+        }
+
+        List<Integer> slotIds = component.getSlotIds();
+        Map<Integer, AnnotationMirror> solution = new HashMap<>();
+        String[] fields = value.split("\t");
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            int label = Integer.parseInt(fields[i]);
+            AnnotationMirror annotation = annotations.get(fields[i + 1]);
+            if (label >= slotIds.size() || annotation == null) {
+                // Stale entry, e.g. written for a different version of the type system.
+                entries.remove(component.getKey());
+                misses++;
+                return null;
+            }
+            solution.put(slotIds.get(label), annotation);
+        }
+        hits++;
+        return solution;
+    }
+
+    /**
+     * Store the solution of the given component. Only slots of the component are stored.
+     */
+    public synchronized void put(CanonicalComponent component, Map<Integer, AnnotationMirror> solution) {
+        StringBuilder value = new StringBuilder();
+        List<Integer> slotIds = component.getSlotIds();
+        for (int label = 0; label < slotIds.size(); label++) {
+            AnnotationMirror annotation = solution.get(slotIds.get(label));
+            if (annotation != null) {
+                if (value.length() > 0) {
+                    value.append('\t');
+                }
+                value.append(label).append('\t').append(annotation);
+            }
+        }
+        entries.put(component.getKey(), value.toString());
+    }
+}
@@ -1,5 +1,6 @@
 package checkers.inference.solver.strategy;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -21,9 +22,10 @@ import checkers.inference.DefaultInferenceResult;
 import checkers.inference.InferenceResult;
 import checkers.inference.model.Constraint;
 import checkers.inference.model.Slot;
-import checkers.inference.solver.SolverEngine.SolverEngineArg;
+import checkers.inference.solver.backend.CachingSolver;
 import checkers.inference.solver.backend.Solver;
 import checkers.inference.solver.backend.SolverFactory;
+import checkers.inference.solver.cache.SolutionCache;
 import checkers.inference.solver.constraintgraph.ConstraintGraph;
 import checkers.inference.solver.constraintgraph.GraphBuilder;
 import checkers.inference.solver.frontend.Lattice;
@@ -46,9 +48,38 @@ import com.sun.tools.javac.util.Pair;
 public class GraphSolvingStrategy extends AbstractSolvingStrategy {
 
     enum GraphSolveStrategyArg implements SolverArg {
-        solveInParallel;
+        solveInParallel,
+
+        /**
+         * Maximum number of components solved at the same time when solving in parallel.
+         * For external solvers, e.g. Lingeling, this bounds the number of solver processes.
+         */
+        numOfThreads,
+
+        /**
+         * File in which solutions of components are cached between runs. Setting it enables
+         * the cache, which reuses the solution of a component with the same constraints up to
+         * the ids of its variable slots.
+         */
+        solutionCache,
+
+        /**
+         * Maximum number of solutions kept in the solution cache. The least recently used
+         * solutions are evicted first.
+         */
+        solutionCacheSize;
     }
 
+    /**
+     * Default value of {@link GraphSolveStrategyArg#numOfThreads}.
+     */
+    private static final int DEFAULT_NUM_OF_THREADS = 30;
+
+    /**
+     * Default value of {@link GraphSolveStrategyArg#solutionCacheSize}.
+     */
+    private static final int DEFAULT_SOLUTION_CACHE_SIZE = 10000;
+
     public GraphSolvingStrategy(SolverFactory solverFactory) {
         super(solverFactory);
     }
@@ -57,9 +88,9 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
     public InferenceResult solve(SolverEnvironment solverEnvironment, Collection<Slot> slots,
                                  Collection<Constraint> constraints, Lattice lattice) {
 
-        //TODO: Remove the coupling of using SolverEngineArg.
-        final boolean solveInParallel = !"lingeling".equals(solverEnvironment.getArg(SolverEngineArg.solver))
-                && solverEnvironment.getBoolArg(GraphSolveStrategyArg.solveInParallel);
+        final boolean solveInParallel = solverEnvironment.getBoolArg(GraphSolveStrategyArg.solveInParallel);
+        final String numOfThreadsArg = solverEnvironment.getArg(GraphSolveStrategyArg.numOfThreads);
+        final int numOfThreads = numOfThreadsArg == null ? DEFAULT_NUM_OF_THREADS : Integer.parseInt(numOfThreadsArg);
 
         // Build graph
         final long graphBuildingStart = System.currentTimeMillis();
@@ -70,13 +101,27 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
         List<Solver<?>> separatedGraphSolvers = separateGraph(solverEnvironment, constraintGraph,
                 slots, constraints, lattice);
 
+        final String solutionCacheArg = solverEnvironment.getArg(GraphSolveStrategyArg.solutionCache);
+        SolutionCache solutionCache = null;
+        if (solutionCacheArg != null) {
+            final String solutionCacheSizeArg = solverEnvironment.getArg(GraphSolveStrategyArg.solutionCacheSize);
+            solutionCache = new SolutionCache(Paths.get(solutionCacheArg), solutionCacheSizeArg == null
+                    ? DEFAULT_SOLUTION_CACHE_SIZE : Integer.parseInt(solutionCacheSizeArg));
+            solutionCache.load();
+            List<Solver<?>> cachingSolvers = new ArrayList<>();
+            for (Solver<?> solver : separatedGraphSolvers) {
+                cachingSolvers.add(CachingSolver.wrap(solver, solutionCache));
+            }
+            separatedGraphSolvers = cachingSolvers;
+        }
+
         // Solving.
         List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> inferenceResults = new LinkedList<>();
 
         if (separatedGraphSolvers.size() > 0) {
             if (solveInParallel) {
                 try {
-                    inferenceResults = solveInparallel(separatedGraphSolvers);
+                    inferenceResults = solveInparallel(separatedGraphSolvers, numOfThreads);
                 } catch (InterruptedException | ExecutionException e) {
                     e.printStackTrace();
                 }
@@ -85,6 +130,10 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
             }
         }
 
+        if (solutionCache != null) {
+            solutionCache.save();
+        }
+
         // Merge solutions.
         InferenceResult result = mergeInferenceResults(inferenceResults);
 
@@ -121,7 +170,8 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
     }
 
     /**
-     * This method is called if user wants to call all underlying solvers in parallel.
+     * This method is called if user wants to call all underlying solvers in parallel,
+     * with the default number of threads.
      *
      * @param underlyingSolvers
      * @return A list of Map that contains solutions from all underlying solvers.
@@ -130,8 +180,22 @@ public class GraphSolvingStrategy extends AbstractSolvingStrategy {
      */
     protected List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> solveInparallel(List<Solver<?>> underlyingSolvers)
             throws InterruptedException, ExecutionException {
+        return solveInparallel(underlyingSolvers, DEFAULT_NUM_OF_THREADS);
+    }
+
+    /**
+     * This method is called if user wants to call all underlying solvers in parallel.
+     *
+     * @param underlyingSolvers
+     * @param numOfThreads maximum number of underlying solvers that solve at the same time
+     * @return A list of Map that contains solutions from all underlying solvers.
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    protected List<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>> solveInparallel(List<Solver<?>> underlyingSolvers,
+            int numOfThreads) throws InterruptedException, ExecutionException {
 
-        ExecutorService service = Executors.newFixedThreadPool(30);
+        ExecutorService service = Executors.newFixedThreadPool(numOfThreads);
         List<Future<Pair<Map<Integer, AnnotationMirror>, Collection<Constraint>>>> futures = new ArrayList<>();
 
         long solvingStart = System.currentTimeMillis();
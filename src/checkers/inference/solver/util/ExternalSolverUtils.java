@@ -1,9 +1,11 @@
 package checkers.inference.solver.util;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
@@ -37,6 +39,38 @@ public class ExternalSolverUtils {
      */
     public static int runExternalSolver(String[] command, Consumer<BufferedReader> stdOutHandler,
             Consumer<BufferedReader> stdErrHandler) {
+        return runExternalSolver(command, null, stdOutHandler, stdErrHandler);
+    }
+
+    /**
+     * Runs the external solver as given by command, feeds its stdIn through the given
+     * stdInHandler, and uses the given stdOutHandler and stdErrHandler lambdas to process
+     * stdOut and stdErr.
+     *
+     * The stdIn of the external solver is written on the calling thread while stdOut and stdErr
+     * are consumed concurrently, so the input can be streamed to the solver without first being
+     * buffered in memory or written to a temporary file. The stdIn is closed once the handler
+     * returns, which signals the end of the input to the external solver. If the handler throws or
+     * the stdIn cannot be closed, the external solver is destroyed and the stdOut and stdErr
+     * handler threads are joined before the exception is rethrown.
+     *
+     * @param command
+     *            an external solver command to be executed, each string in the
+     *            array is space-concatenated to form the final command.
+     * @param stdInHandler
+     *            a lambda which takes a {@link BufferedWriter} to the stdIn of the
+     *            external solver and writes the solver input to it, or null if the
+     *            external solver doesn't read from stdIn.
+     * @param stdOutHandler
+     *            a lambda which takes a {@link BufferedReader} providing the
+     *            stdOut of the external solver and handles the stdOut.
+     * @param stdErrHandler
+     *            a lambda which takes a {@link BufferedReader} providing the
+     *            stdErr of the external solver and handles the stdErr.
+     * @return the exit status code of the external command.
+     */
+    public static int runExternalSolver(String[] command, Consumer<BufferedWriter> stdInHandler,
+            Consumer<BufferedReader> stdOutHandler, Consumer<BufferedReader> stdErrHandler) {
 
         logger.info("Running external solver command \"" + String.join(" ", command) + "\".");
 
@@ -56,6 +90,26 @@ public class ExternalSolverUtils {
         stdOutHandlerThread.start();
         stdErrHandlerThread.start();
 
+        if (stdInHandler != null) {
+            boolean stdInWritten = false;
+            try {
+                try (BufferedWriter stdIn = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()))) {
+                    stdInHandler.accept(stdIn);
+                } catch (IOException e) {
+                    throw new BugInCF("Could not close stdIn of the external solver.", e);
+                }
+                stdInWritten = true;
+            } finally {
+                if (!stdInWritten) {
+                    // The solver got only part of its input, so stop it rather than leave it and
+                    // the handler threads reading its output running.
+                    process.destroyForcibly();
+                    joinAfterFailure(stdOutHandlerThread);
+                    joinAfterFailure(stdErrHandlerThread);
+                }
+            }
+        }
+
         // Wait for external solver threads to finish
         try {
             stdOutHandlerThread.join();
@@ -83,6 +137,18 @@ public class ExternalSolverUtils {
         return exitStatus;
     }
 
+    /**
+     * Wait for a handler thread of a solver that was stopped, without hiding the exception that
+     * stopped it.
+     */
+    private static void joinAfterFailure(Thread handlerThread) {
+        try {
+            handlerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * A thread which wraps an InputStream in a BufferedReader and tasks the
      * lambda function to handle the outputs.
@@ -0,0 +1,87 @@
+package checkers.inference.solver.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.checkerframework.javacutil.BugInCF;
+
+import checkers.inference.model.Constraint;
+
+/**
+ * ParallelEncoder encodes a collection of constraints on several threads.
+ *
+ * The constraints are partitioned into contiguous chunks. Each chunk is encoded by one task into
+ * its own buffer, and the buffers are concatenated in chunk order, so the result lists the
+ * encodings in the iteration order of the constraints no matter how the tasks are scheduled.
+ *
+ * The encoding function is called from several threads at once. It must not write state that
+ * is shared between constraints, see the thread-safety notes on
+ * {@link checkers.inference.solver.backend.AbstractFormatTranslator}.
+ */
+public class ParallelEncoder {
+
+    /**
+     * Number of constraints encoded by a single task. Collections that fit in one chunk are
+     * encoded on the calling thread.
+     */
+    public static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Encode each constraint with the given function.
+     *
+     * @param constraints the constraints to encode
+     * @param encoder the encoding function, called concurrently if numOfThreads is greater than 1
+     * @param numOfThreads maximum number of threads encoding at the same time
+     * @return the encoding of each constraint, in the iteration order of constraints
+     */
+    public static <EncodingT> List<EncodingT> encode(Collection<Constraint> constraints,
+            Function<Constraint, EncodingT> encoder, int numOfThreads) {
+
+        final List<Constraint> constraintList = new ArrayList<>(constraints);
+        if (numOfThreads <= 1 || constraintList.size() <= CHUNK_SIZE) {
+            return encodeChunk(constraintList, encoder);
+        }
+
+        ExecutorService service = Executors.newFixedThreadPool(numOfThreads);
+        try {
+            List<Future<List<EncodingT>>> futures = new ArrayList<>();
+            for (int start = 0; start < constraintList.size(); start += CHUNK_SIZE) {
+                final List<Constraint> chunk =
+                        constraintList.subList(start, Math.min(start + CHUNK_SIZE, constraintList.size()));
+                futures.add(service.submit(() -> encodeChunk(chunk, encoder)));
+            }
+
+            List<EncodingT> encodings = new ArrayList<>(constraintList.size());
+            for (Future<List<EncodingT>> future : futures) {
+                encodings.addAll(future.get());
+            }
+            return encodings;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BugInCF("Interrupted while encoding constraints", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new BugInCF("Unexpected error occurred while encoding constraints", e.getCause());
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    private static <EncodingT> List<EncodingT> encodeChunk(List<Constraint> chunk,
+            Function<Constraint, EncodingT> encoder) {
+        List<EncodingT> buffer = new ArrayList<>(chunk.size());
+        for (Constraint constraint : chunk) {
+            buffer.add(encoder.apply(constraint));
+        }
+        return buffer;
+    }
+}
@@ -18,6 +18,9 @@ import org.checkerframework.javacutil.BugInCF;
 import org.checkerframework.javacutil.Pair;
 
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import com.sun.source.tree.Tree;
@@ -26,6 +29,7 @@ import com.sun.source.util.TreePath;
 
 import scenelib.annotations.io.ASTIndex;
 import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTPath.ASTEntry;
 import scenelib.annotations.io.ASTRecord;
 
 /**
@@ -245,4 +249,116 @@ public class ASTPathUtil {
 
         return Pair.of(pkgName, className);
     }
+
+    /**
+     * Jaif headers of the top-level members, shared by all locations in the same member during
+     * one run of InferenceMain, see {@link #clearMemberKeys()}.
+     */
+    private static final Map<String, String> memberKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Forget the shared Jaif headers. InferenceMain calls this when a run finishes, so that a JVM
+     * that runs inference repeatedly, e.g. the inference daemon, does not keep the headers of
+     * every member it has ever seen.
+     */
+    public static void clearMemberKeys() {
+        memberKeys.clear();
+    }
+
+    /**
+     * @return the Jaif header of the top-level member of the given method and variable names of an
+     * ASTRecord, e.g. "method foo()V:\nparameter 0:\n", or null for initializers.  Equal headers
+     * returned during the same run are the same String instance.
+     */
+    public static String getMemberKey(String methodName, String variableName) {
+        String result = "";
+        // Write out the member type
+        if (methodName != null && variableName != null) {
+            result += "method " + methodName + ":\n";
+            if (variableName.equals("-1")) {
+                result += "receiver:\n";
+            } else {
+                result += "parameter " + variableName + ":\n";
+            }
+
+        } else if (methodName != null) {
+            result += "method " + methodName + ":\n";
+        } else if (variableName != null) {
+            result += "field " + variableName + ":\n";
+        } else {
+            return null;
+        }
+
+        String shared = memberKeys.putIfAbsent(result, result);
+        return shared == null ? result : shared;
+    }
+
+    /**
+     * @param astPath
+     * @return true if the given AST path represents a main modifier of a local variable
+     * An AST Path represents a main modifier of a local variable should have pattern like
+     * 1) ..., Block.statement #, ..., Variable.type
+     * 2) ..., Block.statement #, ..., Variable.type, ParameterizedType.type
+     * reference: Local Variable Declaration Statements in JLS8
+     * https://docs.oracle.com/javase/specs/jls/se8/html/jls-14.html#jls-14.4
+     */
+    public static boolean isMainModOfLocalVar(ASTPath astPath) {
+        Iterator<ASTEntry> iterator = astPath.iterator();
+
+        // first determine whether this astPath is a block statement
+        while (iterator.hasNext()) {
+            if (isEntry(Tree.Kind.BLOCK, ASTPath.STATEMENT, iterator.next())) {
+                break;
+            }
+        }
+
+        if (!iterator.hasNext()) {
+            // this astPath either does not has Block.statement, or end up with
+            // Block.statement. in both cases it doesn't represent a main modifier
+            // of a local variable
+            return false;
+        }
+
+        // next get the last two entry of this AST Path
+        ASTEntry prevEntry = null;
+        ASTEntry leafEntry = null;
+        while (iterator.hasNext()) {
+            leafEntry = iterator.next();
+            if (!iterator.hasNext()) {
+                break;
+            }
+            prevEntry = leafEntry;
+        }
+
+        assert leafEntry != null;
+
+        if (isEntry(Tree.Kind.VARIABLE, ASTPath.TYPE, leafEntry)) {
+            // the first kind of AST path of main modifier of local variable
+            return true;
+        } else if (prevEntry != null && isEntry(Tree.Kind.VARIABLE, ASTPath.TYPE, prevEntry) &&
+            isEntry(Tree.Kind.PARAMETERIZED_TYPE, ASTPath.TYPE, leafEntry)) {
+            // the second kind
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * determine whether a given {@code ASTEntry} represents
+     * {@code (Tree.Kind).childSelector }, e.g. given an ASTEntry entry:
+     * <pre>
+     * {@code
+     * Block.statement #
+     * }</pre>
+     * the tree kind is "Block", the childSelector is "statement"
+     * thus, {@code isEntry(Tree.BLOCK, ASTPATH.STATEMENT, entry) } will return true
+     * @param kind
+     * @param childSelector
+     * @param entry
+     * @return true if the given Entry represents {@code (Tree.Kind).childSelector }
+     */
+    public static boolean isEntry(Tree.Kind kind, String childSelector, ASTEntry entry) {
+        return entry.getTreeKind() == kind && entry.getChildSelector().equals(childSelector);
+    }
 }
@@ -1,24 +1,34 @@
 package checkers.inference.util;
 
 import scenelib.annotations.io.ASTRecord;
-import scenelib.annotations.io.ASTPath;
-import scenelib.annotations.io.ASTPath.ASTEntry;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import checkers.inference.model.AnnotationLocation;
 import checkers.inference.model.AnnotationLocation.AstPathLocation;
 import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.util.JaifFileReader.JaifPackage;
 
 import com.sun.source.tree.Tree;
 
@@ -28,7 +38,9 @@ import org.checkerframework.javacutil.Pair;
  * JaifBuilder creates Jaifs from a Map of ASTRecords to AnnotationMirrors.
  *
  * JaifBuilder first organizes ASTRecords by class and top level member, and then
- * builds a Jaif string.
+ * builds a Jaif string, or writes the Jaif class by class with {@link #writeJaif(Appendable)},
+ * or into one Jaif per package with {@link #writeJaifShards(File)}. Classes are written
+ * grouped by package, and sorted by name within a package.
  *
  * @author mcarthur
  *
@@ -41,6 +53,19 @@ public class JaifBuilder {
      */
     private Map<String, ClassEntry> classesMap;
 
+    /**
+     * Orders fully qualified class names by package first, so that the classes of a package are
+     * next to each other, and then by name.
+     */
+    private static final Comparator<String> PACKAGE_ORDER = Comparator
+            .comparing((String fullyQualified) -> ASTPathUtil.splitFullyQualifiedClass(fullyQualified).first)
+            .thenComparing(Comparator.naturalOrder());
+
+    /**
+     * File name of the shard of the default package.
+     */
+    public static final String DEFAULT_PACKAGE_SHARD = "default-package.jaif";
+
     /**
      * Represents a map of AnnotationLocation to the serialized form of the annotation
      * that should be inserted at that location
@@ -60,6 +85,14 @@ public class JaifBuilder {
 
     private final boolean insertMainModOfLocalVar;
 
+    /**
+     * Source file of each class, as far as known from the AST records of its locations.
+     */
+    private final Map<String, String> sourceFiles = new TreeMap<>();
+
+    /**
+     * Jaif text of the annotation header or class being written.
+     */
     private StringBuilder builder;
 
     public JaifBuilder(Map<AnnotationLocation, String> locationToAnno,
@@ -79,23 +112,272 @@ public class JaifBuilder {
      * @return Jaif String
      */
     public String createJaif() {
-        classesMap = new HashMap<>();
-        builder = new StringBuilder();
+        StringBuilder jaif = new StringBuilder();
+        try {
+            writeJaif(jaif);
+        } catch (IOException e) {
+            // StringBuilder.append does not throw
+            throw new UncheckedIOException(e);
+        }
+        return jaif.toString();
+    }
+
+    /**
+     * Writes a Jaif based on input slots to {@code out}, one class at a time, so that only the
+     * text of one class is held in memory besides what {@code out} buffers.
+     *
+     * @param out where the Jaif is written
+     */
+    public void writeJaif(Appendable out) throws IOException {
+        classesMap = new TreeMap<>(PACKAGE_ORDER);
 
         // Organize by classes
         buildClassEntries();
 
         // Write out annotation definitions for all supported annotation mirrors
-        for (Class<? extends Annotation> annotation : supportedAnnotations) {
-            writeAnnotationHeader(annotation);
+        out.append(buildAnnotationHeaders());
+
+        // Write out each class, dropping its records once written
+        Iterator<ClassEntry> classEntries = classesMap.values().iterator();
+        while (classEntries.hasNext()) {
+            builder = new StringBuilder();
+            writeClassJaif(classEntries.next());
+            out.append(builder);
+            classEntries.remove();
         }
 
-        // Write out each class
-        for (Map.Entry<String, ClassEntry> entry: classesMap.entrySet()) {
-            writeClassJaif(entry.getValue());
+        builder = null;
+        classesMap = null;
+    }
+
+    /**
+     * Writes the Jaif to {@code out} like {@link #writeJaif(Appendable)}, and to {@code delta} only
+     * the classes of the source files in which some class's Jaif differs from the previous run's.
+     * {@code delta} starts with the same annotation definitions.  A class of the previous run that
+     * has no annotations any more is written to {@code delta} without members, so that its old
+     * annotations are dropped when its source file is rewritten.
+     *
+     * Source files, rather than classes or single insertions, are the unit of the delta, because
+     * the AFU rewrites a whole source file from the original source and the jaif entries for it:
+     * all annotations of every class in a changed file, nested and secondary top-level classes
+     * included, must be inserted again.  If the source file of a changed class is not known, every
+     * class is written to {@code delta}.
+     *
+     * @param out where the whole Jaif is written
+     * @param delta where the Jaif of the classes of changed source files is written
+     * @param previousClasses the Jaif of each class of the previous run, as read by
+     *                        {@link #readClassJaifs(File)}
+     * @param previousSourceFiles the source file of each class of the previous run, for the classes
+     *                            whose source file is not known from this run's locations
+     * @return the fully qualified names of the classes written to {@code delta}
+     */
+    public Set<String> writeJaifDelta(Appendable out, Appendable delta, Map<String, String> previousClasses,
+                                      Map<String, String> previousSourceFiles) throws IOException {
+        classesMap = new TreeMap<>(PACKAGE_ORDER);
+        buildClassEntries();
+
+        // Find the changed source files first, as a file's classes are not next to each other.
+        Set<String> changedSourceFiles = new HashSet<>();
+        boolean unknownSourceFileChanged = false;
+        for (Entry<String, ClassEntry> classEntry : classesMap.entrySet()) {
+            builder = new StringBuilder();
+            writeClassJaif(classEntry.getValue());
+            String previous = previousClasses.get(classEntry.getKey());
+            if (previous == null || !previous.equals(normalizeClassJaif(Arrays.asList(builder.toString().split("\n"))))) {
+                String sourceFile = resolveSourceFile(classEntry.getKey(), previousSourceFiles);
+                if (sourceFile == null) {
+                    unknownSourceFileChanged = true;
+                } else {
+                    changedSourceFiles.add(sourceFile);
+                }
+            }
+        }
+        List<String> removedClasses = new ArrayList<>();
+        for (String previousClass : previousClasses.keySet()) {
+            if (!classesMap.containsKey(previousClass)) {
+                removedClasses.add(previousClass);
+                String sourceFile = resolveSourceFile(previousClass, previousSourceFiles);
+                if (sourceFile == null) {
+                    unknownSourceFileChanged = true;
+                } else {
+                    changedSourceFiles.add(sourceFile);
+                }
+            }
+        }
+        Collections.sort(removedClasses);
+
+        String header = buildAnnotationHeaders();
+        out.append(header);
+        delta.append(header);
+
+        Set<String> deltaClasses = new LinkedHashSet<>();
+        Iterator<Entry<String, ClassEntry>> classEntries = classesMap.entrySet().iterator();
+        while (classEntries.hasNext()) {
+            Entry<String, ClassEntry> classEntry = classEntries.next();
+            builder = new StringBuilder();
+            writeClassJaif(classEntry.getValue());
+            out.append(builder);
+
+            if (unknownSourceFileChanged || changedSourceFiles.contains(sourceFiles.get(classEntry.getKey()))) {
+                delta.append(builder);
+                deltaClasses.add(classEntry.getKey());
+            }
+            classEntries.remove();
         }
 
+        for (String removedClass : removedClasses) {
+            Pair<String, String> packageToClass = ASTPathUtil.splitFullyQualifiedClass(removedClass);
+            delta.append("package " + packageToClass.first + ":\n");
+            delta.append("class " + packageToClass.second + ":\n\n");
+            deltaClasses.add(removedClass);
+        }
+
+        builder = null;
         classesMap = null;
+        return deltaClasses;
+    }
+
+    /**
+     * @return the source file of the class, as recorded for its locations, that of the top-level
+     * class it is nested in, or that of the previous run, or null if none is known.  A file found
+     * this way is added to {@link #getSourceFiles()}.
+     */
+    private String resolveSourceFile(String className, Map<String, String> previousSourceFiles) {
+        String sourceFile = sourceFiles.get(className);
+        if (sourceFile == null) {
+            int nested = className.indexOf('$');
+            String topLevelClass = nested < 0 ? className : className.substring(0, nested);
+            sourceFile = sourceFiles.get(topLevelClass);
+            if (sourceFile == null) {
+                sourceFile = previousSourceFiles.get(className);
+            }
+            if (sourceFile == null) {
+                sourceFile = previousSourceFiles.get(topLevelClass);
+            }
+            if (sourceFile != null) {
+                sourceFiles.put(className, sourceFile);
+            }
+        }
+        return sourceFile;
+    }
+
+    /**
+     * Reads the Jaif of each class in a Jaif written by this class, for
+     * {@link #writeJaifDelta(Appendable, Appendable, Map, Map)}.
+     *
+     * @return the normalized Jaif of each class, by fully qualified class name
+     */
+    public static Map<String, String> readClassJaifs(File jaifFile) {
+        Map<String, String> classes = new HashMap<>();
+        for (JaifPackage jaifPackage : new JaifFileReader(jaifFile)) {
+            String className = null;
+            List<String> lines = new ArrayList<>();
+            for (JaifFileReader.Block block : jaifPackage.entries) {
+                String firstLine = block.lines.get(0);
+                if (firstLine.startsWith("class ") || firstLine.startsWith("annotation ")) {
+                    if (className != null) {
+                        classes.put(className, normalizeClassJaif(lines));
+                    }
+                    className = null;
+                    lines.clear();
+                    if (firstLine.startsWith("class ")) {
+                        String simpleName = firstLine.substring("class ".length(), firstLine.indexOf(':'));
+                        className = jaifPackage.name.isEmpty() ? simpleName : jaifPackage.name + "." + simpleName;
+                    }
+                }
+                lines.addAll(block.lines);
+            }
+            if (className != null) {
+                classes.put(className, normalizeClassJaif(lines));
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return the lines of the Jaif of a class without indentation, blank lines and package lines,
+     * which differ between a written Jaif and what {@link JaifFileReader} reads back
+     */
+    private static String normalizeClassJaif(List<String> lines) {
+        StringBuilder normalized = new StringBuilder();
+        for (String line : lines) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("package ")) {
+                normalized.append(line).append('\n');
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return the source file of each class, by fully qualified class name, for the classes whose
+     * source file is known
+     */
+    public Map<String, String> getSourceFiles() {
+        return sourceFiles;
+    }
+
+    /**
+     * Writes one Jaif per package into {@code outputDir}, named after the package, e.g.
+     * {@code java.util.jaif}, or {@link #DEFAULT_PACKAGE_SHARD} for the default package. Each
+     * shard starts with all annotation definitions, so the shards can be inserted independently
+     * of each other. Only one shard is open at a time.
+     *
+     * @param outputDir an existing directory
+     * @return the shards written, by package name
+     */
+    public Map<String, File> writeJaifShards(File outputDir) throws IOException {
+        classesMap = new TreeMap<>(PACKAGE_ORDER);
+        buildClassEntries();
+        String header = buildAnnotationHeaders();
+
+        Map<String, File> shards = new LinkedHashMap<>();
+        Writer shard = null;
+        try {
+            Iterator<ClassEntry> classEntries = classesMap.values().iterator();
+            while (classEntries.hasNext()) {
+                ClassEntry classEntry = classEntries.next();
+                if (!shards.containsKey(classEntry.packageName)) {
+                    if (shard != null) {
+                        shard.close();
+                    }
+                    File shardFile = new File(outputDir, getShardFileName(classEntry.packageName));
+                    shards.put(classEntry.packageName, shardFile);
+                    shard = Files.newBufferedWriter(shardFile.toPath(), Charset.defaultCharset());
+                    shard.append(header);
+                }
+
+                builder = new StringBuilder();
+                writeClassJaif(classEntry);
+                shard.append(builder);
+                classEntries.remove();
+            }
+        } finally {
+            if (shard != null) {
+                shard.close();
+            }
+            builder = null;
+            classesMap = null;
+        }
+        return shards;
+    }
+
+    /**
+     * @return the file name {@link #writeJaifShards(File)} uses for the given package
+     */
+    public static String getShardFileName(String packageName) {
+        return packageName.isEmpty() ? DEFAULT_PACKAGE_SHARD : packageName + ".jaif";
+    }
+
+    /**
+     * @return the annotation definitions for all supported annotation mirrors
+     */
+    private String buildAnnotationHeaders() {
+        writeAnnotationHeaderCache.clear();
+        builder = new StringBuilder();
+        for (Class<? extends Annotation> annotation : supportedAnnotations) {
+            writeAnnotationHeader(annotation);
+        }
         return builder.toString();
     }
 
@@ -238,6 +520,10 @@ public class JaifBuilder {
             }
         }
 
+        // Sort members and records, so that the same annotations always give the same Jaif.
+        fields.sort(Entry.comparingByKey());
+        methods.sort(Entry.comparingByKey());
+
         for (Entry<String, MemberRecords> entry : initializers) {
             writeMemberJaif(entry.getKey(), entry.getValue());
         }
@@ -265,9 +551,10 @@ public class JaifBuilder {
             builder.append(memberName);
         }
 
+        memberRecords.entries.sort(Comparator.comparing((RecordValue value) -> value.astPath));
         for (RecordValue value: memberRecords.entries) {
             builder.append("insert-annotation ");
-            builder.append(value.astPath.toString());
+            builder.append(value.astPath);
             builder.append(": ");
             builder.append(value.value);
             builder.append("\n");
@@ -300,26 +587,37 @@ public class JaifBuilder {
                     AstPathLocation astLocation = (AstPathLocation) location;
                     ClassEntry classEntry = getClassEntry(astLocation);
                     ASTRecord astRecord = astLocation.getAstRecord();
+                    if (!sourceFiles.containsKey(astRecord.className)) {
+                        if (astRecord.ast != null) {
+                            sourceFiles.put(astRecord.className, astRecord.ast.getSourceFile().getName());
+                        } else if (astLocation.getSourceInsertion() != null) {
+                            sourceFiles.put(astRecord.className, astLocation.getSourceInsertion().getSourceFile());
+                        }
+                    }
 
-                    MemberRecords memberRecords = classEntry.getMemberRecords(astRecord.methodName, astRecord.varName);
-                    if (!insertMainModOfLocalVar && isMainModOfLocalVar(astRecord.astPath)) {
+                    if (!insertMainModOfLocalVar && astLocation.isMainModOfLocalVar()) {
                             continue;
                     }
 
                     // Don't insert annotation for empty ASTPath
                     // TODO: this is not a feature but a workaround of a bug:
                     // We should create a non-empty correct ASTPath for constructor
-                    if (astRecord.astPath.equals(ASTPath.empty())) {
+                    if (astLocation.isEmptyPath()) {
                         continue;
                     }
 
-                    memberRecords.entries.add(new RecordValue(astRecord.astPath,annotation));
+                    MemberRecords memberRecords = classEntry.getMemberRecords(astLocation.getMemberKey());
+                    memberRecords.entries.add(new RecordValue(astLocation.getAstPathString(), annotation));
                     break;
 
                 case CLASS_DECL:
                     ClassDeclLocation declLocation = (ClassDeclLocation) location;
                     classEntry = getClassEntry(declLocation);
                     classEntry.addDeclarationAnnotation(annotation);
+                    if (declLocation.getSourceInsertion() != null) {
+                        sourceFiles.putIfAbsent(declLocation.getFullyQualifiedClassName(),
+                                declLocation.getSourceInsertion().getSourceFile());
+                    }
                     break;
 
                 case MISSING:
@@ -333,75 +631,6 @@ public class JaifBuilder {
         }
     }
 
-    /**
-     * @param astRecord
-     * @return true if the given AST path represents a main modifier of a local variable
-     * An AST Path represents a main modifier of a local variable should have pattern like
-     * 1) ..., Block.statement #, ..., Variable.type
-     * 2) ..., Block.statement #, ..., Variable.type, ParameterizedType.type
-     * reference: Local Variable Declaration Statements in JLS8
-     * https://docs.oracle.com/javase/specs/jls/se8/html/jls-14.html#jls-14.4
-     */
-    protected boolean isMainModOfLocalVar(ASTPath astPath) {
-        Iterator<ASTEntry> iterator = astPath.iterator();
-
-        // first determine whether this astPath is a block statement
-        while (iterator.hasNext()) {
-            if (isEntry(Tree.Kind.BLOCK, ASTPath.STATEMENT, iterator.next())) {
-                break;
-            }
-        }
-
-        if (!iterator.hasNext()) {
-            // this astPath either does not has Block.statement, or end up with
-            // Block.statement. in both cases it doesn't represent a main modifier
-            // of a local variable
-            return false;
-        }
-
-        // next get the last two entry of this AST Path
-        ASTEntry prevEntry = null;
-        ASTEntry leafEntry = null;
-        while (iterator.hasNext()) {
-            leafEntry = iterator.next();
-            if (!iterator.hasNext()) {
-                break;
-            }
-            prevEntry = leafEntry;
-        }
-
-        assert leafEntry != null;
-
-        if (isEntry(Tree.Kind.VARIABLE, ASTPath.TYPE, leafEntry)) {
-            // the first kind of AST path of main modifier of local variable
-            return true;
-        } else if (prevEntry != null && isEntry(Tree.Kind.VARIABLE, ASTPath.TYPE, prevEntry) &&
-            isEntry(Tree.Kind.PARAMETERIZED_TYPE, ASTPath.TYPE, leafEntry)) {
-            // the second kind
-            return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * determine whether a given {@code ASTEntry} represents
-     * {@code (Tree.Kind).childSelector }, e.g. given an ASTEntry entry:
-     * <pre>
-     * {@code
-     * Block.statement #
-     * }</pre>
-     * the tree kind is "Block", the childSelector is "statement"
-     * thus, {@code isEntry(Tree.BLOCK, ASTPATH.STATEMENT, entry) } will return true
-     * @param kind
-     * @param childSelector
-     * @param entry
-     * @return true if the given Entry represents {@code (Tree.Kind).childSelector }
-     */
-    protected static boolean isEntry(Tree.Kind kind, String childSelector, ASTEntry entry) {
-        return entry.getTreeKind() == kind && entry.getChildSelector().equals(childSelector);
-    }
-
     private ClassEntry getClassEntry(AstPathLocation location) {
         return getClassEntry(location.getAstRecord().className);
     }
@@ -436,28 +665,6 @@ public class JaifBuilder {
         return getClassEntry(record.className);
     }
 
-    private static String getMemberString(String methodName, String variableName) {
-        String result = "";
-        // Write out the member type
-        if (methodName != null && variableName != null) {
-            result += "method " + methodName + ":\n";
-            if (variableName.equals("-1")) {
-                result += "receiver:\n";
-            } else {
-                result += "parameter " + variableName + ":\n";
-            }
-
-        } else if (methodName != null) {
-            result += "method " + methodName + ":\n";
-        } else if (variableName != null) {
-            result += "field " + variableName + ":\n";
-        } else {
-            return null;
-        }
-
-        return result;
-    }
-
     private static class ClassEntry {
         final Set<String> declAnnos;
         final String packageName;
@@ -478,15 +685,14 @@ public class JaifBuilder {
 
         /**
          * Lookup or create the List of VariableSLots for a Class and Member
-         * @param memberName The top-level member name to look up
-         * @param variableName If the record occurs in relation to a variable, this specifies the variable name
+         * @param memberKey The Jaif header of the top-level member, see {@link ASTPathUtil#getMemberKey}
          * @return
          */
-        public MemberRecords getMemberRecords(String memberName, String variableName) {
-            MemberRecords memberRecords = members.get(getMemberString(memberName, variableName));
+        public MemberRecords getMemberRecords(String memberKey) {
+            MemberRecords memberRecords = members.get(memberKey);
             if (memberRecords == null) {
                 memberRecords = new MemberRecords();
-                members.put(getMemberString(memberName, variableName), memberRecords);
+                members.put(memberKey, memberRecords);
             }
             return memberRecords;
         }
@@ -505,9 +711,9 @@ public class JaifBuilder {
      * The value for a record.
      */
     private static class RecordValue {
-        ASTPath astPath;
+        String astPath;
         String value;
-        RecordValue(ASTPath record, String value) {
+        RecordValue(String record, String value) {
             this.astPath = record;
             this.value = value;
         }
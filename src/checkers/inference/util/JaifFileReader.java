@@ -1,5 +1,6 @@
 package checkers.inference.util;
 
+import checkers.inference.InferenceMain;
 import checkers.inference.util.JaifFileReader.JaifPackage;
 
 import java.io.BufferedReader;
@@ -117,7 +118,7 @@ public class JaifFileReader implements Iterable<JaifPackage> {
 
                 // if we don't exit and someone caught a stack trace then
                 // the iterator might never be closed (if used in a for loop)
-                System.exit(1);
+                InferenceMain.exit(1);
             }
 
             return current;
@@ -33,6 +33,9 @@ import checkers.inference.util.JaifFileReader.JaifPackage;
  *
  *   To use JaifSplitter from source code, create a new JaifSplitter and call jaifSplitter.split()
  *   To use JaifSplitter from the command-line, run scripts/splitJaif or scripts/debugSplitJaif
+ *
+ *   When inference is run by the InferenceLauncher, --afuThreads makes inference write the per-package jaifs
+ *   directly (see JaifBuilder.writeJaifShards) and the launcher insert them concurrently, without this step.
  */
 public class JaifSplitter {
 
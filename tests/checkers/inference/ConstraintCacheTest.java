@@ -0,0 +1,99 @@
+package checkers.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.source.tree.CompilationUnitTree;
+
+import checkers.inference.test.InferenceTestUtilities;
+
+public class ConstraintCacheTest {
+
+    private static final String A = "package p;\nclass A {\n    int f = 1;\n    int m() { return f; }\n}\n";
+    private static final String B = "package p;\nclass B {\n    A a;\n}\n";
+
+    private File directory;
+    private File a;
+    private File b;
+
+    @Before
+    public void writeSources() throws IOException {
+        directory = Files.createTempDirectory("constraint-cache-test").toFile();
+        a = new File(directory, "A.java");
+        b = new File(directory, "B.java");
+        write(a, A);
+        write(b, B);
+    }
+
+    @After
+    public void deleteSources() {
+        a.delete();
+        b.delete();
+        new File(directory, "cache").delete();
+        directory.delete();
+    }
+
+    private static void write(File file, String source) throws IOException {
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the keys of A.java and B.java in a new cache over their current sources
+     */
+    private List<String> getUnitKeys() throws IOException {
+        List<File> files = Arrays.asList(a, b);
+        ConstraintCache cache = new ConstraintCache(new File(directory, "cache"),
+                new String[] {a.getPath(), b.getPath()}, Collections.<String>emptyList(), StandardCharsets.UTF_8);
+        List<String> keys = new ArrayList<>();
+        for (CompilationUnitTree root : InferenceTestUtilities.createJavacTask(files).parse()) {
+            keys.add(cache.getUnitKey(root));
+        }
+        return keys;
+    }
+
+    @Test
+    public void unchangedSourcesKeepTheirKeys() throws IOException {
+        assertEquals(getUnitKeys(), getUnitKeys());
+    }
+
+    @Test
+    public void bodyEditOnlyInvalidatesItsUnit() throws IOException {
+        List<String> before = getUnitKeys();
+        write(a, A.replace("return f;", "return f + 1;"));
+        List<String> after = getUnitKeys();
+
+        assertNotEquals(before.get(0), after.get(0));
+        assertEquals(before.get(1), after.get(1));
+    }
+
+    @Test
+    public void declarationEditInvalidatesEveryUnit() throws IOException {
+        List<String> before = getUnitKeys();
+        write(a, A.replace("int m()", "long m()"));
+        List<String> after = getUnitKeys();
+
+        assertNotEquals(before.get(0), after.get(0));
+        assertNotEquals(before.get(1), after.get(1));
+    }
+
+    @Test
+    public void declarationSignatureLeavesOutBodiesAndComments() {
+        String signature = ConstraintCache.getDeclarationSignature(A);
+        assertEquals(signature, ConstraintCache.getDeclarationSignature(
+                A.replace("return f;", "/* } */ return \"}\".length();")));
+        assertNotEquals(signature, ConstraintCache.getDeclarationSignature(A.replace("f = 1", "f = 2")));
+    }
+}
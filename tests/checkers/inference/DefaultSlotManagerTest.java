@@ -1,13 +1,160 @@
 package checkers.inference;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.javacutil.AnnotationBuilder;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.qual.VarAnnot;
+import checkers.inference.test.InferenceTestUtilities;
+
 public class DefaultSlotManagerTest {
 
+    private static final ClassDeclLocation A = new ClassDeclLocation("p.A");
+    private static final ClassDeclLocation B = new ClassDeclLocation("p.B");
+    private static final ClassDeclLocation C = new ClassDeclLocation("p.C");
+
+    private ProcessingEnvironment processingEnvironment;
+    private File tableFile;
+
+    @Before
+    public void createEnvironment() throws IOException {
+        processingEnvironment = InferenceTestUtilities.getProcessingEnvironment(
+                InferenceTestUtilities.createJavacTask(Collections.<File>emptyList()));
+        tableFile = File.createTempFile("slot-ids", ".txt");
+        tableFile.delete();
+    }
+
+    @After
+    public void deleteTable() {
+        tableFile.delete();
+    }
+
+    private DefaultSlotManager createSlotManager(SlotIdTable idTable) {
+        return new DefaultSlotManager(processingEnvironment, Collections.emptySet(), false, idTable);
+    }
 
+    private SlotIdTable readTable(int history) throws IOException {
+        return new SlotIdTable(tableFile, history);
+    }
 
     @Test
     public void nextIdTest() {
+        DefaultSlotManager slotManager = createSlotManager(null);
+        assertEquals(1, slotManager.createVariableSlot(A).getId());
+        assertEquals(2, slotManager.createVariableSlot(B).getId());
+        assertEquals(1, slotManager.createVariableSlot(A).getId());
+    }
+
+    private AnnotationMirror buildVarAnnot(int id) {
+        AnnotationBuilder builder = new AnnotationBuilder(processingEnvironment, VarAnnot.class);
+        builder.setValue("value", id);
+        return builder.build();
+    }
+
+    @Test
+    public void annotationOfASlotIsBuiltOnce() {
+        DefaultSlotManager slotManager = createSlotManager(null);
+        VariableSlot a = slotManager.createVariableSlot(A);
+        AnnotationMirror annotation = slotManager.getAnnotation(a);
+
+        assertSame(annotation, slotManager.getAnnotation(a));
+        assertSame(annotation, slotManager.getAnnotation(slotManager.createVariableSlot(A)));
+        assertNotSame(annotation, slotManager.getAnnotation(slotManager.createVariableSlot(B)));
+    }
+
+    @Test
+    public void getSlotResolvesBuiltAndEqualAnnotations() {
+        DefaultSlotManager slotManager = createSlotManager(null);
+        VariableSlot a = slotManager.createVariableSlot(A);
+        VariableSlot b = slotManager.createVariableSlot(B);
+
+        assertSame(a, slotManager.getSlot(slotManager.getAnnotation(a)));
+        // Equal annotations built elsewhere are resolved by their value, whether or not the slot
+        // manager built one for the slot.
+        assertSame(a, slotManager.getSlot(buildVarAnnot(a.getId())));
+        assertSame(b, slotManager.getSlot(buildVarAnnot(b.getId())));
+    }
+
+    @Test
+    public void slotsKeepTheirIdsAcrossRuns() throws IOException {
+        SlotIdTable firstRun = readTable(10);
+        DefaultSlotManager slotManager = createSlotManager(firstRun);
+        int a = slotManager.createVariableSlot(A).getId();
+        int b = slotManager.createVariableSlot(B).getId();
+        firstRun.write();
+
+        // Created in the other order, and after a new slot.
+        SlotIdTable secondRun = readTable(10);
+        slotManager = createSlotManager(secondRun);
+        int c = slotManager.createVariableSlot(C).getId();
+        assertEquals(b, slotManager.createVariableSlot(B).getId());
+        assertEquals(a, slotManager.createVariableSlot(A).getId());
+        assertTrue(c > Math.max(a, b));
+        assertEquals(1, secondRun.getNumberOfNewKeys());
+    }
+
+    @Test
+    public void slotsWithoutALocationAreNotKept() throws IOException {
+        SlotIdTable firstRun = readTable(10);
+        DefaultSlotManager slotManager = createSlotManager(firstRun);
+        VariableSlot missing = slotManager.createVariableSlot(AnnotationLocation.MISSING_LOCATION);
+        firstRun.write();
+
+        assertEquals(0, firstRun.getNumberOfNewKeys());
+        SlotIdTable secondRun = readTable(10);
+        assertEquals(missing.getId(), createSlotManager(secondRun).createVariableSlot(A).getId());
+    }
+
+    @Test
+    public void unusedKeysAreDroppedAfterTheHistory() throws IOException {
+        SlotIdTable run = readTable(1);
+        DefaultSlotManager slotManager = createSlotManager(run);
+        slotManager.createVariableSlot(A);
+        int b = slotManager.createVariableSlot(B).getId();
+        run.write();
+
+        // The first run without B keeps it.
+        run = readTable(1);
+        createSlotManager(run).createVariableSlot(A);
+        assertEquals(0, run.getNumberOfPrunedKeys());
+        run.write();
+
+        run = readTable(1);
+        createSlotManager(run).createVariableSlot(A);
+        assertEquals(1, run.getNumberOfPrunedKeys());
+        run.write();
+        assertEquals(2, Files.readAllLines(tableFile.toPath(), StandardCharsets.UTF_8).size());
+
+        // The id of B is free again.
+        run = readTable(1);
+        assertEquals(b, createSlotManager(run).createVariableSlot(C).getId());
+        assertEquals(1, run.getNumberOfNewKeys());
+    }
+
+    @Test
+    public void tablesWithoutAgesAreRead() throws IOException {
+        Files.write(tableFile.toPath(), "7\tvariable\tp.A\n".getBytes(StandardCharsets.UTF_8));
+        SlotIdTable run = readTable(10);
+        assertEquals(7, run.getId("variable\tp.A"));
+        assertEquals(8, run.newId());
     }
 }
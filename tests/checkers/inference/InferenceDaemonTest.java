@@ -0,0 +1,151 @@
+package checkers.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InferenceDaemonTest {
+
+    private File tokenDirectory;
+    private InferenceDaemon daemon;
+    private ExecutorService executor;
+    private Future<?> serving;
+
+    @Before
+    public void startDaemon() throws IOException {
+        tokenDirectory = Files.createTempDirectory("inference-daemon-test").toFile();
+        daemon = new InferenceDaemon(0, tokenDirectory);
+        executor = Executors.newSingleThreadExecutor();
+        serving = executor.submit(() -> {
+            daemon.serve();
+            return null;
+        });
+    }
+
+    @After
+    public void stopDaemon() throws Exception {
+        if (!serving.isDone()) {
+            request(readToken(), InferenceDaemon.SHUTDOWN);
+        }
+        serving.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        tokenDirectory.delete();
+    }
+
+    private String readToken() throws IOException {
+        File tokenFile = InferenceDaemon.getTokenFile(tokenDirectory, daemon.getPort());
+        return Files.readAllLines(tokenFile.toPath(), StandardCharsets.UTF_8).get(0);
+    }
+
+    /**
+     * Send a request as scripts/inference-client does.
+     *
+     * @return the exit status the daemon replied with
+     */
+    private int request(String token, String... args) throws IOException {
+        List<String> lines = new ArrayList<>(Arrays.asList(token, new File("").getAbsolutePath(),
+                String.valueOf(args.length)));
+        lines.addAll(Arrays.asList(args));
+        return send(lines.toArray(new String[lines.size()]));
+    }
+
+    /**
+     * Send the given lines, then end the request.
+     *
+     * @return the exit status the daemon replied with
+     */
+    private int send(String... lines) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            for (String line : lines) {
+                out.println(line);
+            }
+            socket.shutdownOutput();
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(InferenceDaemon.EXIT_PREFIX)) {
+                    return Integer.parseInt(line.substring(InferenceDaemon.EXIT_PREFIX.length()).trim());
+                }
+            }
+            throw new IOException("The daemon closed the connection without an exit status");
+        }
+    }
+
+    @Test
+    public void refusesRequestsWithoutTheToken() throws Exception {
+        assertEquals(InferenceDaemon.REFUSED, request("not-the-token", InferenceDaemon.SHUTDOWN));
+        assertFalse(serving.isDone());
+    }
+
+    @Test
+    public void refusesMalformedArgumentCounts() throws Exception {
+        String directory = new File("").getAbsolutePath();
+        assertEquals(InferenceDaemon.REFUSED, send(readToken(), directory, "two"));
+        assertEquals(InferenceDaemon.REFUSED, send(readToken(), directory, "-1"));
+        assertEquals(InferenceDaemon.REFUSED,
+                send(readToken(), directory, String.valueOf(InferenceDaemon.MAX_ARGUMENTS + 1)));
+        assertFalse(serving.isDone());
+    }
+
+    @Test
+    public void refusesTruncatedRequests() throws Exception {
+        String directory = new File("").getAbsolutePath();
+        assertEquals(InferenceDaemon.REFUSED, send(readToken(), directory));
+        assertEquals(InferenceDaemon.REFUSED, send(readToken(), directory, "3", "--mode", "INFER"));
+        assertFalse(serving.isDone());
+    }
+
+    @Test
+    public void tokenFileIsOnlyReadableByTheOwner() throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return;
+        }
+        File tokenFile = InferenceDaemon.getTokenFile(tokenDirectory, daemon.getPort());
+        assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                Files.getPosixFilePermissions(tokenFile.toPath()));
+    }
+
+    @Test
+    public void exitDuringARequestOnlyEndsThatRequest() throws Exception {
+        // No --checker, so the options are rejected and the launcher exits with status 1.
+        assertEquals(1, request(readToken(), "--mode", "INFER"));
+        assertFalse(serving.isDone());
+        assertEquals(0, request(readToken(), InferenceDaemon.SHUTDOWN));
+    }
+
+    @Test
+    public void shutdownRemovesTheTokenFile() throws Exception {
+        File tokenFile = InferenceDaemon.getTokenFile(tokenDirectory, daemon.getPort());
+        assertTrue(tokenFile.exists());
+        assertEquals(0, request(readToken(), InferenceDaemon.SHUTDOWN));
+        serving.get(30, TimeUnit.SECONDS);
+        assertFalse(tokenFile.exists());
+    }
+}
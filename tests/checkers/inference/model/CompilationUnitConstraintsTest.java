@@ -0,0 +1,171 @@
+package checkers.inference.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+
+import checkers.inference.DefaultSlotManager;
+import checkers.inference.model.AnnotationLocation.AstPathLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.test.InferenceTestUtilities;
+import scenelib.annotations.io.ASTPath;
+import scenelib.annotations.io.ASTRecord;
+
+public class CompilationUnitConstraintsTest {
+
+    private File directory;
+    private File source;
+    private CompilationUnitTree unit;
+    private ProcessingEnvironment processingEnvironment;
+
+    private ClassDeclLocation a;
+    private ClassDeclLocation b;
+    private AstPathLocation f;
+
+    @Before
+    public void compile() throws IOException {
+        directory = Files.createTempDirectory("compilation-unit-constraints-test").toFile();
+        source = new File(directory, "A.java");
+        Files.write(source.toPath(), "package p;\nclass A {\n    Object f;\n}\nclass B {}\n".getBytes(StandardCharsets.UTF_8));
+
+        JavacTask task = InferenceTestUtilities.createJavacTask(Collections.singletonList(source));
+        unit = task.parse().iterator().next();
+        task.analyze();
+        processingEnvironment = InferenceTestUtilities.getProcessingEnvironment(task);
+
+        String sourceFile = unit.getSourceFile().getName();
+        a = new ClassDeclLocation("p.A", SourceInsertion.beforeToken(sourceFile, 11, "class"));
+        b = new ClassDeclLocation("p.B");
+        f = new AstPathLocation(new ASTRecord(unit, "p.A", null, "f", ASTPath.empty()));
+    }
+
+    @After
+    public void deleteSource() {
+        source.delete();
+        directory.delete();
+    }
+
+    private DefaultSlotManager createSlotManager() {
+        return new DefaultSlotManager(processingEnvironment, Collections.emptySet(), false);
+    }
+
+    private CompilationUnitConstraints.Resolver resolver() {
+        return new CompilationUnitConstraints.Resolver() {
+            @Override
+            public CompilationUnitTree getCompilationUnit(String className) {
+                return className.startsWith("p.") ? unit : null;
+            }
+
+            @Override
+            public AnnotationMirror getAnnotation(String annotation) {
+                return null;
+            }
+        };
+    }
+
+    /** Slots at a, b and f, the comb slot of a and f, and constraints over them. */
+    private static Set<Constraint> createConstraints(DefaultSlotManager slotManager,
+                                                     ClassDeclLocation a, ClassDeclLocation b, AstPathLocation f) {
+        VariableSlot slotA = slotManager.createVariableSlot(a);
+        VariableSlot slotB = slotManager.createVariableSlot(b);
+        VariableSlot slotF = slotManager.createVariableSlot(f);
+        CombVariableSlot comb = slotManager.createCombVariableSlot(slotA, slotF);
+        return new HashSet<>(Arrays.asList(
+                EqualityConstraint.create(slotA, slotB, a),
+                InequalityConstraint.create(slotB, slotF, b),
+                CombineConstraint.create(slotA, slotF, comb, f)));
+    }
+
+    private byte[] write(DefaultSlotManager slotManager, Set<Constraint> constraints) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompilationUnitConstraints.write(new DataOutputStream(bytes), slotManager.getSlotsCreatedAfter(0),
+                constraints, unit.getSourceFile().getName());
+        return bytes.toByteArray();
+    }
+
+    private CompilationUnitConstraints read(byte[] bytes) throws IOException {
+        return CompilationUnitConstraints.read(new DataInputStream(new ByteArrayInputStream(bytes)),
+                unit.getSourceFile().getName(), resolver());
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        DefaultSlotManager writer = createSlotManager();
+        Set<Constraint> written = createConstraints(writer, a, b, f);
+
+        CompilationUnitConstraints cached = read(write(writer, written));
+        assertEquals(4, cached.getNumberOfSlots());
+        assertEquals(3, cached.getNumberOfConstraints());
+
+        DefaultSlotManager reader = createSlotManager();
+        ConstraintManager constraintManager = new ConstraintManager();
+        cached.addTo(reader, constraintManager, null);
+
+        assertEquals(written, constraintManager.getConstraints());
+        SourceInsertion insertion = ((ClassDeclLocation) reader.createVariableSlot(a).getLocation()).getSourceInsertion();
+        assertEquals(SourceInsertion.Kind.BEFORE_TOKEN, insertion.getKind());
+        assertEquals(11, insertion.getOffset());
+        assertEquals("class", insertion.getText());
+    }
+
+    @Test
+    public void idsAreRemappedToTheCurrentRun() throws IOException {
+        DefaultSlotManager writer = createSlotManager();
+        byte[] bytes = write(writer, createConstraints(writer, a, b, f));
+
+        // Slots created before the unit is added shift the ids of its new slots, and a slot at a
+        // location that already has one keeps its id.
+        DefaultSlotManager reader = createSlotManager();
+        reader.createVariableSlot(new ClassDeclLocation("p.C"));
+        VariableSlot existing = reader.createVariableSlot(b);
+        ConstraintManager constraintManager = new ConstraintManager();
+        read(bytes).addTo(reader, constraintManager, null);
+
+        assertSame(existing, reader.createVariableSlot(b));
+        assertNotEquals(writer.createVariableSlot(a).getId(), reader.createVariableSlot(a).getId());
+        assertEquals(createConstraints(reader, a, b, f), constraintManager.getConstraints());
+        assertEquals(5, reader.getNumberOfCreatedSlots());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unresolvedClassIsRejected() throws IOException {
+        DefaultSlotManager writer = createSlotManager();
+        byte[] bytes = write(writer, createConstraints(writer, a, b, f));
+
+        CompilationUnitConstraints.read(new DataInputStream(new ByteArrayInputStream(bytes)),
+                unit.getSourceFile().getName(), new CompilationUnitConstraints.Resolver() {
+                    @Override
+                    public CompilationUnitTree getCompilationUnit(String className) {
+                        return null;
+                    }
+
+                    @Override
+                    public AnnotationMirror getAnnotation(String annotation) {
+                        return null;
+                    }
+                });
+    }
+}
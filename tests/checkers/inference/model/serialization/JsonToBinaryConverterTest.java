@@ -0,0 +1,68 @@
+package checkers.inference.model.serialization;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JsonToBinaryConverterTest {
+
+    private File jsonFile;
+    private File binaryFile;
+
+    @Before
+    public void createFiles() throws IOException {
+        jsonFile = File.createTempFile("constraints", ".json");
+        binaryFile = File.createTempFile("constraints", ".bin");
+    }
+
+    @After
+    public void deleteFiles() {
+        jsonFile.delete();
+        binaryFile.delete();
+    }
+
+    /**
+     * Convert the given constraints array.
+     *
+     * @return the number of written and of skipped constraints in the header of the binary file
+     */
+    private int[] convert(String constraints) throws IOException {
+        Files.write(jsonFile.toPath(), ("{\"constraints\": " + constraints + "}").getBytes(StandardCharsets.UTF_8));
+        JsonToBinaryConverter.convert(jsonFile.getPath(), binaryFile.getPath());
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(binaryFile.toPath()))) {
+            assertEquals(BinaryConstraintFormat.MAGIC, in.readInt());
+            assertEquals(BinaryConstraintFormat.VERSION, in.readInt());
+            int constraintCount = in.readInt();
+            in.readInt(); // slots
+            in.readInt(); // strings
+            return new int[] {constraintCount, in.readInt()};
+        }
+    }
+
+    @Test
+    public void arithmeticConstraintsAreSkipped() throws IOException {
+        int[] counts = convert("["
+                + "\"var:1 <= var:2\","
+                + "{\"constraint\": \"equality\", \"lhs\": \"var:1\", \"rhs\": \"var:3\"},"
+                + "{\"constraint\": \"plus\", \"left_operand\": \"var:1\", \"right_operand\": \"var:2\", \"result\": \"var:4\"},"
+                + "{\"constraint\": \"remainder\", \"left_operand\": \"var:3\", \"right_operand\": \"var:2\", \"result\": \"var:5\"}"
+                + "]");
+
+        assertEquals(2, counts[0]);
+        assertEquals(2, counts[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownConstraintsAreRejected() throws IOException {
+        convert("[{\"constraint\": \"exponent\", \"lhs\": \"var:1\", \"rhs\": \"var:2\"}]");
+    }
+}
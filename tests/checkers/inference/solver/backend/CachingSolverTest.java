@@ -0,0 +1,155 @@
+package checkers.inference.solver.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import checkers.inference.model.Constraint;
+import checkers.inference.model.EqualityConstraint;
+import checkers.inference.model.Slot;
+import checkers.inference.model.SubtypeConstraint;
+import checkers.inference.model.VariableSlot;
+import checkers.inference.solver.cache.CanonicalComponent;
+import checkers.inference.solver.cache.SolutionCache;
+import checkers.inference.solver.frontend.Lattice;
+
+public class CachingSolverTest {
+
+    private AnnotationMirror top;
+    private AnnotationMirror bottom;
+    private Lattice lattice;
+    private SolutionCache cache;
+
+    @Before
+    public void createCache() throws IOException {
+        top = annotation("@Top");
+        bottom = annotation("@Bottom");
+        lattice = new Lattice(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(),
+                new HashSet<>(Arrays.asList(top, bottom)), top, bottom, 2, Collections.emptySet(), null);
+        File file = File.createTempFile("solution-cache", ".txt");
+        file.delete();
+        cache = new SolutionCache(file.toPath(), 10);
+    }
+
+    private static AnnotationMirror annotation(String name) {
+        AnnotationMirror annotation = mock(AnnotationMirror.class);
+        when(annotation.toString()).thenReturn(name);
+        return annotation;
+    }
+
+    private static Constraint constraint(Class<? extends Constraint> kind, int... ids) {
+        Slot[] slots = new Slot[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            slots[i] = new VariableSlot(ids[i]);
+        }
+        Constraint constraint = mock(kind);
+        when(constraint.getSlots()).thenReturn(Arrays.asList(slots));
+        return constraint;
+    }
+
+    /** a == b, b <: c */
+    private static Collection<Constraint> chain(int a, int b, int c) {
+        return Arrays.asList(constraint(EqualityConstraint.class, a, b), constraint(SubtypeConstraint.class, b, c));
+    }
+
+    /** a == b, c <: b */
+    private static Collection<Constraint> reversedChain(int a, int b, int c) {
+        return Arrays.asList(constraint(EqualityConstraint.class, a, b), constraint(SubtypeConstraint.class, c, b));
+    }
+
+    /**
+     * Solves every component with the given annotations, by slot id, and counts how often it
+     * is called.
+     */
+    private static class CountingSolver extends Solver<FormatTranslator<?, ?, ?>> {
+
+        private final Map<Integer, AnnotationMirror> solution;
+
+        private int calls = 0;
+
+        CountingSolver(Collection<Constraint> constraints, Lattice lattice, Map<Integer, AnnotationMirror> solution) {
+            super(null, Collections.<Slot>emptySet(), constraints, null, lattice);
+            this.solution = solution;
+        }
+
+        @Override
+        public Map<Integer, AnnotationMirror> solve() {
+            calls++;
+            return solution;
+        }
+
+        @Override
+        public Collection<Constraint> explainUnsatisfiable() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        protected void encodeAllConstraints() {
+        }
+    }
+
+    private Map<Integer, AnnotationMirror> solution(int a, int b, int c) {
+        Map<Integer, AnnotationMirror> solution = new HashMap<>();
+        solution.put(a, bottom);
+        solution.put(b, bottom);
+        solution.put(c, top);
+        return solution;
+    }
+
+    @Test
+    public void isomorphicComponentsHaveTheSameKey() {
+        CanonicalComponent first = CanonicalComponent.canonicalize(chain(1, 2, 3), "");
+        CanonicalComponent second = CanonicalComponent.canonicalize(chain(11, 12, 13), "");
+
+        assertEquals(first.getKey(), second.getKey());
+        assertEquals(Arrays.asList(1, 2, 3), first.getSlotIds());
+        assertEquals(Arrays.asList(11, 12, 13), second.getSlotIds());
+    }
+
+    @Test
+    public void nonIsomorphicComponentsHaveDifferentKeys() {
+        String key = CanonicalComponent.canonicalize(chain(1, 2, 3), "").getKey();
+
+        assertNotEquals(key, CanonicalComponent.canonicalize(reversedChain(11, 12, 13), "").getKey());
+        assertNotEquals(key, CanonicalComponent.canonicalize(Arrays.asList(
+                constraint(EqualityConstraint.class, 11, 12), constraint(EqualityConstraint.class, 12, 13)), "").getKey());
+        assertNotEquals(key, CanonicalComponent.canonicalize(chain(1, 2, 3), "other backend").getKey());
+    }
+
+    @Test
+    public void isomorphicComponentIsSolvedFromTheCache() {
+        CountingSolver first = new CountingSolver(chain(1, 2, 3), lattice, solution(1, 2, 3));
+        assertEquals(solution(1, 2, 3), CachingSolver.wrap(first, cache).solve());
+        assertEquals(1, first.calls);
+
+        // The cached solution is mapped onto the slot ids of the second component.
+        CountingSolver second = new CountingSolver(chain(11, 12, 13), lattice, null);
+        assertEquals(solution(11, 12, 13), CachingSolver.wrap(second, cache).solve());
+        assertEquals(0, second.calls);
+    }
+
+    @Test
+    public void nonIsomorphicComponentIsSolved() {
+        CountingSolver first = new CountingSolver(chain(1, 2, 3), lattice, solution(1, 2, 3));
+        CachingSolver.wrap(first, cache).solve();
+
+        CountingSolver second = new CountingSolver(reversedChain(11, 12, 13), lattice, solution(13, 12, 11));
+        assertEquals(solution(13, 12, 11), CachingSolver.wrap(second, cache).solve());
+        assertEquals(1, second.calls);
+    }
+}
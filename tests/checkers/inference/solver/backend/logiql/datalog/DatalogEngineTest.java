@@ -0,0 +1,124 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DatalogEngineTest {
+
+    private static final int X = Atom.variableTerm(0);
+    private static final int Y = Atom.variableTerm(1);
+    private static final int Z = Atom.variableTerm(2);
+
+    private static Atom atom(String predicate, int... terms) {
+        return new Atom(predicate, terms);
+    }
+
+    /**
+     * @return the tuples of the predicate, each written as {@code predicate(value, ...)}
+     */
+    static Set<String> model(DatalogEngine engine, String predicate) {
+        Set<String> model = new HashSet<>();
+        Relation relation = engine.getRelation(predicate);
+        if (relation == null) {
+            return model;
+        }
+        for (Tuple tuple : relation.tuples()) {
+            StringBuilder fact = new StringBuilder(predicate).append('(');
+            for (int i = 0; i < tuple.arity(); i++) {
+                fact.append(i == 0 ? "" : ", ").append(engine.getSymbols().symbol(tuple.get(i)));
+            }
+            model.add(fact.append(')').toString());
+        }
+        return model;
+    }
+
+    static Set<String> facts(String... facts) {
+        return new HashSet<>(Arrays.asList(facts));
+    }
+
+    @Test
+    public void transitiveClosureOfACycle() {
+        DatalogEngine engine = new DatalogEngine();
+        engine.addFact("edge", "a", "b");
+        engine.addFact("edge", "b", "c");
+        engine.addFact("edge", "c", "d");
+        engine.addFact("edge", "d", "b");
+        engine.addRule(new Rule(atom("path", X, Y), Arrays.asList(atom("edge", X, Y)), 2));
+        engine.addRule(new Rule(atom("path", X, Z), Arrays.asList(atom("path", X, Y), atom("edge", Y, Z)), 3));
+        engine.evaluate();
+
+        assertEquals(facts(
+                "path(a, b)", "path(a, c)", "path(a, d)",
+                "path(b, b)", "path(b, c)", "path(b, d)",
+                "path(c, b)", "path(c, c)", "path(c, d)",
+                "path(d, b)", "path(d, c)", "path(d, d)"),
+                model(engine, "path"));
+    }
+
+    @Test
+    public void nonRecursiveJoinWithAConstant() {
+        DatalogEngine engine = new DatalogEngine();
+        engine.addFact("parent", "ann", "bob");
+        engine.addFact("parent", "bob", "cid");
+        engine.addFact("parent", "bob", "dee");
+        engine.addFact("parent", "eve", "fay");
+        int bob = engine.getSymbols().intern("bob");
+        engine.addRule(new Rule(atom("grandparent", X, Z),
+                Arrays.asList(atom("parent", X, Y), atom("parent", Y, Z)), 3));
+        engine.addRule(new Rule(atom("childOfBob", X), Arrays.asList(atom("parent", bob, X)), 1));
+        engine.evaluate();
+
+        assertEquals(facts("grandparent(ann, cid)", "grandparent(ann, dee)"), model(engine, "grandparent"));
+        assertEquals(facts("childOfBob(cid)", "childOfBob(dee)"), model(engine, "childOfBob"));
+    }
+
+    @Test
+    public void rulesOverMissingRelationsDeriveNothing() {
+        DatalogEngine engine = new DatalogEngine();
+        engine.addFact("p", "a");
+        engine.addRule(new Rule(atom("q", X), Arrays.asList(atom("p", X), atom("r", X)), 1));
+        engine.evaluate();
+
+        assertNull(engine.getRelation("q"));
+    }
+
+    @Test
+    public void functionalConflictIsFound() {
+        DatalogEngine engine = new DatalogEngine();
+        engine.markFunctional("annotationOf");
+        engine.addFact("annotationOf", "v1", "Top");
+        engine.addFact("equal", "v1", "v2");
+        engine.addFact("annotationOf", "v2", "Bottom");
+        engine.addRule(new Rule(atom("annotationOf", Y, Z),
+                Arrays.asList(atom("equal", X, Y), atom("annotationOf", X, Z)), 3));
+        engine.evaluate();
+
+        assertNotNull(engine.findFunctionalConflict());
+    }
+
+    @Test
+    public void consistentFunctionHasNoConflict() {
+        DatalogEngine engine = new DatalogEngine();
+        engine.markFunctional("annotationOf");
+        engine.addFact("annotationOf", "v1", "Top");
+        engine.addFact("equal", "v1", "v2");
+        engine.addRule(new Rule(atom("annotationOf", Y, Z),
+                Arrays.asList(atom("equal", X, Y), atom("annotationOf", X, Z)), 3));
+        engine.evaluate();
+
+        assertEquals(facts("annotationOf(v1, Top)", "annotationOf(v2, Top)"), model(engine, "annotationOf"));
+        assertNull(engine.findFunctionalConflict());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsafeRuleIsRejected() {
+        new Rule(atom("q", X, Y), Arrays.asList(atom("p", X)), 2);
+    }
+}
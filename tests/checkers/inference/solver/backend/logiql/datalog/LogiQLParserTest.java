@@ -0,0 +1,81 @@
+package checkers.inference.solver.backend.logiql.datalog;
+
+import static checkers.inference.solver.backend.logiql.datalog.DatalogEngineTest.facts;
+import static checkers.inference.solver.backend.logiql.datalog.DatalogEngineTest.model;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LogiQLParserTest {
+
+    private static DatalogEngine evaluate(String logiQL) {
+        DatalogEngine engine = new DatalogEngine();
+        new LogiQLParser(engine).parse(logiQL);
+        engine.evaluate();
+        return engine;
+    }
+
+    @Test
+    public void transitiveClosure() {
+        DatalogEngine engine = evaluate(
+                "edge(x, y) -> string(x), string(y).\n"
+                + "path(x, y) <- edge(x, y).\n"
+                + "path(x, z) <- path(x, y), edge(y, z).\n"
+                + "+edge(\"a\", \"b\"). +edge(\"b\", \"c\"). +edge(\"c\", \"a\").\n");
+
+        assertEquals(facts(
+                "path(a, a)", "path(a, b)", "path(a, c)",
+                "path(b, a)", "path(b, b)", "path(b, c)",
+                "path(c, a)", "path(c, b)", "path(c, c)"),
+                model(engine, "path"));
+    }
+
+    @Test
+    public void entitiesAreIdentifiedByTheirRefmode() {
+        DatalogEngine engine = evaluate(
+                "variable(v), hasvariableName(v:i) -> int(i).\n"
+                + "AnnotationOf[v] = a -> variable(v), string(a).\n"
+                + "+variable(v), +hasvariableName[v] = 3.\n"
+                + "+variable(v), +hasvariableName[v] = 4.\n"
+                + "AnnotationOf[v] = \"Top\" <- variable(v).\n"
+                + "named(i, a) <- variable(v), hasvariableName(v:i), AnnotationOf[v] = a.\n");
+
+        assertEquals(facts("variable(3)", "variable(4)"), model(engine, "variable"));
+        assertEquals(facts("named(3, Top)", "named(4, Top)"), model(engine, "named"));
+        assertNull(engine.findFunctionalConflict());
+    }
+
+    @Test
+    public void functionalPredicatesAreChecked() {
+        DatalogEngine engine = evaluate(
+                "+AnnotationOf[1] = \"Top\".\n"
+                + "+equal(1, 2).\n"
+                + "AnnotationOf[y] = a <- equal(x, y), AnnotationOf[x] = a.\n"
+                + "AnnotationOf[y] = \"Bottom\" <- equal(_, y).\n");
+
+        assertNotNull(engine.findFunctionalConflict());
+    }
+
+    @Test
+    public void seqRulesAreSkipped() {
+        DatalogEngine engine = evaluate(
+                "+p(1).\n"
+                + "q(x) <- p(x).\n"
+                + "ordered(x) <<seq>> q(x).\n");
+
+        assertEquals(facts("q(1)"), model(engine, "q"));
+        assertNull(engine.getRelation("ordered"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negationIsRejected() {
+        evaluate("+p(1). +r(1).\nq(x) <- p(x), !r(x).\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unterminatedStatementIsRejected() {
+        evaluate("+p(1). q(x) <- p(x)");
+    }
+}
@@ -10,12 +10,22 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
 import org.junit.Assert;
 
+import com.sun.source.util.JavacTask;
+import com.sun.tools.javac.api.BasicJavacTask;
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+
 /**
  * Created by jburke on 7/7/15.
  */
@@ -229,4 +239,22 @@ public class InferenceTestUtilities {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Create a javac task for the given source files on the classpath of the test, for tests of
+     * code that needs a compilation rather than a whole inference run.
+     */
+    public static JavacTask createJavacTask(List<File> javaFiles) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        return (JavacTask) compiler.getTask(null, fileManager, null, Collections.singletonList("-proc:none"), null,
+                fileManager.getJavaFileObjectsFromFiles(javaFiles));
+    }
+
+    /**
+     * @return the processing environment of a task made by {@link #createJavacTask(List)}
+     */
+    public static ProcessingEnvironment getProcessingEnvironment(JavacTask task) {
+        return JavacProcessingEnvironment.instance(((BasicJavacTask) task).getContext());
+    }
 }
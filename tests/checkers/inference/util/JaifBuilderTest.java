@@ -0,0 +1,104 @@
+package checkers.inference.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import checkers.inference.model.AnnotationLocation;
+import checkers.inference.model.AnnotationLocation.ClassDeclLocation;
+import checkers.inference.model.SourceInsertion;
+import checkers.inference.qual.VarAnnot;
+
+public class JaifBuilderTest {
+
+    private static final String A_JAVA = "/src/p/A.java";
+    private static final String C_JAVA = "/src/p/C.java";
+
+    /**
+     * A.java declares p.A, its nested class p.A$Inner and the secondary top-level class p.B.
+     * C.java declares p.C.  The nested class has no source position, as for implied trees.
+     */
+    private static Map<AnnotationLocation, String> annotate(int a, int inner, int b, int c) {
+        Map<AnnotationLocation, String> locationToAnno = new LinkedHashMap<>();
+        locationToAnno.put(new ClassDeclLocation("p.A", SourceInsertion.beforeToken(A_JAVA, 10, null)), varAnnot(a));
+        locationToAnno.put(new ClassDeclLocation("p.A$Inner"), varAnnot(inner));
+        locationToAnno.put(new ClassDeclLocation("p.B", SourceInsertion.beforeToken(A_JAVA, 50, null)), varAnnot(b));
+        locationToAnno.put(new ClassDeclLocation("p.C", SourceInsertion.beforeToken(C_JAVA, 10, null)), varAnnot(c));
+        return locationToAnno;
+    }
+
+    private static String varAnnot(int id) {
+        return "@checkers.inference.qual.VarAnnot(" + id + ")";
+    }
+
+    private static Map<String, String> readPreviousClasses(Map<AnnotationLocation, String> previous) throws IOException {
+        File jaif = File.createTempFile("previous", ".jaif");
+        try {
+            String text = new JaifBuilder(previous, Collections.singleton(VarAnnot.class)).createJaif();
+            Files.write(jaif.toPath(), text.getBytes(Charset.defaultCharset()));
+            return JaifBuilder.readClassJaifs(jaif);
+        } finally {
+            jaif.delete();
+        }
+    }
+
+    @Test
+    public void deltaHoldsEveryClassOfAChangedFile() throws IOException {
+        Map<String, String> previousClasses = readPreviousClasses(annotate(1, 2, 3, 4));
+
+        JaifBuilder builder = new JaifBuilder(annotate(1, 2, 5, 4), Collections.singleton(VarAnnot.class));
+        StringBuilder out = new StringBuilder();
+        StringBuilder delta = new StringBuilder();
+        Set<String> deltaClasses = builder.writeJaifDelta(out, delta, previousClasses, new HashMap<>());
+
+        assertEquals(new HashSet<>(Arrays.asList("p.A", "p.A$Inner", "p.B")), deltaClasses);
+        assertTrue(delta.toString().contains("class A:" + varAnnot(1)));
+        assertTrue(delta.toString().contains("class A$Inner:" + varAnnot(2)));
+        assertTrue(delta.toString().contains("class B:" + varAnnot(5)));
+        assertFalse(delta.toString().contains("class C:"));
+        assertTrue(out.toString().contains("class C:" + varAnnot(4)));
+        assertEquals(A_JAVA, builder.getSourceFiles().get("p.A$Inner"));
+    }
+
+    @Test
+    public void deltaIsEmptyIfNothingChanged() throws IOException {
+        Map<String, String> previousClasses = readPreviousClasses(annotate(1, 2, 3, 4));
+
+        JaifBuilder builder = new JaifBuilder(annotate(1, 2, 3, 4), Collections.singleton(VarAnnot.class));
+        Set<String> deltaClasses = builder.writeJaifDelta(new StringBuilder(), new StringBuilder(),
+                previousClasses, new HashMap<>());
+
+        assertTrue(deltaClasses.isEmpty());
+    }
+
+    @Test
+    public void removedClassRewritesItsFile() throws IOException {
+        Map<String, String> previousClasses = readPreviousClasses(annotate(1, 2, 3, 4));
+
+        Map<AnnotationLocation, String> current = annotate(1, 2, 3, 4);
+        current.remove(new ClassDeclLocation("p.B"));
+        Map<String, String> previousSourceFiles = new HashMap<>();
+        previousSourceFiles.put("p.B", A_JAVA);
+
+        JaifBuilder builder = new JaifBuilder(current, Collections.singleton(VarAnnot.class));
+        StringBuilder delta = new StringBuilder();
+        Set<String> deltaClasses = builder.writeJaifDelta(new StringBuilder(), delta, previousClasses, previousSourceFiles);
+
+        assertEquals(new HashSet<>(Arrays.asList("p.A", "p.A$Inner", "p.B")), deltaClasses);
+        assertTrue(delta.toString().contains("class B:\n"));
+    }
+}